@@ -0,0 +1,119 @@
+package edu.hop.diploma.benchmark;
+
+import edu.hop.diploma.border.BorderSides;
+import edu.hop.diploma.border.PageBorder;
+import edu.hop.diploma.javacore.JavaCoreDiploma;
+import edu.hop.diploma.physical.PageDimensions;
+import edu.hop.diploma.physical.PageOrientation;
+import edu.hop.diploma.physical.PageProperties;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+/**
+ * Crea los diplomas que usan las pruebas de rendimiento.
+ *
+ * @author jjsanche
+ */
+public final class BenchmarkDiplomas {
+    private static final String[] NAMES = {
+        "Juan Antonio", "María Fernanda López Hernández", "José Alonso de Jesús Sánchez Fuentes",
+        "Ana", "Luis Ángel Gómez", "Guadalupe Ramírez Ortiz", "Pedro Núñez", "Sofía Castañeda Ruiz"
+    };
+
+    private BenchmarkDiplomas() {
+    }
+
+    /**
+     * Crea un diploma con cuatro bordes y los datos de un alumno.
+     *
+     * @param index El número del alumno dentro de la lista.
+     * @param dimensions El tamaño de la página.
+     * @param orientation La orientación de la página.
+     * @param directory El directorio donde se guardará el diploma.
+     * @return El diploma creado.
+     */
+    public static JavaCoreDiploma createDiploma(int index, PageDimensions dimensions,
+            PageOrientation orientation, File directory) {
+        PageProperties pageProperties = new PageProperties(dimensions, orientation);
+        JavaCoreDiploma diploma = new JavaCoreDiploma(pageProperties, createBorders(4));
+        diploma.setTo(NAMES[index % NAMES.length] + " " + index);
+        diploma.setHours(20 + index % 40);
+        diploma.setContentMarginSize(0.5f);
+        diploma.setFileName(new File(directory, "diploma-" + index + ".pdf").getPath());
+
+        return diploma;
+    }
+
+    /**
+     * Crea una lista de diplomas.
+     *
+     * @param size El número de diplomas.
+     * @param dimensions El tamaño de la página.
+     * @param orientation La orientación de la página.
+     * @param directory El directorio donde se guardarán los diplomas.
+     * @return La lista de diplomas.
+     */
+    public static List<JavaCoreDiploma> createRoster(int size, PageDimensions dimensions,
+            PageOrientation orientation, File directory) {
+        List<JavaCoreDiploma> roster = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            roster.add(createDiploma(i, dimensions, orientation, directory));
+        }
+
+        return roster;
+    }
+
+    /**
+     * Crea bordes alternando los cuatro lados de la página.
+     *
+     * @param count El número de bordes.
+     * @return Una lista con los bordes.
+     */
+    public static List<PageBorder> createBorders(int count) {
+        BorderSides[] sides = {BorderSides.TOP, BorderSides.RIGHT, BorderSides.BOTTOM, BorderSides.LEFT};
+        List<PageBorder> borders = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            borders.add(new PageBorder(sides[i % sides.length], 0.05f,
+                    new Color(50, 30 + i % 200, 20), 0.05f));
+        }
+
+        return borders;
+    }
+
+    /**
+     * Crea la imagen de la firma en el directorio de trabajo en caso de que no
+     * exista, ya que los diplomas la buscan con una ruta relativa.
+     *
+     * @param signFileName El nombre del archivo de la firma.
+     * @return true si la imagen fue creada y debe borrarse al terminar.
+     * @throws IOException En caso de no poder escribir la imagen.
+     */
+    public static boolean ensureSignImage(String signFileName) throws IOException {
+        File file = new File(signFileName);
+
+        if (file.exists()) {
+            return false;
+        }
+
+        BufferedImage image = new BufferedImage(600, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 600, 200);
+        graphics.setColor(Color.BLUE);
+        graphics.setStroke(new BasicStroke(4));
+        graphics.drawLine(20, 150, 580, 40);
+        graphics.dispose();
+        ImageIO.write(image, "jpg", file);
+
+        return true;
+    }
+}
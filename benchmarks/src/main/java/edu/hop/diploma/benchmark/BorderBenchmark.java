@@ -0,0 +1,92 @@
+package edu.hop.diploma.benchmark;
+
+import edu.hop.diploma.builder.DiplomaBuilder;
+import edu.hop.diploma.builder.LayoutPlan;
+import edu.hop.diploma.javacore.JavaCoreDiploma;
+import edu.hop.diploma.physical.PageDimensions;
+import edu.hop.diploma.physical.PageOrientation;
+import edu.hop.diploma.physical.PageProperties;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Mide el acomodo y el dibujo de un diploma según su número de bordes, por
+ * medio de {@link DiplomaBuilder#layout} y {@link DiplomaBuilder#render}.
+ *
+ * @author jjsanche
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BorderBenchmark {
+    @Param({"1", "4", "16"})
+    public int borderCount;
+
+    @Param({"LANDSCAPE", "PORTRAIT"})
+    public PageOrientation pageOrientation;
+
+    private DiplomaBuilder builder;
+    private JavaCoreDiploma diploma;
+    private List<LayoutPlan> plans;
+    private ByteArrayOutputStream output;
+    private boolean signCreated;
+
+    @Setup
+    public void setUp() throws IOException {
+        diploma = new JavaCoreDiploma(new PageProperties(PageDimensions.CARTA, pageOrientation),
+                BenchmarkDiplomas.createBorders(borderCount));
+        diploma.setTo("José Alonso de Jesús Sánchez Fuentes");
+        diploma.setFileName(new File("diploma-0.pdf").getPath());
+        signCreated = BenchmarkDiplomas.ensureSignImage(diploma.getSignFileName());
+        builder = new DiplomaBuilder();
+        plans = Collections.singletonList(builder.layout(diploma));
+        output = new ByteArrayOutputStream();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (signCreated) {
+            new File(diploma.getSignFileName()).delete();
+        }
+    }
+
+    /**
+     * Calcula el acomodo del diploma, incluida la posición de los bordes,
+     * sin dibujarlo.
+     */
+    @Benchmark
+    public void layout(Blackhole blackhole) throws IOException {
+        blackhole.consume(builder.layout(diploma));
+    }
+
+    /**
+     * Dibuja un acomodo ya calculado en un documento en memoria.
+     */
+    @Benchmark
+    public int render() throws IOException {
+        output.reset();
+        builder.render(plans, output);
+
+        return output.size();
+    }
+}
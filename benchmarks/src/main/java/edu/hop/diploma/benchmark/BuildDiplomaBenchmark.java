@@ -0,0 +1,148 @@
+package edu.hop.diploma.benchmark;
+
+import edu.hop.diploma.builder.DiplomaBuilder;
+import edu.hop.diploma.builder.DiplomaTemplate;
+import edu.hop.diploma.javacore.JavaCoreDiploma;
+import edu.hop.diploma.physical.PageDimensions;
+import edu.hop.diploma.physical.PageOrientation;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Mide la construcción completa de una lista de diplomas, desde los textos
+ * hasta los bytes del PDF.
+ *
+ * <p>Cada operación construye todos los diplomas de la lista, por lo que el
+ * tiempo de un diploma es el reportado dividido entre <code>rosterSize</code>.
+ * Para obtener la tasa de asignación de memoria se ejecuta con
+ * <code>java -jar benchmarks/target/benchmarks.jar -prof gc</code>.</p>
+ *
+ * @author jjsanche
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuildDiplomaBenchmark {
+    @Param({"1", "100"})
+    public int rosterSize;
+
+    @Param({"CARTA", "OFICIO"})
+    public PageDimensions pageDimensions;
+
+    @Param({"LANDSCAPE", "PORTRAIT"})
+    public PageOrientation pageOrientation;
+
+    private File directory;
+    private boolean signCreated;
+    private List<JavaCoreDiploma> roster;
+    private DiplomaBuilder builder;
+    private DiplomaBuilder templateBuilder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("diploma-benchmark").toFile();
+        roster = BenchmarkDiplomas.createRoster(rosterSize, pageDimensions, pageOrientation, directory);
+        signCreated = BenchmarkDiplomas.ensureSignImage(roster.get(0).getSignFileName());
+        builder = new DiplomaBuilder();
+        templateBuilder = new DiplomaBuilder(DiplomaTemplate.compile(roster.get(0)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+
+        if (signCreated) {
+            new File(roster.get(0).getSignFileName()).delete();
+        }
+    }
+
+    /**
+     * Construye los diplomas con el método estático original, guardando cada
+     * uno en su archivo.
+     */
+    @Benchmark
+    public void buildDiplomaToFile() throws IOException {
+        for (JavaCoreDiploma diploma : roster) {
+            DiplomaBuilder.buildDiploma(diploma);
+        }
+    }
+
+    /**
+     * Construye los diplomas en memoria con una sola instancia del
+     * constructor.
+     */
+    @Benchmark
+    public void buildBytes(Blackhole blackhole) throws IOException {
+        for (JavaCoreDiploma diploma : roster) {
+            blackhole.consume(builder.buildBytes(diploma));
+        }
+    }
+
+    /**
+     * Construye los diplomas en memoria reutilizando la plantilla compilada y
+     * la capa invariable.
+     */
+    @Benchmark
+    public void buildBytesWithTemplate(Blackhole blackhole) throws IOException {
+        for (JavaCoreDiploma diploma : roster) {
+            blackhole.consume(templateBuilder.buildBytes(diploma));
+        }
+    }
+
+    /**
+     * Construye todos los diplomas como páginas de un solo documento.
+     */
+    @Benchmark
+    public void buildDocument(Blackhole blackhole) throws IOException {
+        CountingOutputStream output = new CountingOutputStream();
+        templateBuilder.buildDocument(roster, output);
+        blackhole.consume(output.count);
+    }
+
+    /**
+     * Flujo que sólo cuenta los bytes escritos para no medir la copia a
+     * memoria.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        public long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+    }
+}
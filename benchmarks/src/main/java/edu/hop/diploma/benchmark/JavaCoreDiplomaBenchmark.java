@@ -0,0 +1,75 @@
+package edu.hop.diploma.benchmark;
+
+import edu.hop.diploma.javacore.JavaCoreDiploma;
+import edu.hop.diploma.text.Text;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide la creación de {@link JavaCoreDiploma} y el costo de cambiar sus datos
+ * y volver a obtener sus textos, como ocurre al recorrer una lista de alumnos
+ * con una sola instancia.
+ *
+ * @author jjsanche
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavaCoreDiplomaBenchmark {
+    private JavaCoreDiploma diploma;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        diploma = new JavaCoreDiploma();
+    }
+
+    /**
+     * Crea un diploma y obtiene sus textos.
+     */
+    @Benchmark
+    public Collection<Text> construct() {
+        JavaCoreDiploma created = new JavaCoreDiploma();
+        created.setTo("Juan Antonio");
+
+        return created.getTexts();
+    }
+
+    /**
+     * Cambia el alumno, las horas y la fecha de un mismo diploma y obtiene
+     * sus textos.
+     */
+    @Benchmark
+    public Collection<Text> setterChurn() {
+        int index = counter++;
+        diploma.setTo("Alumno " + (index & 1023));
+        diploma.setHours(20 + (index & 31));
+        diploma.setDate(LocalDate.of(2020, 1 + (index % 12), 1 + (index % 28)));
+
+        return diploma.getTexts();
+    }
+
+    /**
+     * Cambia sólo el alumno, el caso más común en un lote.
+     */
+    @Benchmark
+    public Collection<Text> setToOnly() {
+        diploma.setTo("Alumno " + (counter++ & 1023));
+
+        return diploma.getTexts();
+    }
+}
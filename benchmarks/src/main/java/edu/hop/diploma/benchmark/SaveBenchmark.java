@@ -0,0 +1,73 @@
+package edu.hop.diploma.benchmark;
+
+import edu.hop.diploma.builder.DiplomaBuilder;
+import edu.hop.diploma.javacore.JavaCoreDiploma;
+import edu.hop.diploma.physical.PageDimensions;
+import edu.hop.diploma.physical.PageOrientation;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide únicamente la serialización de un diploma ya construido.
+ *
+ * @author jjsanche
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveBenchmark {
+    private PDDocument document;
+    private ByteArrayOutputStream output;
+
+    @Setup
+    public void setUp() throws IOException {
+        JavaCoreDiploma diploma = BenchmarkDiplomas.createDiploma(0, PageDimensions.CARTA,
+                PageOrientation.LANDSCAPE, new File("."));
+        boolean signCreated = BenchmarkDiplomas.ensureSignImage(diploma.getSignFileName());
+
+        try {
+            byte[] pdf = new DiplomaBuilder().buildBytes(diploma);
+            document = PDDocument.load(new ByteArrayInputStream(pdf));
+            output = new ByteArrayOutputStream(pdf.length * 2);
+        } finally {
+            if (signCreated) {
+                new File(diploma.getSignFileName()).delete();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        document.close();
+    }
+
+    /**
+     * Guarda el documento en memoria.
+     */
+    @Benchmark
+    public int save() throws IOException, COSVisitorException {
+        output.reset();
+        document.save(output);
+
+        return output.size();
+    }
+}
@@ -0,0 +1,75 @@
+package edu.hop.diploma.benchmark;
+
+import edu.hop.diploma.javacore.JavaCoreDiploma;
+import edu.hop.diploma.text.FontMetrics;
+import edu.hop.diploma.text.Text;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide el cálculo del ancho y alto de todos los textos de un diploma, tanto
+ * con las tablas de anchos propias como con los métodos de PDFBox que se
+ * usaban originalmente.
+ *
+ * @author jjsanche
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextMeasurementBenchmark {
+    private Text[] texts;
+
+    @Setup
+    public void setUp() {
+        JavaCoreDiploma diploma = new JavaCoreDiploma();
+        diploma.setTo("José Alonso de Jesús Sánchez Fuentes");
+        texts = diploma.getTexts().toArray(new Text[0]);
+    }
+
+    /**
+     * Mide los textos con {@link FontMetrics}.
+     */
+    @Benchmark
+    public float fontMetrics() throws IOException {
+        float total = 0;
+
+        for (Text text : texts) {
+            FontMetrics metrics = FontMetrics.of(text.getFontType());
+            total += metrics.getWidth(text.getText(), text.getFontSize());
+            total += metrics.getHeight(text.getFontSize());
+        }
+
+        return total;
+    }
+
+    /**
+     * Mide los textos con los métodos de {@link PDFont}, como lo hacía
+     * originalmente el constructor de diplomas.
+     */
+    @Benchmark
+    public float pdfFont() throws IOException {
+        float total = 0;
+
+        for (Text text : texts) {
+            PDFont font = text.getFontType();
+            total += font.getStringWidth(text.getText()) / 1000 * text.getFontSize();
+            total += font.getFontDescriptor().getFontBoundingBox().getHeight() / 1000 * text.getFontSize();
+        }
+
+        return total;
+    }
+}
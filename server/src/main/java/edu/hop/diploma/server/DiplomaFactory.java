@@ -0,0 +1,22 @@
+package edu.hop.diploma.server;
+
+import edu.hop.diploma.builder.Diploma;
+import java.util.Map;
+
+/**
+ * Crea el diploma que corresponde a los parámetros de una solicitud.
+ *
+ * @author jjsanche
+ */
+@FunctionalInterface
+public interface DiplomaFactory {
+    /**
+     * Crea un diploma nuevo.
+     *
+     * @param parameters Los parámetros de la solicitud, ya decodificados.
+     * @return El diploma a construir.
+     * @throws IllegalArgumentException En caso de que falte un parámetro o
+     * tenga un valor inválido.
+     */
+    public Diploma create(Map<String, String> parameters);
+}
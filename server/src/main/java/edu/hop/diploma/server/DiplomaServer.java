@@ -0,0 +1,454 @@
+package edu.hop.diploma.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.hop.diploma.border.BorderSides;
+import edu.hop.diploma.border.PageBorder;
+import edu.hop.diploma.builder.Diploma;
+import edu.hop.diploma.cache.DiplomaCache;
+import edu.hop.diploma.builder.DiplomaBuilder;
+import edu.hop.diploma.builder.DiplomaFingerprint;
+import edu.hop.diploma.builder.DiplomaTemplate;
+import edu.hop.diploma.physical.PageOrientation;
+import edu.hop.diploma.physical.PageProperties;
+import java.awt.Color;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Servidor HTTP que construye diplomas bajo demanda usando el servidor
+ * incluido en el JDK.
+ *
+ * <p>Una solicitud <code>GET /diploma?to=...</code> regresa el PDF del diploma
+ * correspondiente. Las solicitudes idénticas que llegan mientras su diploma se
+ * construye esperan esa misma construcción en lugar de iniciar otra. El
+ * número de construcciones simultáneas y de solicitudes en espera está
+ * limitado; cuando ambos límites se alcanzan el servidor responde 429.</p>
+ *
+ * <p>Cada solicitud se atiende en el ejecutor indicado. En JDK 21 o posterior
+ * conviene usar <code>Executors.newVirtualThreadPerTaskExecutor()</code>, ya
+ * que las solicitudes en espera sólo bloquean su hilo.</p>
+ *
+ * @author jjsanche
+ */
+public class DiplomaServer {
+    private static final byte[] OK = "OK\n".getBytes(StandardCharsets.US_ASCII);
+    private static final Logger LOGGER = Logger.getLogger(DiplomaServer.class.getName());
+
+    private final HttpServer server;
+    private final DiplomaBuilder builder;
+    private final DiplomaFactory factory;
+    private final DiplomaCache cache;
+    private final Semaphore admissions;
+    private final Semaphore renders;
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder rendered = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Crea un servidor sin iniciarlo.
+     *
+     * @param address La dirección y puerto donde escuchará el servidor.
+     * @param builder El constructor de los diplomas.
+     * @param factory La fábrica que crea cada diploma a partir de los
+     * parámetros de la solicitud.
+     * @param executor El ejecutor donde se atenderán las solicitudes. Quien
+     * invoca es responsable de terminarlo.
+     * @param maxRenders El número máximo de diplomas en construcción al mismo
+     * tiempo.
+     * @param maxQueued El número máximo de solicitudes esperando a que haya
+     * espacio para construir su diploma.
+     * @throws IOException En caso de no poder abrir el puerto.
+     */
+    public DiplomaServer(InetSocketAddress address, DiplomaBuilder builder, DiplomaFactory factory,
+            Executor executor, int maxRenders, int maxQueued) throws IOException {
+        this(address, builder, factory, null, executor, maxRenders, maxQueued);
+    }
+
+    /**
+     * Crea un servidor sin iniciarlo que guarda los diplomas construidos en el
+     * caché indicado, de modo que las descargas repetidas no vuelven a
+     * construirlos.
+     *
+     * @param address La dirección y puerto donde escuchará el servidor.
+     * @param builder El constructor de los diplomas.
+     * @param factory La fábrica que crea cada diploma a partir de los
+     * parámetros de la solicitud.
+     * @param cache El caché de diplomas construidos o null para construirlos
+     * siempre.
+     * @param executor El ejecutor donde se atenderán las solicitudes. Quien
+     * invoca es responsable de terminarlo.
+     * @param maxRenders El número máximo de diplomas en construcción al mismo
+     * tiempo.
+     * @param maxQueued El número máximo de solicitudes esperando a que haya
+     * espacio para construir su diploma.
+     * @throws IOException En caso de no poder abrir el puerto.
+     */
+    public DiplomaServer(InetSocketAddress address, DiplomaBuilder builder, DiplomaFactory factory,
+            DiplomaCache cache, Executor executor, int maxRenders, int maxQueued) throws IOException {
+        if (maxRenders <= 0) {
+            throw new IllegalArgumentException("maxRenders must be greater than 0.");
+        }
+
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("maxQueued must not be negative.");
+        }
+
+        this.builder = builder;
+        this.factory = factory;
+        this.cache = cache;
+        this.admissions = new Semaphore(maxRenders + maxQueued);
+        this.renders = new Semaphore(maxRenders);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/diploma", this::handleDiploma);
+        server.createContext("/health", this::handleHealth);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Inicia el servidor.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Detiene el servidor esperando a que terminen las solicitudes en curso.
+     *
+     * @param delaySeconds El tiempo máximo de espera en segundos.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+    }
+
+    /**
+     * Regresa la dirección donde escucha el servidor.
+     *
+     * @return La dirección, con el puerto asignado si se pidió el puerto 0.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Regresa el número de diplomas construidos.
+     *
+     * @return El número de construcciones.
+     */
+    public long getRenderedCount() {
+        return rendered.sum();
+    }
+
+    /**
+     * Regresa el número de solicitudes que usaron la construcción de otra
+     * solicitud idéntica.
+     *
+     * @return El número de solicitudes.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Regresa el número de solicitudes rechazadas con 429.
+     *
+     * @return El número de solicitudes.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Atiende una solicitud de diploma.
+     *
+     * @param exchange La solicitud.
+     * @throws IOException En caso de error al responder.
+     */
+    private void handleDiploma(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            if (!admissions.tryAcquire()) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendText(exchange, 429, "Too many requests");
+                return;
+            }
+
+            try {
+                Diploma diploma;
+
+                try {
+                    diploma = factory.create(parseQuery(exchange.getRequestURI().getRawQuery()));
+                } catch (IllegalArgumentException ex) {
+                    sendText(exchange, 400, ex.getMessage() != null ? ex.getMessage() : "Invalid request");
+                    return;
+                }
+
+                byte[] pdf = render(diploma);
+                exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+                exchange.getResponseHeaders().set("Content-Disposition",
+                        "inline; filename=\"" + diploma.getFileName().replaceAll("[^ -~]|\"", "_") + "\"");
+                exchange.sendResponseHeaders(200, pdf.length);
+
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(pdf);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                sendError(exchange, 503, "Interrupted");
+            } catch (IOException | ExecutionException | RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Error al atender la solicitud " + exchange.getRequestURI(), ex);
+                sendError(exchange, 500, "Error building the diploma");
+            } finally {
+                admissions.release();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Construye un diploma o espera la construcción en curso de un diploma
+     * idéntico.
+     *
+     * @param diploma El diploma a construir.
+     * @return Los bytes del PDF. No deben modificarse ya que pueden
+     * compartirse con otras solicitudes.
+     * @throws IOException En caso de no poder calcular la huella del diploma.
+     * @throws InterruptedException En caso de que el hilo sea interrumpido
+     * mientras espera.
+     * @throws ExecutionException En caso de error al construir el diploma.
+     */
+    private byte[] render(Diploma diploma) throws IOException, InterruptedException, ExecutionException {
+        String key = DiplomaFingerprint.of(diploma, builder);
+
+        if (cache != null) {
+            byte[] cached = null;
+
+            try {
+                cached = cache.get(key);
+            } catch (IOException ex) {
+                //Un error del caché sólo obliga a construir el diploma.
+                LOGGER.log(Level.WARNING, "Error al leer el diploma " + key + " del caché", ex);
+            }
+
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, future);
+
+        if (existing != null) {
+            coalesced.increment();
+            return existing.get();
+        }
+
+        try {
+            renders.acquire();
+
+            try {
+                byte[] pdf = builder.buildBytes(diploma);
+                rendered.increment();
+
+                if (cache != null) {
+                    try {
+                        cache.put(key, pdf);
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.WARNING, "Error al guardar el diploma " + key + " en el caché", ex);
+                    }
+                }
+
+                future.complete(pdf);
+            } finally {
+                renders.release();
+            }
+        } catch (IOException | InterruptedException | RuntimeException | Error ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, future);
+        }
+
+        return future.get();
+    }
+
+    /**
+     * Responde a la verificación de salud del servidor.
+     *
+     * @param exchange La solicitud.
+     * @throws IOException En caso de error al responder.
+     */
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try {
+            exchange.sendResponseHeaders(200, OK.length);
+
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(OK);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Responde con los contadores del servidor.
+     *
+     * @param exchange La solicitud.
+     * @throws IOException En caso de error al responder.
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            sendText(exchange, 200, "rendered " + getRenderedCount()
+                    + "\ncoalesced " + getCoalescedCount()
+                    + "\nrejected " + getRejectedCount()
+                    + "\ninFlight " + inFlight.size()
+                    + (cache != null ? "\ncacheHitRatio " + cache.getHitRatio()
+                            + "\ncacheMemoryBytes " + cache.getMemoryBytes()
+                            + "\ncacheDiskBytes " + cache.getDiskBytes()
+                            + "\ncacheEvictions " + (cache.getMemoryEvictionCount()
+                                    + cache.getDiskEvictionCount()) : ""));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Envía una respuesta de texto.
+     *
+     * @param exchange La solicitud.
+     * @param status El código de estado.
+     * @param message El mensaje.
+     * @throws IOException En caso de error al responder.
+     */
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    /**
+     * Envía una respuesta de error, siempre que no se hayan enviado ya los
+     * encabezados de otra respuesta. En ese caso sólo queda cerrar la
+     * solicitud, lo cuál corresponde a quien la atiende.
+     *
+     * @param exchange La solicitud.
+     * @param status El código de estado.
+     * @param message El mensaje.
+     * @throws IOException En caso de error al responder.
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        //El código de respuesta es -1 mientras no se envían los encabezados.
+        if (exchange.getResponseCode() == -1) {
+            sendText(exchange, status, message);
+        }
+    }
+
+    /**
+     * Decodifica los parámetros de una consulta. Si un parámetro se repite se
+     * conserva el último valor.
+     *
+     * @param query La consulta sin decodificar o null.
+     * @return Los parámetros decodificados.
+     */
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            String name = separator >= 0 ? pair.substring(0, separator) : pair;
+            String value = separator >= 0 ? pair.substring(separator + 1) : "";
+
+            try {
+                parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            } catch (UnsupportedEncodingException ex) {
+                //UTF-8 siempre está disponible.
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Inicia un servidor con diplomas tamaño carta en orientación horizontal.
+     * Recibe opcionalmente el puerto, el número de construcciones simultáneas
+     * y el número de solicitudes en espera. Los diplomas construidos se
+     * guardan en un caché en memoria de 64 MB. La firma se busca en el
+     * directorio de trabajo.
+     *
+     * @param args Los argumentos de la línea de comandos.
+     * @throws IOException En caso de no poder abrir el puerto.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int maxRenders = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        int maxQueued = args.length > 2 ? Integer.parseInt(args[2]) : maxRenders * 16;
+
+        PageProperties pageProperties = new PageProperties();
+        pageProperties.setPageOrientation(PageOrientation.LANDSCAPE);
+        DiplomaFactory factory = new JavaCoreDiplomaFactory(pageProperties, Arrays.asList(
+                new PageBorder(BorderSides.TOP, 0.1f, new Color(255, 0, 0), 0.5f),
+                new PageBorder(BorderSides.RIGHT, 0.1f, new Color(50, 30, 20), 0.5f),
+                new PageBorder(BorderSides.BOTTOM, 0.1f, new Color(50, 30, 20), 0.5f),
+                new PageBorder(BorderSides.LEFT, 0.1f, new Color(50, 30, 20), 0.5f)), 0.5f);
+
+        DiplomaTemplate template = DiplomaTemplate.compile(
+                factory.create(Collections.singletonMap("to", "Plantilla")));
+        DiplomaServer server = new DiplomaServer(new InetSocketAddress(port), new DiplomaBuilder(template),
+                factory, new DiplomaCache(64L * 1024 * 1024), newRequestExecutor(), maxRenders, maxQueued);
+        server.start();
+        System.out.println("Servidor de diplomas escuchando en el puerto " + server.getAddress().getPort());
+    }
+
+    /**
+     * Crea el ejecutor de las solicitudes: uno con un hilo virtual por
+     * solicitud si la JVM los soporta o uno con hilos de plataforma en caso
+     * contrario.
+     *
+     * @return El ejecutor.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package edu.hop.diploma.server;
+
+import edu.hop.diploma.border.PageBorder;
+import edu.hop.diploma.builder.Diploma;
+import edu.hop.diploma.javacore.JavaCoreDiploma;
+import edu.hop.diploma.physical.PageProperties;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Crea diplomas {@link JavaCoreDiploma} con las propiedades de página y los
+ * bordes indicados. Los parámetros reconocidos son <code>to</code>
+ * (obligatorio), <code>from</code>, <code>motive</code>, <code>place</code>,
+ * <code>hours</code> y <code>date</code> (en formato ISO, por ejemplo
+ * 2024-05-31).
+ *
+ * @author jjsanche
+ */
+public class JavaCoreDiplomaFactory implements DiplomaFactory {
+    private final PageProperties pageProperties;
+    private final Collection<PageBorder> pageBorders;
+    private final float contentMarginSize;
+
+    /**
+     * Crea una fábrica de diplomas.
+     *
+     * @param pageProperties Las propiedades de la página de cada diploma.
+     * @param pageBorders Los bordes de cada diploma.
+     * @param contentMarginSize El margen del contenido.
+     */
+    public JavaCoreDiplomaFactory(PageProperties pageProperties, Collection<PageBorder> pageBorders,
+            float contentMarginSize) {
+        this.pageProperties = pageProperties;
+        this.pageBorders = new ArrayList<>(pageBorders);
+        this.contentMarginSize = contentMarginSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Diploma create(Map<String, String> parameters) {
+        String to = parameters.get("to");
+
+        if (to == null || to.trim().isEmpty()) {
+            throw new IllegalArgumentException("Parameter 'to' is required.");
+        }
+
+        JavaCoreDiploma diploma = new JavaCoreDiploma(pageProperties, pageBorders);
+        diploma.setContentMarginSize(contentMarginSize);
+        diploma.setTo(to.trim());
+        diploma.setFileName(to.trim().replaceAll("[^\\p{L}\\p{N} _-]", "_") + ".pdf");
+
+        if (parameters.containsKey("from")) {
+            diploma.setFrom(parameters.get("from"));
+        }
+
+        if (parameters.containsKey("motive")) {
+            diploma.setMotive(parameters.get("motive"));
+        }
+
+        if (parameters.containsKey("place")) {
+            diploma.setPlace(parameters.get("place"));
+        }
+
+        if (parameters.containsKey("hours")) {
+            try {
+                diploma.setHours(Integer.parseInt(parameters.get("hours")));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Parameter 'hours' must be an integer.", ex);
+            }
+        }
+
+        if (parameters.containsKey("date")) {
+            try {
+                diploma.setDate(LocalDate.parse(parameters.get("date")));
+            } catch (DateTimeParseException ex) {
+                throw new IllegalArgumentException("Parameter 'date' must be an ISO date.", ex);
+            }
+        }
+
+        return diploma;
+    }
+}
@@ -0,0 +1,106 @@
+package edu.hop.diploma.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Genera carga sobre un {@link DiplomaServer} para medirlo localmente.
+ *
+ * <p>Recibe la URL base del servidor, el número de solicitudes, el número de
+ * clientes concurrentes y el número de nombres distintos a solicitar. Con
+ * menos nombres que clientes se ejercita la unión de solicitudes idénticas.
+ * Al terminar imprime el número de respuestas por código de estado y los
+ * percentiles de latencia.</p>
+ *
+ * @author jjsanche
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int distinctNames = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        AtomicInteger next = new AtomicInteger();
+        long[] latencies = new long[requests];
+        Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        long start = System.nanoTime();
+
+        for (int c = 0; c < clients; c++) {
+            executor.execute(() -> {
+                int i;
+
+                while ((i = next.getAndIncrement()) < requests) {
+                    long requestStart = System.nanoTime();
+                    int status = request(baseUrl, "Participante " + (i % distinctNames));
+                    latencies[i] = System.nanoTime() - requestStart;
+                    statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+                }
+            });
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencies);
+
+        System.out.printf("%d solicitudes en %.2f s (%.1f/s)%n", requests, seconds, requests / seconds);
+        System.out.println("Códigos de estado: " + statuses);
+        System.out.printf("Latencia ms p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n",
+                percentile(latencies, 50), percentile(latencies, 90),
+                percentile(latencies, 99), latencies[requests - 1] / 1e6);
+    }
+
+    /**
+     * Solicita un diploma y lee la respuesta completa.
+     *
+     * @param baseUrl La URL base del servidor.
+     * @param to El nombre del participante.
+     * @return El código de estado o -1 en caso de error de conexión.
+     */
+    private static int request(String baseUrl, String to) {
+        try {
+            URL url = new URL(baseUrl + "/diploma?to=" + URLEncoder.encode(to, "UTF-8"));
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            int status = connection.getResponseCode();
+
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                byte[] buffer = new byte[8192];
+
+                while (body != null && body.read(buffer) >= 0) {
+                    //Se descarta el contenido.
+                }
+            }
+
+            return status;
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Calcula un percentil de latencias ordenadas.
+     *
+     * @param sorted Las latencias en nanosegundos, ordenadas.
+     * @param percentile El percentil.
+     * @return El percentil en milisegundos.
+     */
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(sorted.length * percentile / 100) - 1;
+
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+}
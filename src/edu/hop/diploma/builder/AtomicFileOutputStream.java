@@ -0,0 +1,100 @@
+package edu.hop.diploma.builder;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Flujo que escribe un archivo primero con otro nombre, en el mismo
+ * directorio, y lo renombra al invocar {@link #commit()}. Si el flujo se
+ * cierra sin confirmar, como cuando falla la construcción a la mitad, el
+ * archivo temporal se borra y el archivo final no se crea ni se modifica,
+ * por lo que nunca queda un PDF incompleto con el nombre del diploma.
+ *
+ * @author jjsanche
+ */
+final class AtomicFileOutputStream extends FilterOutputStream {
+    private final Path file;
+    private final Path temporary;
+    private boolean closed;
+
+    /**
+     * Crea el archivo temporal junto al archivo indicado.
+     *
+     * @param file La ruta del archivo a generar.
+     * @throws IOException En caso de no poder crear el archivo temporal.
+     */
+    AtomicFileOutputStream(Path file) throws IOException {
+        super(null);
+        this.file = file.toAbsolutePath();
+        this.temporary = this.file.resolveSibling(this.file.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE) + ".tmp");
+        out = new BufferedOutputStream(Files.newOutputStream(temporary,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        out.write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!closed) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Cierra el archivo temporal y lo renombra con el nombre final,
+     * reemplazando el archivo anterior si existe.
+     *
+     * @throws IOException En caso de error al escribir o renombrar el
+     * archivo.
+     */
+    void commit() throws IOException {
+        closed = true;
+
+        try {
+            out.close();
+
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Cierra el flujo. Si no se confirmó con {@link #commit()}, borra el
+     * archivo temporal.
+     *
+     * @throws IOException En caso de error al borrar el archivo temporal.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            out.close();
+        } catch (IOException ex) {
+            //El archivo temporal se descarta de cualquier forma.
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package edu.hop.diploma.builder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+/**
+ * Bitácora de los diplomas terminados en un lote, que permite reanudar el
+ * lote después de una falla sin construir de nuevo los diplomas que ya
+ * estaban completos.
+ *
+ * <p>La bitácora es un archivo de texto al que sólo se agregan líneas; cada
+ * línea registra la huella, el tamaño, el CRC-32, la ubicación y el nombre de
+ * quien recibe un diploma ya guardado. Las líneas se escriben en grupos y
+ * cada grupo se fuerza a disco con una sola llamada a
+ * {@link FileChannel#force(boolean)}, por lo que una falla sólo puede perder
+ * los últimos registros, cuyos diplomas se construirán de nuevo. Una línea
+ * incompleta al final del archivo se descarta al abrirlo.</p>
+ *
+ * <p>Un diploma se considera terminado si la bitácora lo registra con la
+ * misma huella y su archivo conserva el tamaño y el CRC-32 registrados. Esta
+ * clase puede usarse desde varios hilos.</p>
+ *
+ * @author jjsanche
+ * @see DiplomaBatchBuilder#buildDiplomas(Iterable, BatchJournal)
+ */
+public class BatchJournal implements Closeable {
+    /**
+     * El nombre de archivo sugerido para la bitácora dentro del directorio de
+     * los diplomas.
+     */
+    public static final String DEFAULT_FILE_NAME = "diplomas.journal";
+    /**
+     * Número de registros que se escriben antes de forzarlos a disco cuando
+     * no se indica otro.
+     */
+    public static final int DEFAULT_SYNC_RECORDS = 64;
+    /**
+     * Milisegundos máximos entre dos escrituras a disco cuando no se indica
+     * otro valor.
+     */
+    public static final long DEFAULT_SYNC_MILLIS = 1000;
+
+    private static final String HEADER = "# java-diploma journal v1\n";
+    private static final int FIELDS = 5;
+
+    private final FileChannel channel;
+    private final int syncRecords;
+    private final long syncMillis;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingRecords;
+    private long lastSync = System.nanoTime();
+
+    /**
+     * Abre la bitácora indicada con los intervalos de escritura por omisión,
+     * creándola si no existe.
+     *
+     * @param file La ruta del archivo de la bitácora.
+     * @return La bitácora con los registros de las ejecuciones anteriores.
+     * @throws IOException En caso de error al leer el archivo o de que éste no
+     * tenga el formato esperado.
+     */
+    public static BatchJournal open(Path file) throws IOException {
+        return open(file, DEFAULT_SYNC_RECORDS, DEFAULT_SYNC_MILLIS);
+    }
+
+    /**
+     * Abre la bitácora indicada, creándola si no existe.
+     *
+     * @param file La ruta del archivo de la bitácora.
+     * @param syncRecords El número de registros que se acumulan antes de
+     * escribirlos a disco.
+     * @param syncMillis Los milisegundos máximos que un registro puede esperar
+     * antes de escribirse, revisados al agregar cada registro.
+     * @return La bitácora con los registros de las ejecuciones anteriores.
+     * @throws IOException En caso de error al leer el archivo o de que éste no
+     * tenga el formato esperado.
+     */
+    public static BatchJournal open(Path file, int syncRecords, long syncMillis) throws IOException {
+        if (syncRecords <= 0) {
+            throw new IllegalArgumentException("syncRecords must be greater than 0.");
+        }
+
+        if (syncMillis < 0) {
+            throw new IllegalArgumentException("syncMillis must not be negative.");
+        }
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            BatchJournal journal = new BatchJournal(channel, syncRecords, syncMillis);
+            journal.load(file);
+            return journal;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Crea una bitácora sobre el canal indicado.
+     *
+     * @param channel El canal del archivo de la bitácora.
+     * @param syncRecords El número de registros por escritura.
+     * @param syncMillis Los milisegundos máximos entre escrituras.
+     */
+    private BatchJournal(FileChannel channel, int syncRecords, long syncMillis) {
+        this.channel = channel;
+        this.syncRecords = syncRecords;
+        this.syncMillis = syncMillis;
+    }
+
+    /**
+     * Indica si un diploma se terminó con la huella indicada y su archivo
+     * sigue intacto. La ubicación se toma como la ruta del archivo. Si el
+     * archivo no coincide con el registro, el registro se descarta.
+     *
+     * @param location La ubicación del diploma.
+     * @param fingerprint La huella actual del diploma.
+     * @return true si el diploma puede omitirse.
+     * @throws IOException En caso de error al leer el archivo del diploma.
+     * @see #isCompleted(String, Path, String)
+     */
+    public boolean isCompleted(String location, String fingerprint) throws IOException {
+        return isCompleted(location, Paths.get(location), fingerprint);
+    }
+
+    /**
+     * Indica si un diploma se terminó con la huella indicada y el archivo
+     * donde se guardó sigue intacto. Si el archivo no coincide con el
+     * registro, el registro se descarta.
+     *
+     * @param location La ubicación registrada del diploma.
+     * @param file El archivo del diploma o null si el destino no guarda los
+     * diplomas como archivos, en cuyo caso el diploma no puede verificarse y
+     * nunca se considera terminado.
+     * @param fingerprint La huella actual del diploma.
+     * @return true si el diploma puede omitirse.
+     * @throws IOException En caso de error al leer el archivo del diploma.
+     */
+    public boolean isCompleted(String location, Path file, String fingerprint) throws IOException {
+        Entry entry = entries.get(location);
+
+        if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+            return false;
+        }
+
+        if (file != null) {
+            try {
+                if (Files.size(file) == entry.size && checksumOf(file) == entry.checksum) {
+                    return true;
+                }
+            } catch (NoSuchFileException ex) {
+                //El diploma se eliminó después de registrarse.
+            }
+        }
+
+        entries.remove(location, entry);
+
+        return false;
+    }
+
+    /**
+     * Regresa el tamaño registrado de un diploma.
+     *
+     * @param location La ubicación del diploma.
+     * @return El tamaño en bytes o -1 si el diploma no está registrado.
+     */
+    public long sizeOf(String location) {
+        Entry entry = entries.get(location);
+
+        return entry != null ? entry.size : -1;
+    }
+
+    /**
+     * Registra un diploma terminado. El registro se escribe a disco junto con
+     * los siguientes, al completarse el grupo o al vencer el intervalo.
+     *
+     * @param to El nombre de quien recibe el diploma.
+     * @param location La ubicación donde se guardó el diploma.
+     * @param fingerprint La huella del diploma.
+     * @param size El tamaño en bytes del diploma guardado.
+     * @param checksum El CRC-32 de los bytes del diploma.
+     * @throws IOException En caso de error al escribir la bitácora.
+     */
+    public void record(String to, String location, String fingerprint, long size, long checksum)
+            throws IOException {
+        Entry entry = new Entry(fingerprint, size, checksum);
+
+        synchronized (pending) {
+            pending.append(fingerprint).append('\t')
+                    .append(size).append('\t')
+                    .append(Long.toHexString(checksum)).append('\t')
+                    .append(escape(location)).append('\t')
+                    .append(escape(to == null ? "" : to)).append('\n');
+            entries.put(location, entry);
+            pendingRecords++;
+
+            if (pendingRecords >= syncRecords || System.nanoTime() - lastSync >= syncMillis * 1_000_000) {
+                sync();
+            }
+        }
+    }
+
+    /**
+     * Escribe y fuerza a disco los registros pendientes.
+     *
+     * @throws IOException En caso de error al escribir la bitácora.
+     */
+    public void sync() throws IOException {
+        synchronized (pending) {
+            if (pendingRecords > 0) {
+                write(pending.toString());
+                channel.force(false);
+                pending.setLength(0);
+                pendingRecords = 0;
+            }
+
+            lastSync = System.nanoTime();
+        }
+    }
+
+    /**
+     * Regresa el número de diplomas registrados.
+     *
+     * @return El número de diplomas.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Escribe los registros pendientes y cierra la bitácora.
+     *
+     * @throws IOException En caso de error al escribir la bitácora.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Calcula el CRC-32 de un arreglo de bytes.
+     *
+     * @param data Los bytes.
+     * @return El CRC-32.
+     */
+    public static long checksumOf(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+
+        return crc.getValue();
+    }
+
+    /**
+     * Calcula el CRC-32 de los bytes restantes de un buffer, sin cambiar su
+     * posición.
+     *
+     * @param data El buffer.
+     * @return El CRC-32.
+     */
+    public static long checksumOf(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+
+        return crc.getValue();
+    }
+
+    /**
+     * Calcula el CRC-32 de un archivo.
+     *
+     * @param file El archivo.
+     * @return El CRC-32.
+     * @throws IOException En caso de error al leer el archivo.
+     */
+    private static long checksumOf(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+
+            while ((read = input.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Lee los registros del archivo y descarta la línea incompleta que pudo
+     * dejar una falla al escribir, de modo que los registros nuevos se
+     * agreguen después de la última línea completa.
+     *
+     * @param file La ruta del archivo.
+     * @throws IOException En caso de error al leer el archivo o de que éste no
+     * tenga el formato esperado.
+     */
+    private void load(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        int end = data.length;
+
+        while (end > 0 && data[end - 1] != '\n') {
+            end--;
+        }
+
+        String content = new String(data, 0, end, StandardCharsets.UTF_8);
+
+        if (end == 0) {
+            channel.truncate(0);
+            write(HEADER);
+            channel.force(false);
+            return;
+        }
+
+        if (!content.startsWith(HEADER)) {
+            throw new IOException("Unsupported journal format: " + file);
+        }
+
+        for (String line : content.substring(HEADER.length()).split("\n")) {
+            String[] fields = line.split("\t", -1);
+
+            if (fields.length != FIELDS) {
+                continue;
+            }
+
+            try {
+                entries.put(unescape(fields[3]), new Entry(fields[0], Long.parseLong(fields[1]),
+                        Long.parseLong(fields[2], 16)));
+            } catch (NumberFormatException ex) {
+                //Un registro dañado sólo provoca que el diploma se construya
+                //de nuevo.
+            }
+        }
+
+        if (end < data.length) {
+            channel.truncate(end);
+            channel.force(false);
+        }
+
+        channel.position(end);
+    }
+
+    /**
+     * Escribe texto al final del archivo.
+     *
+     * @param text El texto a escribir.
+     * @throws IOException En caso de error al escribir.
+     */
+    private void write(String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Escapa los tabuladores, cambios de línea y diagonales invertidas.
+     *
+     * @param value El valor a escapar.
+     * @return El valor escapado.
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /**
+     * Restaura un valor escapado con {@link #escape(String)}.
+     *
+     * @param value El valor escapado.
+     * @return El valor original.
+     */
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+
+        StringBuilder builder = new StringBuilder(value.length());
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '\\' && i + 1 < value.length()) {
+                char escaped = value.charAt(++i);
+                builder.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                builder.append(c);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Clase que describe el registro de un diploma terminado.
+     */
+    private static class Entry {
+
+        public final String fingerprint;
+        public final long size;
+        public final long checksum;
+
+        /**
+         * Crea el registro de un diploma.
+         *
+         * @param fingerprint La huella del diploma.
+         * @param size El tamaño en bytes del diploma.
+         * @param checksum El CRC-32 del diploma.
+         */
+        public Entry(String fingerprint, long size, long checksum) {
+            this.fingerprint = fingerprint;
+            this.size = size;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package edu.hop.diploma.builder;
+
+import java.awt.Color;
+import java.awt.geom.PathIterator;
+import java.io.IOException;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+
+/**
+ * Escribe los operadores de dibujo en el flujo de contenido de una página
+ * llevando la cuenta del estado gráfico, de modo que el flujo sólo contiene
+ * los cambios de estado necesarios.
+ *
+ * <p>El color de relleno y la fuente sólo se escriben cuando cambian, los
+ * textos consecutivos comparten un mismo bloque BT/ET y se posicionan de
+ * forma relativa al anterior, y los rectángulos consecutivos del mismo color
+ * y las líneas consecutivas se agrupan en un solo trazo. El orden de dibujo
+ * no cambia, por lo que la página se ve igual que si cada elemento se
+ * dibujara por separado.</p>
+ *
+ * @author jjsanche
+ */
+final class ContentEmitter {
+    private static final int NO_PATH = 0;
+    private static final int FILL_PATH = 1;
+    private static final int STROKE_PATH = 2;
+
+    private final PDPageContentStream contentStream;
+    private boolean colorKnown;
+    private int fillColor;
+    private PDFont font;
+    private float fontSize;
+    private boolean inText;
+    private float lineX;
+    private float lineY;
+    private int path = NO_PATH;
+
+    /**
+     * Crea un emisor para el flujo de contenido indicado. Como el estado
+     * gráfico previo del flujo no se conoce, el primer color y la primera
+     * fuente siempre se escriben.
+     *
+     * @param contentStream El flujo de contenido de la página.
+     */
+    ContentEmitter(PDPageContentStream contentStream) {
+        this.contentStream = contentStream;
+    }
+
+    /**
+     * Cambia el color de relleno, usado por los rectángulos y los textos.
+     *
+     * @param rgb El color en formato 0xRRGGBB.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    void setFillColor(int rgb) throws IOException {
+        if (colorKnown && fillColor == rgb) {
+            return;
+        }
+
+        //El color con el que se rellena un trazo es el vigente al cerrarlo.
+        paintPath();
+        contentStream.setNonStrokingColor(new Color(rgb));
+        colorKnown = true;
+        fillColor = rgb;
+    }
+
+    /**
+     * Rellena un rectángulo con el color de relleno actual.
+     *
+     * @param x La coordenada x de una esquina del rectángulo.
+     * @param y La coordenada y de una esquina del rectángulo.
+     * @param width El ancho del rectángulo.
+     * @param height El alto del rectángulo.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    void fillRect(float x, float y, float width, float height) throws IOException {
+        beginPath(FILL_PATH);
+
+        //Todos los rectángulos del trazo deben tener la misma orientación
+        //para que la regla de relleno no deje huecos donde se enciman.
+        if (width < 0) {
+            x += width;
+            width = -width;
+        }
+
+        if (height < 0) {
+            y += height;
+            height = -height;
+        }
+
+        contentStream.addRect(x, y, width, height);
+    }
+
+    /**
+     * Traza una línea con el color de trazo actual.
+     *
+     * @param xStart La coordenada x del inicio de la línea.
+     * @param yStart La coordenada y del inicio de la línea.
+     * @param xEnd La coordenada x del final de la línea.
+     * @param yEnd La coordenada y del final de la línea.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    void strokeLine(float xStart, float yStart, float xEnd, float yEnd) throws IOException {
+        beginPath(STROKE_PATH);
+        contentStream.addLine(xStart, yStart, xEnd, yEnd);
+    }
+
+    /**
+     * Escribe un texto con una fuente estándar.
+     *
+     * @param textFont La fuente del texto.
+     * @param size El tamaño de la fuente.
+     * @param x La coordenada x donde inicia el texto.
+     * @param y La coordenada y de la línea base del texto.
+     * @param text El texto a escribir.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    void showText(PDFont textFont, float size, float x, float y, String text) throws IOException {
+        moveTo(textFont, size, x, y);
+        contentStream.drawString(text);
+    }
+
+    /**
+     * Escribe un texto ya codificado con los glifos de una fuente incrustada.
+     *
+     * @param textFont La fuente del texto.
+     * @param size El tamaño de la fuente.
+     * @param x La coordenada x donde inicia el texto.
+     * @param y La coordenada y de la línea base del texto.
+     * @param glyphs La cadena PDF con los códigos de los glifos.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    void showGlyphs(PDFont textFont, float size, float x, float y, String glyphs) throws IOException {
+        moveTo(textFont, size, x, y);
+        contentStream.appendRawCommands(glyphs + " Tj\n");
+    }
+
+    /**
+     * Dibuja una imagen.
+     *
+     * @param image La imagen, ya agregada al documento.
+     * @param x La coordenada x de la esquina inferior izquierda.
+     * @param y La coordenada y de la esquina inferior izquierda.
+     * @param width El ancho de la imagen en la página.
+     * @param height El alto de la imagen en la página.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    void drawImage(PDXObjectImage image, float x, float y, float width, float height) throws IOException {
+        endText();
+        paintPath();
+        contentStream.drawXObject(image, x, y, width, height);
+    }
+
+    /**
+     * Termina el bloque de texto y el trazo pendientes. Se invoca al
+     * terminar de dibujar; el flujo de contenido no se cierra.
+     *
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    void finish() throws IOException {
+        endText();
+        paintPath();
+    }
+
+    /**
+     * Se coloca al inicio de un texto, abriendo un bloque de texto si no hay
+     * uno abierto y cambiando la fuente si es distinta de la actual. Dentro
+     * de un bloque, la posición es relativa al inicio del texto anterior.
+     *
+     * @param textFont La fuente del texto.
+     * @param size El tamaño de la fuente.
+     * @param x La coordenada x donde inicia el texto.
+     * @param y La coordenada y de la línea base del texto.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void moveTo(PDFont textFont, float size, float x, float y) throws IOException {
+        if (!inText) {
+            paintPath();
+            contentStream.beginText();
+            inText = true;
+            lineX = 0;
+            lineY = 0;
+        }
+
+        //La fuente es parte del estado gráfico, por lo que se conserva entre
+        //bloques de texto.
+        if (font != textFont || fontSize != size) {
+            contentStream.setFont(textFont, size);
+            font = textFont;
+            fontSize = size;
+        }
+
+        contentStream.moveTextPositionByAmount(x - lineX, y - lineY);
+        lineX = x;
+        lineY = y;
+    }
+
+    /**
+     * Cierra el bloque de texto abierto, si lo hay.
+     *
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void endText() throws IOException {
+        if (inText) {
+            contentStream.endText();
+            inText = false;
+        }
+    }
+
+    /**
+     * Prepara un trazo del tipo indicado, pintando antes el trazo pendiente
+     * si es de otro tipo.
+     *
+     * @param type FILL_PATH o STROKE_PATH.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void beginPath(int type) throws IOException {
+        endText();
+
+        if (path != type) {
+            paintPath();
+            path = type;
+        }
+    }
+
+    /**
+     * Rellena o traza el trazo pendiente, si lo hay.
+     *
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void paintPath() throws IOException {
+        if (path == FILL_PATH) {
+            contentStream.fill(PathIterator.WIND_NON_ZERO);
+        } else if (path == STROKE_PATH) {
+            contentStream.stroke();
+        }
+
+        path = NO_PATH;
+    }
+}
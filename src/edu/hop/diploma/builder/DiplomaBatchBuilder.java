@@ -0,0 +1,543 @@
+package edu.hop.diploma.builder;
+
+import edu.hop.diploma.output.DiplomaSink;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Clase encargada de construir lotes de diplomas de manera concurrente.
+ *
+ * <p>Los diplomas se construyen en el {@link Executor} indicado, el cuál puede
+ * ser un grupo fijo de hilos o uno que cree un hilo virtual por tarea. El
+ * número de diplomas en construcción al mismo tiempo se limita para que la
+ * memoria usada no crezca con el tamaño del lote.</p>
+ *
+ * @author jjsanche
+ */
+public class DiplomaBatchBuilder {
+    private static final String PREVIEW_EXTENSION = ".png";
+
+    private final DiplomaBuilder builder;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final DiplomaSink sink;
+    private final DiplomaPreviewer previewer;
+
+    /**
+     * Crea un constructor de lotes que usa un {@link DiplomaBuilder} nuevo.
+     *
+     * @param executor El ejecutor donde se construirán los diplomas. Quien
+     * invoca es responsable de terminarlo.
+     * @param maxInFlight El número máximo de diplomas en construcción al mismo
+     * tiempo.
+     */
+    public DiplomaBatchBuilder(Executor executor, int maxInFlight) {
+        this(new DiplomaBuilder(), executor, maxInFlight);
+    }
+
+    /**
+     * Crea un constructor de lotes.
+     *
+     * @param builder El {@link DiplomaBuilder} con el cuál se construirá cada
+     * diploma.
+     * @param executor El ejecutor donde se construirán los diplomas. Quien
+     * invoca es responsable de terminarlo.
+     * @param maxInFlight El número máximo de diplomas en construcción al mismo
+     * tiempo.
+     */
+    public DiplomaBatchBuilder(DiplomaBuilder builder, Executor executor, int maxInFlight) {
+        this(builder, executor, maxInFlight, null);
+    }
+
+    /**
+     * Crea un constructor de lotes que guarda los diplomas en el destino
+     * indicado en lugar de usar el nombre de archivo de cada uno.
+     *
+     * @param builder El {@link DiplomaBuilder} con el cuál se construirá cada
+     * diploma.
+     * @param executor El ejecutor donde se construirán los diplomas. Quien
+     * invoca es responsable de terminarlo.
+     * @param maxInFlight El número máximo de diplomas en construcción al mismo
+     * tiempo, incluyendo los que esperan a que el destino los guarde.
+     * @param sink El destino de los diplomas o null para guardar cada uno en
+     * su propio archivo. Quien invoca es responsable de cerrarlo.
+     */
+    public DiplomaBatchBuilder(DiplomaBuilder builder, Executor executor, int maxInFlight,
+            DiplomaSink sink) {
+        this(builder, executor, maxInFlight, sink, null);
+    }
+
+    /**
+     * Crea un constructor de lotes que además genera la vista previa de cada
+     * diploma construido. Las vistas previas se guardan junto a los PDF, con
+     * el mismo nombre y la extensión ".png", y se dibujan en el ejecutor del
+     * generador mientras el lote continúa.
+     *
+     * @param builder El {@link DiplomaBuilder} con el cuál se construirá cada
+     * diploma.
+     * @param executor El ejecutor donde se construirán los diplomas. Quien
+     * invoca es responsable de terminarlo.
+     * @param maxInFlight El número máximo de diplomas en construcción al mismo
+     * tiempo, incluyendo los que esperan a que el destino los guarde o su
+     * vista previa.
+     * @param sink El destino de los diplomas o null para guardar cada uno en
+     * su propio archivo. Quien invoca es responsable de cerrarlo.
+     * @param previewer El generador de las vistas previas o null para no
+     * generarlas.
+     */
+    public DiplomaBatchBuilder(DiplomaBuilder builder, Executor executor, int maxInFlight,
+            DiplomaSink sink, DiplomaPreviewer previewer) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be greater than 0.");
+        }
+
+        this.builder = builder;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.sink = sink;
+        this.previewer = previewer;
+    }
+
+    /**
+     * Construye todos los diplomas del flujo recibido.
+     *
+     * @param diplomas El flujo de diplomas a construir.
+     * @return Una lista con el resultado de cada diploma en el mismo orden en
+     * que fueron recibidos.
+     * @throws InterruptedException En caso de que el hilo actual sea
+     * interrumpido mientras espera a que terminen las construcciones.
+     */
+    public List<DiplomaBuildResult> buildDiplomas(Stream<? extends Diploma> diplomas)
+            throws InterruptedException {
+        return buildDiplomas(diplomas.iterator(), null, null);
+    }
+
+    /**
+     * Construye todos los diplomas recibidos. Los diplomas se obtienen del
+     * iterador conforme hay espacio para construirlos, por lo que no es
+     * necesario tener el lote completo en memoria.
+     *
+     * @param diplomas Los diplomas a construir.
+     * @return Una lista con el resultado de cada diploma en el mismo orden en
+     * que fueron recibidos.
+     * @throws InterruptedException En caso de que el hilo actual sea
+     * interrumpido mientras espera a que terminen las construcciones.
+     */
+    public List<DiplomaBuildResult> buildDiplomas(Iterable<? extends Diploma> diplomas)
+            throws InterruptedException {
+        return buildDiplomas(diplomas.iterator(), null, null);
+    }
+
+    /**
+     * Construye sólo los diplomas que cambiaron desde la construcción
+     * registrada en el manifiesto o cuyo archivo ya no existe. El manifiesto
+     * se actualiza con cada diploma construido, pero quien invoca es
+     * responsable de guardarlo al terminar.
+     *
+     * @param diplomas Los diplomas a construir.
+     * @param manifest El registro de las huellas de la construcción anterior.
+     * @return Una lista con el resultado de cada diploma en el mismo orden en
+     * que fueron recibidos. Los diplomas omitidos se indican con
+     * {@link DiplomaBuildResult#isSkipped()}.
+     * @throws InterruptedException En caso de que el hilo actual sea
+     * interrumpido mientras espera a que terminen las construcciones.
+     */
+    public List<DiplomaBuildResult> buildDiplomas(Iterable<? extends Diploma> diplomas,
+            DiplomaManifest manifest) throws InterruptedException {
+        return buildDiplomas(diplomas.iterator(), manifest, null);
+    }
+
+    /**
+     * Construye sólo los diplomas del flujo que cambiaron desde la
+     * construcción registrada en el manifiesto.
+     *
+     * @param diplomas El flujo de diplomas a construir.
+     * @param manifest El registro de las huellas de la construcción anterior.
+     * @return Una lista con el resultado de cada diploma en el mismo orden en
+     * que fueron recibidos.
+     * @throws InterruptedException En caso de que el hilo actual sea
+     * interrumpido mientras espera a que terminen las construcciones.
+     * @see #buildDiplomas(Iterable, DiplomaManifest)
+     */
+    public List<DiplomaBuildResult> buildDiplomas(Stream<? extends Diploma> diplomas,
+            DiplomaManifest manifest) throws InterruptedException {
+        return buildDiplomas(diplomas.iterator(), manifest, null);
+    }
+
+    /**
+     * Construye los diplomas que no estén registrados como terminados en la
+     * bitácora, o cuyo archivo ya no coincida con el registro, y registra en
+     * ella cada diploma guardado. Si el lote se interrumpe, al ejecutarlo de
+     * nuevo con la misma bitácora sólo se construyen los diplomas faltantes o
+     * dañados. Cada diploma se registra hasta que el destino lo guarda, desde
+     * el hilo que lo guardó, y al terminar los registros pendientes se
+     * escriben a disco.
+     *
+     * @param diplomas Los diplomas a construir.
+     * @param journal La bitácora del lote. Quien invoca es responsable de
+     * cerrarla.
+     * @return Una lista con el resultado de cada diploma en el mismo orden en
+     * que fueron recibidos. Los diplomas omitidos se indican con
+     * {@link DiplomaBuildResult#isSkipped()}.
+     * @throws InterruptedException En caso de que el hilo actual sea
+     * interrumpido mientras espera a que terminen las construcciones.
+     * @throws IOException En caso de error al escribir la bitácora.
+     */
+    public List<DiplomaBuildResult> buildDiplomas(Iterable<? extends Diploma> diplomas,
+            BatchJournal journal) throws InterruptedException, IOException {
+        return buildDiplomas(diplomas.iterator(), journal);
+    }
+
+    /**
+     * Construye los diplomas del flujo que no estén registrados como
+     * terminados en la bitácora.
+     *
+     * @param diplomas El flujo de diplomas a construir.
+     * @param journal La bitácora del lote.
+     * @return Una lista con el resultado de cada diploma en el mismo orden en
+     * que fueron recibidos.
+     * @throws InterruptedException En caso de que el hilo actual sea
+     * interrumpido mientras espera a que terminen las construcciones.
+     * @throws IOException En caso de error al escribir la bitácora.
+     * @see #buildDiplomas(Iterable, BatchJournal)
+     */
+    public List<DiplomaBuildResult> buildDiplomas(Stream<? extends Diploma> diplomas,
+            BatchJournal journal) throws InterruptedException, IOException {
+        return buildDiplomas(diplomas.iterator(), journal);
+    }
+
+    /**
+     * Construye los diplomas del iterador con la bitácora indicada y escribe
+     * sus registros pendientes a disco, aun si el iterador falla.
+     *
+     * @param iterator El iterador con los diplomas a construir.
+     * @param journal La bitácora del lote.
+     * @return Una lista con el resultado de cada diploma.
+     * @throws InterruptedException En caso de que el hilo actual sea
+     * interrumpido mientras espera a que terminen las construcciones.
+     * @throws IOException En caso de error al escribir la bitácora.
+     */
+    private List<DiplomaBuildResult> buildDiplomas(Iterator<? extends Diploma> iterator,
+            BatchJournal journal) throws InterruptedException, IOException {
+        List<DiplomaBuildResult> results;
+
+        try {
+            results = buildDiplomas(iterator, null, journal);
+        } catch (RuntimeException | Error ex) {
+            try {
+                journal.sync();
+            } catch (IOException | RuntimeException syncError) {
+                ex.addSuppressed(syncError);
+            }
+
+            throw ex;
+        }
+
+        journal.sync();
+
+        return results;
+    }
+
+    /**
+     * Construye todos los diplomas del iterador recibido. Los registros que
+     * el iterador reporta con {@link InvalidRecordException} se incluyen
+     * como diplomas fallidos y el lote continúa; si el iterador falla de
+     * otra forma, se espera a que terminen los diplomas en curso antes de
+     * propagar el error.
+     *
+     * @param iterator El iterador con los diplomas a construir.
+     * @param manifest El registro de huellas o null para construir todos.
+     * @param journal La bitácora del lote o null para no usarla.
+     * @return Una lista con el resultado de cada diploma.
+     * @throws InterruptedException En caso de que el hilo actual sea
+     * interrumpido mientras espera a que terminen las construcciones.
+     */
+    private List<DiplomaBuildResult> buildDiplomas(Iterator<? extends Diploma> iterator,
+            DiplomaManifest manifest, BatchJournal journal) throws InterruptedException {
+        Semaphore permits = new Semaphore(maxInFlight);
+        List<DiplomaBuildResult[]> slots = new ArrayList<>();
+
+        while (true) {
+            Diploma diploma;
+
+            try {
+                if (!iterator.hasNext()) {
+                    break;
+                }
+
+                diploma = iterator.next();
+            } catch (InvalidRecordException ex) {
+                slots.add(new DiplomaBuildResult[] {new DiplomaBuildResult(null, null, 0, 0, ex)});
+                continue;
+            } catch (RuntimeException | Error ex) {
+                //Las tareas en curso aún usan la bitácora y el destino.
+                permits.acquireUninterruptibly(maxInFlight);
+                permits.release(maxInFlight);
+                throw ex;
+            }
+
+            DiplomaBuildResult[] slot = new DiplomaBuildResult[1];
+            slots.add(slot);
+            permits.acquire();
+
+            try {
+                executor.execute(() -> {
+                    CompletableFuture<Void> done;
+
+                    try {
+                        done = buildDiploma(diploma, manifest, journal).thenAccept(result -> slot[0] = result);
+
+                        if (previewer != null) {
+                            //La vista previa se inicia en el ejecutor y no en
+                            //el hilo que guardó el diploma, que puede ser el
+                            //escritor del destino.
+                            done = done.thenComposeAsync(ignored -> writePreview(diploma, slot), executor);
+                        }
+                    } catch (Throwable ex) {
+                        done = new CompletableFuture<>();
+                        done.completeExceptionally(ex);
+                    }
+
+                    //El permiso se conserva hasta que el diploma se guarda y
+                    //termina su vista previa para que los diplomas pendientes
+                    //no se acumulen en memoria.
+                    done.whenComplete((ignored, ex) -> {
+                        if (ex != null) {
+                            //Ningún lugar debe quedar vacío, aunque el error
+                            //no provenga de la construcción del diploma.
+                            Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                            slot[0] = new DiplomaBuildResult(diploma.getTo(), diploma.getFileName(), 0, 0, cause);
+                        }
+
+                        permits.release();
+                    });
+                });
+            } catch (RejectedExecutionException ex) {
+                slot[0] = new DiplomaBuildResult(diploma.getTo(), diploma.getFileName(), 0, 0, ex);
+                permits.release();
+            }
+        }
+
+        //Al obtener todos los permisos se garantiza que todas las tareas
+        //terminaron y que sus resultados son visibles para este hilo.
+        permits.acquire(maxInFlight);
+        permits.release(maxInFlight);
+        List<DiplomaBuildResult> results = new ArrayList<>(slots.size());
+
+        for (DiplomaBuildResult[] slot : slots) {
+            results.add(slot[0]);
+        }
+
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Inicia la vista previa de un diploma y la guarda junto a su PDF al
+     * terminar. Los diplomas omitidos sólo la generan si no existe. Si la
+     * vista previa falla, el resultado del diploma se reemplaza por uno con
+     * el error.
+     *
+     * @param diploma El diploma.
+     * @param slot El lugar donde está el resultado de la construcción.
+     * @return Una tarea que termina al guardar la vista previa o una tarea
+     * terminada si no debe generarse.
+     */
+    private CompletableFuture<Void> writePreview(Diploma diploma, DiplomaBuildResult[] slot) {
+        DiplomaBuildResult result = slot[0];
+
+        if (previewer == null || !result.isSuccessful()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String pdfName = sink != null ? Paths.get(diploma.getFileName()).getFileName().toString()
+                : diploma.getFileName();
+        String name = pdfName.replaceFirst("(?i)\\.pdf$", "") + PREVIEW_EXTENSION;
+
+        if (result.isSkipped() && (sink != null ? sink.contains(name) : new File(name).isFile())) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> saved = previewer.preview(diploma).thenCompose(png -> savePreview(name, png));
+
+        return saved.handle((ignored, error) -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+
+            if (cause != null) {
+                slot[0] = new DiplomaBuildResult(result.getTo(), result.getFileName(), result.getBytes(),
+                        result.getDurationNanos(), cause, result.isSkipped());
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Guarda la vista previa de un diploma en el destino o en su propio
+     * archivo.
+     *
+     * @param name El nombre o la ruta del archivo de la vista previa.
+     * @param png Los bytes de la imagen.
+     * @return Una tarea que termina al guardar la imagen.
+     */
+    private CompletableFuture<Void> savePreview(String name, byte[] png) {
+        if (sink != null) {
+            return sink.submit(name, ByteBuffer.wrap(png));
+        }
+
+        CompletableFuture<Void> saved = new CompletableFuture<>();
+
+        try {
+            Files.write(Paths.get(name), png);
+            saved.complete(null);
+        } catch (IOException ex) {
+            saved.completeExceptionally(ex);
+        }
+
+        return saved;
+    }
+
+    /**
+     * Construye un diploma registrando su duración y el error que ocurra. Si
+     * se recibe un manifiesto y el diploma no cambió desde la construcción
+     * registrada, se omite. Con un destino, el diploma se registra en el
+     * manifiesto y en la bitácora hasta que el destino lo guarda, desde el
+     * hilo que lo guardó.
+     *
+     * @param diploma El diploma a construir.
+     * @param manifest El registro de huellas o null para construir siempre.
+     * @param journal La bitácora del lote o null para no usarla.
+     * @return Una tarea que termina con el resultado de la construcción
+     * cuando el diploma queda guardado.
+     */
+    private CompletableFuture<DiplomaBuildResult> buildDiploma(Diploma diploma, DiplomaManifest manifest,
+            BatchJournal journal) {
+        long start = System.nanoTime();
+        String location = diploma.getFileName();
+
+        try {
+            String name = null;
+            String fingerprint = null;
+
+            if (sink != null) {
+                name = Paths.get(diploma.getFileName()).getFileName().toString();
+                location = sink.locationOf(name);
+            }
+
+            if (manifest != null || journal != null) {
+                fingerprint = DiplomaFingerprint.of(diploma, builder);
+                boolean exists = sink != null ? sink.contains(name) : new File(location).isFile();
+                //Los destinos que no guardan archivos no permiten verificar
+                //ni medir el diploma.
+                Path file = sink != null ? sink.pathOf(name) : Paths.get(location);
+
+                if (exists && (manifest != null ? manifest.matches(location, fingerprint)
+                        : journal.isCompleted(location, file, fingerprint))) {
+                    return CompletableFuture.completedFuture(new DiplomaBuildResult(diploma.getTo(), location,
+                            journal != null ? journal.sizeOf(location) : file != null ? file.toFile().length() : 0,
+                            System.nanoTime() - start, null, true));
+                }
+            }
+
+            if (sink != null) {
+                ByteBuffer pdf = builder.buildByteBuffer(diploma);
+                long size = pdf.remaining();
+                long checksum = journal != null ? BatchJournal.checksumOf(pdf) : 0;
+                long duration = System.nanoTime() - start;
+                String savedLocation = location;
+                String savedFingerprint = fingerprint;
+
+                return sink.submit(name, pdf).handle((ignored, error) -> saved(diploma, savedLocation,
+                        savedFingerprint, size, checksum, duration, manifest, journal, error));
+            }
+
+            long size;
+            long checksum = 0;
+
+            if (journal != null) {
+                //El CRC se calcula mientras se escribe el archivo para no
+                //tener que leerlo de nuevo.
+                try (AtomicFileOutputStream file = new AtomicFileOutputStream(Paths.get(location))) {
+                    CheckedOutputStream output = new CheckedOutputStream(file, new CRC32());
+                    builder.build(diploma, output);
+                    file.commit();
+                    checksum = output.getChecksum().getValue();
+                }
+
+                size = new File(location).length();
+            } else {
+                builder.build(diploma);
+                size = new File(location).length();
+            }
+
+            return CompletableFuture.completedFuture(saved(diploma, location, fingerprint, size, checksum,
+                    System.nanoTime() - start, manifest, journal, null));
+        } catch (Throwable ex) {
+            if (manifest != null) {
+                manifest.remove(location);
+            }
+
+            return CompletableFuture.completedFuture(new DiplomaBuildResult(diploma.getTo(), location, 0,
+                    System.nanoTime() - start, ex));
+        }
+    }
+
+    /**
+     * Registra un diploma guardado en el manifiesto y en la bitácora y crea
+     * su resultado.
+     *
+     * @param diploma El diploma.
+     * @param location La ubicación del diploma.
+     * @param fingerprint La huella del diploma o null si no se calculó.
+     * @param size El tamaño en bytes del diploma.
+     * @param checksum El CRC-32 de los bytes del diploma.
+     * @param duration El tiempo en nanosegundos que tomó construirlo.
+     * @param manifest El registro de huellas o null para no usarlo.
+     * @param journal La bitácora del lote o null para no usarla.
+     * @param error El error al guardar el diploma o null si se guardó.
+     * @return El resultado de la construcción.
+     */
+    private static DiplomaBuildResult saved(Diploma diploma, String location, String fingerprint, long size,
+            long checksum, long duration, DiplomaManifest manifest, BatchJournal journal, Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+
+        if (cause == null) {
+            try {
+                if (manifest != null) {
+                    manifest.put(location, fingerprint);
+                }
+
+                if (journal != null) {
+                    journal.record(diploma.getTo(), location, fingerprint, size, checksum);
+                }
+            } catch (IOException | RuntimeException ex) {
+                cause = ex;
+            }
+        }
+
+        if (cause != null) {
+            if (manifest != null) {
+                manifest.remove(location);
+            }
+
+            return new DiplomaBuildResult(diploma.getTo(), location, 0, duration, cause);
+        }
+
+        return new DiplomaBuildResult(diploma.getTo(), location, size, duration, null);
+    }
+}
@@ -0,0 +1,118 @@
+package edu.hop.diploma.builder;
+
+/**
+ * Clase que describe el resultado de construir un diploma dentro de un lote.
+ *
+ * @author jjsanche
+ */
+public final class DiplomaBuildResult {
+    private final String to;
+    private final String fileName;
+    private final long bytes;
+    private final long durationNanos;
+    private final Throwable error;
+    private final boolean skipped;
+
+    /**
+     * Crea el resultado de la construcción de un diploma.
+     *
+     * @param to El nombre de quien recibe el diploma.
+     * @param fileName La ruta del archivo generado.
+     * @param bytes El tamaño en bytes del archivo generado.
+     * @param durationNanos El tiempo en nanosegundos que tomó construir el
+     * diploma.
+     * @param error El error ocurrido durante la construcción o null en caso
+     * de que el diploma se haya construido correctamente.
+     */
+    public DiplomaBuildResult(String to, String fileName, long bytes,
+            long durationNanos, Throwable error) {
+        this(to, fileName, bytes, durationNanos, error, false);
+    }
+
+    /**
+     * Crea el resultado de un diploma indicando si su construcción se omitió.
+     *
+     * @param to El nombre de quien recibe el diploma.
+     * @param fileName La ruta del archivo generado.
+     * @param bytes El tamaño en bytes del archivo generado.
+     * @param durationNanos El tiempo en nanosegundos que tomó construir el
+     * diploma o verificar que no era necesario construirlo.
+     * @param error El error ocurrido durante la construcción o null en caso
+     * de que el diploma se haya construido correctamente.
+     * @param skipped true si el diploma no se construyó porque no cambió desde
+     * la construcción anterior.
+     */
+    public DiplomaBuildResult(String to, String fileName, long bytes,
+            long durationNanos, Throwable error, boolean skipped) {
+        this.to = to;
+        this.fileName = fileName;
+        this.bytes = bytes;
+        this.durationNanos = durationNanos;
+        this.error = error;
+        this.skipped = skipped;
+    }
+
+    /**
+     * Regresa el nombre de quien recibe el diploma.
+     *
+     * @return Una cadena de caracteres con el nombre de quien recibe el diploma.
+     */
+    public String getTo() {
+        return to;
+    }
+
+    /**
+     * Regresa la ruta del archivo generado.
+     *
+     * @return Un String con la ruta completa del archivo del diploma.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Regresa el tamaño del archivo generado.
+     *
+     * @return El número de bytes escritos o 0 si el diploma no se construyó.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Regresa el tiempo que tomó construir el diploma.
+     *
+     * @return La duración de la construcción en nanosegundos.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Regresa el error ocurrido durante la construcción.
+     *
+     * @return El error ocurrido o null si el diploma se construyó correctamente.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * true si el diploma se construyó correctamente.
+     *
+     * @return true si no ocurrió ningún error, false en caso contrario.
+     */
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * Indica si la construcción del diploma se omitió porque su archivo ya
+     * estaba actualizado.
+     *
+     * @return true si el diploma no se construyó de nuevo.
+     */
+    public boolean isSkipped() {
+        return skipped;
+    }
+}
@@ -1,26 +1,32 @@
 package edu.hop.diploma.builder;
 
-import edu.hop.diploma.border.BorderSides;
 import edu.hop.diploma.border.PageBorder;
-import edu.hop.diploma.physical.PageProperties;
-import edu.hop.diploma.text.Alignments;
+import edu.hop.diploma.image.ImageCache;
+import edu.hop.diploma.metrics.RenderListener;
+import edu.hop.diploma.metrics.RenderPhase;
+import edu.hop.diploma.output.DiplomaSink;
+import edu.hop.diploma.text.EmbeddedFont;
+import edu.hop.diploma.text.FontSubset;
 import edu.hop.diploma.text.Text;
-import java.io.File;
-import java.io.FileInputStream;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.pdfbox.exceptions.COSVisitorException;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.graphics.xobject.PDJpeg;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectForm;
 import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
 
 /**
@@ -30,371 +36,772 @@ import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
  * @author jjsanche
  */
 public class DiplomaBuilder {
+    private final ImageCache imageCache;
+    private final DiplomaTemplate template;
+    private final RenderListener listener;
+    private volatile InvariantLayer invariantLayer;
+
+    /**
+     * Crea un constructor de diplomas que usa el caché de imágenes compartido
+     * por todo el proceso.
+     */
+    public DiplomaBuilder() {
+        this(ImageCache.getSharedCache());
+    }
+
+    /**
+     * Crea un constructor de diplomas que usa el caché de imágenes indicado.
+     *
+     * @param imageCache El caché del cuál se obtendrán las firmas.
+     */
+    public DiplomaBuilder(ImageCache imageCache) {
+        this(imageCache, null);
+    }
+
+    /**
+     * Crea un constructor de diplomas que reutiliza el acomodo de la plantilla
+     * indicada para los diplomas que tengan su misma estructura.
+     *
+     * @param template La plantilla compilada a reutilizar.
+     */
+    public DiplomaBuilder(DiplomaTemplate template) {
+        this(ImageCache.getSharedCache(), template);
+    }
+
+    /**
+     * Crea un constructor de diplomas con el caché de imágenes y la plantilla
+     * indicados.
+     *
+     * @param imageCache El caché del cuál se obtendrán las firmas.
+     * @param template La plantilla compilada a reutilizar o null para calcular
+     * siempre el acomodo completo.
+     */
+    public DiplomaBuilder(ImageCache imageCache, DiplomaTemplate template) {
+        this(imageCache, template, null);
+    }
+
+    /**
+     * Crea un constructor de diplomas que entrega las mediciones de cada
+     * documento construido al receptor indicado.
+     *
+     * @param imageCache El caché del cuál se obtendrán las firmas.
+     * @param template La plantilla compilada a reutilizar o null para calcular
+     * siempre el acomodo completo.
+     * @param listener Quien recibirá las mediciones de cada documento o null
+     * para no medir las construcciones.
+     */
+    public DiplomaBuilder(ImageCache imageCache, DiplomaTemplate template, RenderListener listener) {
+        this.imageCache = imageCache;
+        this.template = template;
+        this.listener = listener;
+    }
+
+    /**
+     * @return El caché del cuál se obtienen las firmas.
+     */
+    ImageCache getImageCache() {
+        return imageCache;
+    }
+
+    /**
+     * @return La plantilla compilada o null si no se usa una.
+     */
+    DiplomaTemplate getTemplate() {
+        return template;
+    }
 
-    private static float pointsPerUnit;
-    private static float pageWidth;
-    private static float pageHeight;
-    private static float currentYPosition;
-    private static float currentXPosition;
-    private static float heightTopLimit;
-    private static float heightBottomLimit;
-    private static float widthRightLimit;
-    private static float widthLeftLimit;
-    private static float contentMarginSize;
-    private static Diploma diploma;
-    private static PDJpeg signImage;
     /**
      * Construye un diploma haciendo uso de la libreria Apache PDFBox.
      *
+     * <p>Este método se conserva por compatibilidad y delega en una nueva
+     * instancia de {@link DiplomaBuilder}.</p>
+     *
      * @param diploma El {@link Diploma} a construir.
+     * @throws IOException En caso de no poder leer la firma del diploma o de
+     * no poder guardar el archivo del mismo.
      */
     public static void buildDiploma(Diploma diploma) throws IOException {
-        DiplomaBuilder.diploma = diploma;
-        PageProperties pageProperties = diploma.getPageProperties();
-        pointsPerUnit = pageProperties.getSizeUnit().getPointsPerUnit();
-        contentMarginSize = diploma.getContentMarginSize() * pointsPerUnit;
-        pageWidth = pageProperties.getWidth() * pointsPerUnit;
-        pageHeight = pageProperties.getHeight() * pointsPerUnit;
-        heightTopLimit = pageHeight - contentMarginSize;
-        heightBottomLimit = 0 + contentMarginSize;
-        widthRightLimit = pageWidth - contentMarginSize;
-        widthLeftLimit = 0 + contentMarginSize;
-        currentYPosition = heightTopLimit - contentMarginSize;
-        currentXPosition = widthLeftLimit + contentMarginSize;
+        new DiplomaBuilder().build(diploma);
+    }
 
-        PDDocument diplomaPDF = new PDDocument();
-        PDPage page = new PDPage(new PDRectangle(pageWidth, pageHeight));
-        InputStream inputStream = new FileInputStream(new File(diploma.getSignFileName()));
-        PDJpeg signImage = new PDJpeg(diplomaPDF, inputStream);
-        DiplomaBuilder.signImage = signImage;
-        PDPageContentStream contentStream = createContentStream(diplomaPDF, page);
+    /**
+     * Construye un diploma haciendo uso de la libreria Apache PDFBox.
+     *
+     * <p>Todo el estado de la construcción se guarda en un contexto propio de
+     * cada llamada, por lo que una misma instancia puede construir varios
+     * diplomas al mismo tiempo desde distintos hilos.</p>
+     *
+     * @param diploma El {@link Diploma} a construir.
+     * @throws IOException En caso de no poder leer la firma del diploma o de
+     * no poder guardar el archivo del mismo.
+     */
+    public void build(Diploma diploma) throws IOException {
+        buildDocument(Collections.singletonList(diploma), diploma.getFileName());
+    }
 
-        diplomaPDF.addPage(page);
-        drawBorders(diploma.getPageBorders(), contentStream);
-        drawTexts(diploma.getTexts(), contentStream);
+    /**
+     * Construye un diploma y lo escribe en el flujo de salida indicado, sin
+     * usar el nombre de archivo del diploma. El flujo no se cierra.
+     *
+     * @param diploma El {@link Diploma} a construir.
+     * @param output El flujo donde se escribirá el PDF.
+     * @throws IOException En caso de no poder leer la firma del diploma o de
+     * error al escribir en el flujo.
+     */
+    public void build(Diploma diploma, OutputStream output) throws IOException {
+        buildDocument(Collections.singletonList(diploma), output);
+    }
 
-        try {
-            contentStream.close();
-            diplomaPDF.save(diploma.getFileName());
-            diplomaPDF.close();
-        } catch (IOException ex) {
-            ex.printStackTrace();
-            Logger.getLogger(DiplomaBuilder.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (COSVisitorException ex) {
-            ex.printStackTrace();
-            Logger.getLogger(DiplomaBuilder.class.getName()).log(Level.SEVERE, null, ex);
-        }
+    /**
+     * Construye un diploma y lo escribe en el canal indicado, sin usar el
+     * nombre de archivo del diploma. El canal no se cierra.
+     *
+     * @param diploma El {@link Diploma} a construir.
+     * @param channel El canal donde se escribirá el PDF.
+     * @throws IOException En caso de no poder leer la firma del diploma o de
+     * error al escribir en el canal.
+     */
+    public void build(Diploma diploma, WritableByteChannel channel) throws IOException {
+        build(diploma, Channels.newOutputStream(channel));
     }
 
     /**
-     * Crea un flujo de contenido para el documento.
+     * Construye un diploma en memoria.
      *
-     * @param document El documento donde se encuentra la página.
-     * @param page La página donde se creara el flujo de contenido.
-     * @return Un flujo de contenido para el documento.
+     * @param diploma El {@link Diploma} a construir.
+     * @return Un arreglo con los bytes del PDF.
+     * @throws IOException En caso de no poder leer la firma del diploma.
      */
-    private static PDPageContentStream createContentStream(PDDocument document, PDPage page) {
-        PDPageContentStream contentStream = null;
+    public byte[] buildBytes(Diploma diploma) throws IOException {
+        PdfByteArrayOutputStream output = new PdfByteArrayOutputStream();
+        build(diploma, output);
 
-        try {
-            contentStream = new PDPageContentStream(document, page);
-        } catch (IOException e) {
-            System.err.println("Error al intentar crear contenido para el archivo");
-            e.printStackTrace();
-        }
+        return output.toByteArray();
+    }
 
-        return contentStream;
+    /**
+     * Construye un diploma en memoria sin copiar los bytes generados.
+     *
+     * @param diploma El {@link Diploma} a construir.
+     * @return Un buffer con los bytes del PDF listo para leerse.
+     * @throws IOException En caso de no poder leer la firma del diploma.
+     */
+    public ByteBuffer buildByteBuffer(Diploma diploma) throws IOException {
+        PdfByteArrayOutputStream output = new PdfByteArrayOutputStream();
+        build(diploma, output);
+
+        return output.toByteBuffer();
     }
 
     /**
-     * 
-     * @param image
-     * @param contentStream
-     * @throws IOException 
+     * Construye un diploma en memoria y lo guarda en el destino indicado con
+     * el nombre de su archivo, sin la ruta.
+     *
+     * @param diploma El {@link Diploma} a construir.
+     * @param sink El destino donde se guardará el PDF.
+     * @return La ubicación del diploma dentro del destino.
+     * @throws IOException En caso de no poder leer la firma del diploma o de
+     * error al guardarlo en el destino.
      */
-    private static void drawSignature(PDXObjectImage image, float x, float y, 
-            float width, float height, PDPageContentStream contentStream) throws IOException {
-        contentStream.drawXObject(image, x, y, width, height);
+    public String build(Diploma diploma, DiplomaSink sink) throws IOException {
+        String name = Paths.get(diploma.getFileName()).getFileName().toString();
+        sink.write(name, buildByteBuffer(diploma));
+
+        return sink.locationOf(name);
     }
 
     /**
-     * Dibuja los bordes del diploma.
+     * Construye un solo documento PDF con una página por cada diploma
+     * recibido. Cada firma distinta se agrega una sola vez al documento y
+     * todas las páginas hacen referencia a ella, al igual que a las fuentes.
      *
-     * @param borders La colección de bordes a dibujar.
-     * @param contentStream El flujo de contenido donde se dibujarán los bordes.
+     * @param diplomas Los diplomas a incluir en el documento, en el orden de
+     * sus páginas.
+     * @param fileName La ruta completa del archivo a generar. El archivo sólo
+     * se crea o se reemplaza si el documento se construye completo.
+     * @throws IOException En caso de no poder leer alguna firma o de no poder
+     * guardar el documento.
      */
-    private static void drawBorders(Collection<PageBorder> borders, PDPageContentStream contentStream) {
-        for (PageBorder border : borders) {
-            drawBorder(border, contentStream);
+    public void buildDocument(Iterable<? extends Diploma> diplomas, String fileName) throws IOException {
+        try (AtomicFileOutputStream output = new AtomicFileOutputStream(Paths.get(fileName))) {
+            buildDocument(diplomas, output);
+            output.commit();
         }
     }
 
     /**
-     * Dibuja un border en el flujo de contenido.
+     * Construye un solo documento PDF con una página por cada diploma recibido
+     * y lo escribe en el flujo de salida indicado. El flujo no se cierra.
      *
-     * @param border El borde a dibujar.
-     * @param contentStream El flujo de contenido donde se dibujará el borde.
+     * @param diplomas Los diplomas a incluir en el documento, en el orden de
+     * sus páginas.
+     * @param output El flujo donde se escribirá el PDF.
+     * @throws IOException En caso de no poder leer alguna firma o de error al
+     * escribir en el flujo.
+     * @see #buildDocument(Iterable, String)
      */
-    private static void drawBorder(PageBorder border, PDPageContentStream contentStream) {
+    public void buildDocument(Iterable<? extends Diploma> diplomas, OutputStream output) throws IOException {
+        RenderRecorder recorder = RenderRecorder.start(listener);
+        UnclosableOutputStream pdfOutput = new UnclosableOutputStream(output);
+        PDDocument diplomaPDF = new PDDocument();
+        String fileName = null;
+        int pages = 0;
+        Throwable error = null;
+
         try {
-            contentStream.setNonStrokingColor(border.getColor());
-            BorderSides side = border.getBorderSide();
-            float margin = border.getMarginWidth() * pointsPerUnit;
-            float lineWidth = border.getLineWidth() * pointsPerUnit;
-            float widthRight = pageWidth - margin;
-            float heightTop = pageHeight - margin;
-
-            float x = margin;
-            float y = margin;
-            float width = 1; //1 is assigned just to avoid the compile error
-            float height = 1; //1 is assigned just to avoid the compile error
-
-            switch (side) {
-                case TOP:
-                    y = heightTop - lineWidth;
-
-                    if (heightTopLimit >= y) {
-                        heightTopLimit = currentYPosition = y - contentMarginSize;
-                    }
-                case BOTTOM:
-                    width = widthRight - margin;
-                    height = lineWidth;
-
-                    if (side == BorderSides.BOTTOM && heightBottomLimit <= y) {
-                        heightBottomLimit = y + contentMarginSize + lineWidth;
-                    }
-                    break;
-                case RIGHT:
-                    x = widthRight - lineWidth;
-
-                    if (widthRightLimit >= x) {
-                        widthRightLimit = x - contentMarginSize;
-                        currentXPosition = widthRightLimit + lineWidth;
-                    }
-                case LEFT:
-                    width = lineWidth;
-                    height = heightTop - margin;
-
-                    if (side == BorderSides.LEFT && widthLeftLimit <= x) {
-                        widthLeftLimit = currentXPosition = x + contentMarginSize;
-                    }
-                    break;
+            DocumentResources resources = new DocumentResources(diplomaPDF, recorder);
+
+            for (Diploma diploma : diplomas) {
+                if (fileName == null) {
+                    fileName = diploma.getFileName();
+                }
+
+                addPage(diploma, resources);
+                pages++;
             }
 
-//            System.out.printf("side %s x: %s y: %s  width: %s  height: %s\n", side, x, y, width, height);
-            contentStream.fillRect(x, y, width, height);
-        } catch (IOException ioe) {
-            System.err.println("Error al dibuar los bordes");
-            ioe.printStackTrace();
+            //PDFBox cierra el flujo al terminar de guardar el documento.
+            recorder.begin(RenderPhase.SAVE);
+            resources.embedFonts();
+            diplomaPDF.save(pdfOutput);
+            recorder.end();
+        } catch (COSVisitorException ex) {
+            error = ex;
+            throw new IOException("Error al guardar el diploma", ex);
+        } catch (IOException | RuntimeException | Error ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            diplomaPDF.close();
+            recorder.finish(fileName, pages, pdfOutput.count, error);
         }
     }
 
     /**
-     * Dibuja los textos en el flujo de contenido del documento.
+     * Construye un solo documento PDF con una página por cada diploma
+     * recibido, escribiendo cada página en cuanto se termina.
      *
-     * @param texts Una colección con los textos a dibujar.
-     * @param contentStream El flujo de contenido del documento donde se
-     * dibujarán los textos.
-     */
-    private static void drawTexts(Collection<Text> texts, PDPageContentStream contentStream) {
-        List<Text> centeredTexts = new ArrayList<>();
-        List<Float> deltaWidths = new ArrayList<>();
-        float centeredX = pageWidth / 2;
-        
-        for (Text text : texts) {
-            try {
-                TextDimensions textDimensions = getTextDimensions(text);
-                switch(text.getAlignment()) {
-                    case CENTER:
-                        centeredTexts.add(new Text(text).setAlignment(Alignments.LEFT).setIsUnderlined(text.isUnderlined()));
-                        DiplomaPoint textPoint = calculateTextPosition(text, textDimensions, text.getBreakLine());
-                        float delta = pageWidth / 2 - textPoint.x;
-                        deltaWidths.add(delta * 2);//la longitud del texto completo
-                        centeredX -= delta;
-                        
-                        if (text.getBreakLine()) {
-                            while(centeredTexts.size() > 0) {
-                                drawText(centeredTexts.remove(0), textDimensions, contentStream, new DiplomaPoint(centeredX, currentYPosition));
-                                centeredX += deltaWidths.remove(0);
-                            }
-                            
-                            centeredX = pageWidth / 2;
-                        }
-                        
-                        break;
-                    default:
-                        drawText(text, textDimensions, contentStream);
-                        break;
+     * @param diplomas Los diplomas a incluir en el documento, en el orden de
+     * sus páginas.
+     * @param fileName La ruta completa del archivo a generar. El archivo sólo
+     * se crea o se reemplaza si el documento se construye completo.
+     * @throws IOException En caso de no poder leer alguna firma o de no poder
+     * guardar el documento.
+     * @see #buildStreamingDocument(Iterable, OutputStream)
+     */
+    public void buildStreamingDocument(Iterable<? extends Diploma> diplomas, String fileName) throws IOException {
+        try (AtomicFileOutputStream output = new AtomicFileOutputStream(Paths.get(fileName))) {
+            buildStreamingDocument(diplomas, output);
+            output.commit();
+        }
+    }
+
+    /**
+     * Construye un solo documento PDF con una página por cada diploma recibido
+     * y lo escribe en el flujo de salida indicado. El flujo no se cierra.
+     *
+     * <p>A diferencia de {@link #buildDocument(Iterable, OutputStream)}, cada
+     * página se escribe en el flujo en cuanto se termina de dibujar y después
+     * se descarta, por lo que la memoria usada no crece con el número de
+     * páginas. Las firmas y la capa invariante se escriben una sola vez y las
+     * fuentes al final, junto con el árbol de páginas y la tabla de
+     * referencias cruzadas. Junto con un {@link Iterable} que lea los
+     * diplomas de un archivo permite generar documentos de cualquier
+     * tamaño.</p>
+     *
+     * @param diplomas Los diplomas a incluir en el documento, en el orden de
+     * sus páginas.
+     * @param output El flujo donde se escribirá el PDF.
+     * @throws IOException En caso de no poder leer alguna firma o de error al
+     * escribir en el flujo.
+     */
+    public void buildStreamingDocument(Iterable<? extends Diploma> diplomas, OutputStream output)
+            throws IOException {
+        RenderRecorder recorder = RenderRecorder.start(listener);
+        UnclosableOutputStream pdfOutput = new UnclosableOutputStream(output);
+        PDDocument diplomaPDF = new PDDocument();
+        String fileName = null;
+        int pages = 0;
+        Throwable error = null;
+
+        try {
+            StreamingPdfWriter writer = new StreamingPdfWriter(pdfOutput);
+            DocumentResources resources = new DocumentResources(diplomaPDF, recorder, writer);
+
+            for (Diploma diploma : diplomas) {
+                if (fileName == null) {
+                    fileName = diploma.getFileName();
                 }
-            } catch (IOException ioe) {
-                System.err.println("Error al dibujar el texto: " + text.getText());
+
+                addPage(diploma, resources);
+                pages++;
             }
+
+            recorder.begin(RenderPhase.SAVE);
+            resources.embedFonts();
+            writer.finish();
+            recorder.end();
+        } catch (IOException | RuntimeException | Error ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            diplomaPDF.close();
+            recorder.finish(fileName, pages, pdfOutput.count, error);
         }
     }
 
     /**
-     * Dibuja un objeto Text en el documento. El lugar que en donde se dibujará
-     * será en una nueva línea, las coordenadas serán calculadas para que los
-     * textos no se encimen. En el cálculo de la posición se tomará en cuenta el
-     * margen del contenido, la alineación, tamaño y tipo del texto.
+     * Calcula el acomodo de un diploma sin dibujarlo. El acomodo puede
+     * guardarse, compararse con otros y dibujarse varias veces con
+     * {@link #render(Iterable, OutputStream)}.
      *
-     * @param text El objeto Text a dibujar.
-     * @param contentStream El flujo de contenido del documento.
-     * @throws IOException En caso de que exista un error al dibujar el texto.
+     * @param diploma El {@link Diploma} a acomodar.
+     * @return El acomodo del diploma.
+     * @throws IOException En caso de no poder leer la firma del diploma o de
+     * error al medir los textos.
      */
-    private static void drawText(Text text, TextDimensions textDimensions, PDPageContentStream contentStream) throws IOException {
-        DiplomaPoint textPoint = calculateTextPosition(text, textDimensions, true);
-        drawText(text, textDimensions, contentStream, textPoint);
+    public LayoutPlan layout(Diploma diploma) throws IOException {
+        ImageCache.CachedImage signImage = imageCache.getImage(diploma.getSignFileName());
+
+        return createPlan(diploma, signImage.getWidth(), signImage.getHeight(), RenderRecorder.DISABLED);
     }
-    
+
     /**
-     * Dibuja un objeto Text en el documento. El lugar que en donde se dibujará
-     * será en una nueva línea, las coordenadas serán calculadas para que los
-     * textos no se encimen. En el cálculo de la posición se tomará en cuenta el
-     * margen del contenido, la alineación, tamaño y tipo del texto.
+     * Dibuja un solo documento PDF con una página por cada acomodo recibido y
+     * lo escribe en el flujo de salida indicado. El flujo no se cierra.
      *
-     * @param text El objeto Text a dibujar.
-     * @param textDimensions
-     * @param contentStream El flujo de contenido del documento.
-     * @param textPoint El punto que indica las coordenadas donde se iniciará
-     * a dibujar el texto.
-     * @throws IOException En caso de que exista un error al dibujar el texto.
-     */
-    private static void drawText(Text text, TextDimensions textDimensions, PDPageContentStream contentStream, DiplomaPoint textPoint) throws IOException {
-        contentStream.setNonStrokingColor(text.getColor());
-        contentStream.beginText();
-        contentStream.setFont(text.getFontType(), text.getFontSize());
-        contentStream.moveTextPositionByAmount(textPoint.x, textPoint.y);
-        contentStream.drawString(text.getText());
-        contentStream.endText();
-        
-        if (text.isUnderlined()) {
-            drawLine(textDimensions, new DiplomaPoint(textPoint.x, textPoint.y - 1.5f), contentStream);
-            drawLine(textDimensions, new DiplomaPoint(textPoint.x, textPoint.y - 1), contentStream);
+     * @param plans Los acomodos a dibujar, en el orden de sus páginas.
+     * @param output El flujo donde se escribirá el PDF.
+     * @throws IOException En caso de no poder leer alguna firma o de error al
+     * escribir en el flujo.
+     */
+    public void render(Iterable<LayoutPlan> plans, OutputStream output) throws IOException {
+        PDDocument diplomaPDF = new PDDocument();
+
+        try {
+            DocumentResources resources = new DocumentResources(diplomaPDF, RenderRecorder.DISABLED);
+
+            for (LayoutPlan plan : plans) {
+                PDPage page = new PDPage(new PDRectangle(plan.getPageWidth(), plan.getPageHeight()));
+                SignImage signImage = resources.getSignImage(plan.getSignFileName());
+                renderPage(plan, page, signImage.image, resources);
+            }
+
+            resources.embedFonts();
+            //PDFBox cierra el flujo al terminar de guardar el documento.
+            diplomaPDF.save(new UnclosableOutputStream(output));
+        } catch (COSVisitorException ex) {
+            throw new IOException("Error al guardar el diploma", ex);
+        } finally {
+            diplomaPDF.close();
         }
-        
-        if (text.getText().equals(diploma.getInstructorName())) {
-            drawLine(textDimensions, new DiplomaPoint(textPoint.x, textPoint.y + textDimensions.height + 1.5f), contentStream);
-            drawLine(textDimensions, new DiplomaPoint(textPoint.x, textPoint.y + textDimensions.height + 1), contentStream);
-            float width = signImage.getWidth() * 0.2f;
-            float height = signImage.getHeight() * 0.2f;
-            float x = (textDimensions.width - width) / 2 + textPoint.x;
-            float y = textPoint.y + textDimensions.height + 5;
-            drawSignature(signImage, x, y,width, height, contentStream);
+    }
+
+    /**
+     * Dibuja un acomodo en memoria.
+     *
+     * @param plan El acomodo a dibujar.
+     * @return Un arreglo con los bytes del PDF.
+     * @throws IOException En caso de no poder leer la firma del acomodo.
+     */
+    public byte[] renderBytes(LayoutPlan plan) throws IOException {
+        PdfByteArrayOutputStream output = new PdfByteArrayOutputStream();
+        render(Collections.singletonList(plan), output);
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Dibuja un acomodo como imagen, sin escribir ni volver a leer el PDF. La
+     * página se construye en un documento en memoria y se rasteriza
+     * directamente a partir de él.
+     *
+     * @param plan El acomodo a dibujar.
+     * @param dpi La resolución de la imagen en puntos por pulgada.
+     * @return La imagen RGB de la página.
+     * @throws IOException En caso de no poder leer la firma del acomodo o de
+     * error al rasterizar la página.
+     */
+    public BufferedImage renderImage(LayoutPlan plan, int dpi) throws IOException {
+        if (dpi <= 0) {
+            throw new IllegalArgumentException("dpi must be greater than 0.");
         }
+
+        PDDocument diplomaPDF = new PDDocument();
+
+        try {
+            DocumentResources resources = new DocumentResources(diplomaPDF, RenderRecorder.DISABLED);
+            PDPage page = new PDPage(new PDRectangle(plan.getPageWidth(), plan.getPageHeight()));
+            SignImage signImage = resources.getSignImage(plan.getSignFileName());
+            renderPage(plan, page, signImage.image, resources);
+            resources.embedFonts();
+            //Las fuentes creadas al dibujar se leen de nuevo del diccionario
+            //para que incluyan el mapa ToUnicode agregado al incrustarlas.
+            page.getResources().clear();
+
+            return page.convertToImage(BufferedImage.TYPE_INT_RGB, dpi);
+        } finally {
+            diplomaPDF.close();
+        }
+    }
+
+    /**
+     * Agrega al documento una página con el diploma indicado. Primero se
+     * calcula el acomodo del diploma y después se dibuja en la página.
+     *
+     * @param diploma El diploma a dibujar en la página.
+     * @param resources Los recursos del documento donde se agregará la página.
+     * @throws IOException En caso de no poder leer la firma o de error al
+     * dibujar el diploma.
+     */
+    private void addPage(Diploma diploma, DocumentResources resources) throws IOException {
+        RenderRecorder recorder = resources.recorder;
+        recorder.begin(RenderPhase.SIGNATURE_LOAD);
+        SignImage signImage = resources.getSignImage(diploma.getSignFileName());
+        recorder.end();
+        LayoutPlan plan = createPlan(diploma, signImage.source.getWidth(), signImage.source.getHeight(), recorder);
+        PDPage page = new PDPage(new PDRectangle(plan.getPageWidth(), plan.getPageHeight()));
+        recorder.begin(RenderPhase.CONTENT_EMIT);
+        renderPage(plan, page, signImage.image, resources);
+
+        if (resources.writer != null) {
+            recorder.begin(RenderPhase.SAVE);
+            resources.writer.writePage(page);
+        }
+
+        recorder.end();
+    }
+
+    /**
+     * Calcula el acomodo de los bordes y los textos de un diploma,
+     * reutilizando la plantilla del constructor cuando el diploma corresponde
+     * a ella.
+     *
+     * @param diploma El diploma a acomodar.
+     * @param signWidth El ancho de la imagen de la firma.
+     * @param signHeight El alto de la imagen de la firma.
+     * @param recorder El medidor de la construcción actual.
+     * @return El acomodo del diploma.
+     * @throws IOException En caso de error al medir los textos.
+     */
+    private LayoutPlan createPlan(Diploma diploma, float signWidth, float signHeight,
+            RenderRecorder recorder) throws IOException {
+        Text[] texts = diploma.getTexts().toArray(new Text[0]);
+        PageBorder[] pageBorders = diploma.getPageBorders().toArray(new PageBorder[0]);
+        float[] borders = new float[pageBorders.length * 4];
+        int[] borderColors = new int[pageBorders.length];
+
+        for (int i = 0; i < pageBorders.length; i++) {
+            borderColors[i] = pageBorders[i].getColor().getRGB() & 0xFFFFFF;
+        }
+
+        recorder.begin(RenderPhase.BORDERS);
+        RenderContext context = layoutBorders(diploma, pageBorders, borders);
+        recorder.begin(RenderPhase.TEXT_LAYOUT);
+        TextLayout layout = template != null ? template.layoutTexts(context, texts) : null;
+        DiplomaTemplate invariantTemplate = null;
+
+        if (layout == null) {
+            layout = DiplomaLayout.layoutTexts(context, texts);
+        } else if (template.usesInvariantLayer() && template.matchesInvariantLayer(diploma, texts)) {
+            invariantTemplate = template;
+        }
+
+        LayoutPlan plan = new LayoutPlan(context, diploma, texts, borders, borderColors, layout,
+                invariantTemplate, signWidth, signHeight);
+        recorder.end();
+
+        return plan;
     }
-    
+
     /**
-     * 
-     * @param textDimensions
-     * @param diplomaPoint
-     * @param contentStream
-     * @throws IOException 
+     * Calcula los rectángulos de los bordes en un contexto nuevo, el cuál
+     * queda con los límites que dejan los bordes.
+     *
+     * @param diploma El diploma a acomodar.
+     * @param pageBorders Los bordes del diploma.
+     * @param borders El arreglo donde se guardan los rectángulos, cuatro
+     * valores por borde.
+     * @return El contexto con los límites de los bordes ya calculados.
      */
-    private static void drawLine(TextDimensions textDimensions, DiplomaPoint diplomaPoint, PDPageContentStream contentStream) throws IOException {
-        contentStream.drawLine(diplomaPoint.x, diplomaPoint.y, 
-                diplomaPoint.x + textDimensions.width, diplomaPoint.y);
+    private RenderContext layoutBorders(Diploma diploma, PageBorder[] pageBorders, float[] borders) {
+        RenderContext context = new RenderContext(diploma);
+
+        for (int i = 0; i < pageBorders.length; i++) {
+            float[] rectangle = DiplomaLayout.layoutBorder(context, pageBorders[i]);
+            System.arraycopy(rectangle, 0, borders, i * 4, 4);
+        }
+
+        return context;
     }
-    
+
     /**
-     * Calcula la posición correcta de dónde debe iniciar a dibujarse el texto.
+     * Agrega la página al documento y dibuja en ella el acomodo. Si el
+     * acomodo usa la capa invariante de la plantilla, la página invoca la capa
+     * y sólo dibuja los textos variables. Cuando el documento se escribe por
+     * páginas, la página no se agrega al documento sino que queda lista para
+     * escribirse.
      *
-     * @param text El objeto Text a dibujar.
-     * @param textDimensions
-     * @param modifyPositions Indica si modifica las posiciones actuales para
-     * las coordenadas en el diploma.
-     * @return El punto de inicio para dibujar el texto.
-     * @throws IOException En caso de que no exista un error al calcular la
-     * posición del texto.
-     */
-    private static DiplomaPoint calculateTextPosition(Text text, TextDimensions textDimensions, boolean modifyPositions) throws IOException {
-        Alignments textAlignment = text.getAlignment();
-        float textWidth = textDimensions.width;
-        float textHeight = textDimensions.height;
-        float y = currentYPosition - textHeight;
-        float x = 0;
-        
-        switch (textAlignment) {
-            case CENTER:
-                x = (pageWidth - textWidth) / 2;
-                break;
-            case LEFT:
-                x = currentXPosition;
-                break;
-            case RIGHT:
-                x = currentXPosition - textWidth;
-                break;
+     * @param plan El acomodo a dibujar.
+     * @param page La página a agregar al documento.
+     * @param signImage La firma del acomodo, ya agregada al documento.
+     * @param resources Los recursos del documento.
+     * @throws IOException En caso de error al dibujar la página.
+     */
+    private void renderPage(LayoutPlan plan, PDPage page, PDXObjectImage signImage,
+            DocumentResources resources) throws IOException {
+        PDPageContentStream contentStream = createContentStream(resources.document, page);
+
+        if (resources.writer == null) {
+            resources.document.addPage(page);
+        }
+
+        if (plan.usesInvariantLayer()) {
+            contentStream.drawXObject(resources.getLayerForm(plan, signImage), new AffineTransform());
+            LayoutRenderer.render(plan, signImage, resources.fontSubsets, false, true, contentStream);
+        } else {
+            LayoutRenderer.render(plan, signImage, resources.fontSubsets, true, true, contentStream);
         }
 
-        if (modifyPositions) {
-            if (text.getBreakLine()) {
-                currentXPosition = widthLeftLimit + contentMarginSize;
-                currentYPosition -= currentYPosition - textHeight > heightBottomLimit
-                        ? textHeight : currentYPosition - heightBottomLimit;
-            } else {
-                currentXPosition += textAlignment == Alignments.LEFT ? textWidth : -textWidth;
+        contentStream.close();
+    }
+
+    /**
+     * Regresa la capa invariante de la plantilla, generándola a partir del
+     * acomodo recibido la primera vez que se solicita.
+     *
+     * @param plan Un acomodo que usa la capa invariante de la plantilla.
+     * @return La capa invariante.
+     * @throws IOException En caso de error al dibujar la capa.
+     */
+    private InvariantLayer getInvariantLayer(LayoutPlan plan) throws IOException {
+        InvariantLayer layer = invariantLayer;
+
+        if (layer == null) {
+            synchronized (this) {
+                layer = invariantLayer;
+
+                if (layer == null) {
+                    invariantLayer = layer = createInvariantLayer(plan);
+                }
             }
         }
-        
-        return new DiplomaPoint(x, y);
+
+        return layer;
     }
-    
+
     /**
-     * 
-     * @param text
-     * @return
-     * @throws IOException 
+     * Dibuja los bordes y los textos fijos del acomodo en una página temporal
+     * y los guarda como una capa invariante.
+     *
+     * @param plan Un acomodo que usa la capa invariante de la plantilla.
+     * @return La capa invariante.
+     * @throws IOException En caso de error al dibujar la capa.
      */
-    private static TextDimensions getTextDimensions(Text text) throws IOException {
-        PDFont fontType = text.getFontType();
-        float textWidth = fontType.getStringWidth(text.getText()) / 1000 * text.getFontSize();
-        float textHeight = fontType.getFontDescriptor().getFontBoundingBox().
-                getHeight() / 1000 * text.getFontSize();
-        
-        return new TextDimensions(textWidth, textHeight);
+    private InvariantLayer createInvariantLayer(LayoutPlan plan) throws IOException {
+        PDDocument document = new PDDocument();
+
+        try {
+            PDPage page = new PDPage(new PDRectangle(plan.getPageWidth(), plan.getPageHeight()));
+            PDXObjectImage signImage = imageCache.createImage(document, plan.getSignFileName(),
+                    LayoutPlan.SIGNATURE_SCALE);
+            PDPageContentStream contentStream = new PDPageContentStream(document, page);
+            Map<EmbeddedFont, FontSubset> fontSubsets = new HashMap<>();
+
+            document.addPage(page);
+            LayoutRenderer.render(plan, signImage, fontSubsets, true, false, contentStream);
+            contentStream.close();
+
+            //Los subconjuntos no dependen del documento temporal, por lo que
+            //la capa puede copiarlos a cada documento.
+            for (FontSubset subset : fontSubsets.values()) {
+                subset.embed();
+            }
+
+            return new InvariantLayer(page, signImage, plan.getPageWidth(), plan.getPageHeight());
+        } finally {
+            document.close();
+        }
     }
-    
+
     /**
-     * 
+     * Crea un flujo de contenido para el documento.
+     *
+     * @param document El documento donde se encuentra la página.
+     * @param page La página donde se creara el flujo de contenido.
+     * @return Un flujo de contenido para el documento.
+     * @throws IOException En caso de no poder crear el flujo de contenido.
      */
-    private static class TextDimensions {
-        public float width;
-        public float height;
-        
+    private PDPageContentStream createContentStream(PDDocument document, PDPage page) throws IOException {
+        return new PDPageContentStream(document, page);
+    }
+
+    /**
+     * Clase que agrupa los recursos compartidos por las páginas de un mismo
+     * documento: las firmas, los subconjuntos de las fuentes incrustadas y la
+     * capa invariante de la plantilla.
+     */
+    private class DocumentResources {
+
+        public final PDDocument document;
+        public final RenderRecorder recorder;
+        public final StreamingPdfWriter writer;
+        public final Map<EmbeddedFont, FontSubset> fontSubsets = new HashMap<>();
+        private final Map<String, SignImage> signImages = new HashMap<>();
+        private PDXObjectForm layerForm;
+
+        /**
+         * Crea los recursos vacíos para un documento.
+         *
+         * @param document El documento al cuál pertenecen los recursos.
+         * @param recorder El medidor de la construcción del documento.
+         */
+        public DocumentResources(PDDocument document, RenderRecorder recorder) {
+            this(document, recorder, null);
+        }
+
+        /**
+         * Crea los recursos vacíos para un documento que se escribe por
+         * páginas.
+         *
+         * @param document El documento al cuál pertenecen los recursos.
+         * @param recorder El medidor de la construcción del documento.
+         * @param writer El escritor de las páginas o null si el documento se
+         * guarda completo al final.
+         */
+        public DocumentResources(PDDocument document, RenderRecorder recorder, StreamingPdfWriter writer) {
+            this.document = document;
+            this.recorder = recorder;
+            this.writer = writer;
+        }
+
+        /**
+         * Regresa la firma del archivo indicado, agregándola al documento la
+         * primera vez que se solicita.
+         *
+         * @param signFileName La ruta del archivo de la firma.
+         * @return La firma agregada al documento junto con la imagen original.
+         * @throws IOException En caso de no poder leer la firma.
+         */
+        public SignImage getSignImage(String signFileName) throws IOException {
+            SignImage signImage = signImages.get(signFileName);
+
+            if (signImage == null) {
+                ImageCache.CachedImage source = imageCache.getImage(signFileName);
+                signImage = new SignImage(source,
+                        source.prepare(LayoutPlan.SIGNATURE_SCALE).createImage(document));
+                signImages.put(signFileName, signImage);
+            }
+
+            return signImage;
+        }
+
         /**
-         * 
-         * @param width
-         * @param height 
+         * Incrusta en el documento los glifos usados de cada fuente TrueType.
+         * Se invoca después de dibujar todas las páginas.
+         *
+         * @throws IOException En caso de error al crear algún subconjunto.
          */
-        public TextDimensions(float width, float height) {
-            this.width = width;
-            this.height = height;
+        public void embedFonts() throws IOException {
+            for (FontSubset subset : fontSubsets.values()) {
+                subset.embed();
+            }
+        }
+
+        /**
+         * Regresa el Form XObject de la capa invariante, agregándolo al
+         * documento la primera vez que se solicita.
+         *
+         * @param plan El acomodo que se está dibujando.
+         * @param signImage La firma del documento.
+         * @return El Form XObject de la capa invariante.
+         * @throws IOException En caso de error al crear la capa.
+         */
+        public PDXObjectForm getLayerForm(LayoutPlan plan, PDXObjectImage signImage) throws IOException {
+            if (layerForm == null) {
+                layerForm = getInvariantLayer(plan).createForm(document, signImage);
+            }
+
+            return layerForm;
         }
     }
-    
+
     /**
-     * Clase estática utilizada para agrupar los valores de un punto en el
-     * documento utilizando números de tipo float.
+     * Clase que agrupa la firma agregada a un documento con la imagen
+     * original, cuyas dimensiones determinan el tamaño de la firma.
      */
-    private static class DiplomaPoint {
+    private static class SignImage {
 
-        public float x;
-        public float y;
+        public final ImageCache.CachedImage source;
+        public final PDXObjectImage image;
 
         /**
-         * Construye un punto que se ubicará en el diploma. Ambas coordenadas
-         * deben ser mayores o igual a 0 debido a que no se cuenta con
-         * coordenadas negativas.
+         * Agrupa la imagen original y la agregada al documento.
          *
-         * Si alguno de los valores es negativo, se asignará el valor por
-         * default el cuál es 0;
+         * @param source La imagen original.
+         * @param image La imagen agregada al documento, que puede tener menos
+         * pixeles que la original.
+         */
+        public SignImage(ImageCache.CachedImage source, PDXObjectImage image) {
+            this.source = source;
+            this.image = image;
+        }
+    }
+
+    /**
+     * Flujo que escribe en otro flujo pero que al cerrarse sólo lo vacía, de
+     * manera que quien invoca al constructor conserva el control del flujo.
+     * También cuenta los bytes escritos.
+     */
+    private static class UnclosableOutputStream extends FilterOutputStream {
+        public long count;
+
+        /**
+         * Crea un flujo que escribe en el flujo indicado.
+         *
+         * @param output El flujo donde se escribirán los bytes.
+         */
+        public UnclosableOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Flujo en memoria que permite leer los bytes escritos sin copiarlos.
+     */
+    private static class PdfByteArrayOutputStream extends ByteArrayOutputStream {
+
+        /**
+         * Crea un flujo con espacio inicial para un diploma típico.
+         */
+        public PdfByteArrayOutputStream() {
+            super(16 * 1024);
+        }
+
+        /**
+         * Regresa un buffer sobre los bytes escritos.
          *
-         * @param x El valor correspondiente a la coordenada x.
-         * @param y El valor correspondiente a la coordenada y.
+         * @return Un buffer listo para leerse.
          */
-        public DiplomaPoint(float x, float y) {
-            this.x = x >= 0 ? x : 0;
-            this.y = y >= 0 ? y : 0;
+        public ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
         }
     }
 }
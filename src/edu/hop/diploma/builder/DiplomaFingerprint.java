@@ -0,0 +1,302 @@
+package edu.hop.diploma.builder;
+
+import edu.hop.diploma.border.PageBorder;
+import edu.hop.diploma.image.ImageCache;
+import edu.hop.diploma.physical.PageProperties;
+import edu.hop.diploma.text.EmbeddedFont;
+import edu.hop.diploma.text.Text;
+import java.awt.Color;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Calcula la huella del contenido de un diploma: un hash SHA-256 de todo lo que
+ * determina el PDF generado, es decir sus textos, bordes, propiedades de la
+ * página, margen, el contenido del archivo de la firma y de las fuentes
+ * incrustadas, y la configuración del constructor que lo dibuja.
+ *
+ * <p>Dos diplomas con la misma huella generan el mismo PDF, por lo que un
+ * diploma cuya huella no cambió desde la construcción anterior no necesita
+ * construirse de nuevo. El nombre del archivo no forma parte de la huella.</p>
+ *
+ * @author jjsanche
+ */
+public final class DiplomaFingerprint {
+    /**
+     * Cambia cuando cambia la forma de dibujar los diplomas, de modo que las
+     * huellas anteriores dejan de coincidir.
+     */
+    private static final int VERSION = 5;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ConcurrentMap<Path, SignDigest> SIGN_DIGESTS = new ConcurrentHashMap<>();
+
+    private DiplomaFingerprint() {
+    }
+
+    /**
+     * Calcula la huella de un diploma construido con la configuración de
+     * {@link DiplomaBuilder#DiplomaBuilder()}: el caché de imágenes compartido
+     * y sin plantilla.
+     *
+     * @param diploma El diploma.
+     * @return La huella en hexadecimal.
+     * @throws IOException En caso de no poder leer el archivo de la firma.
+     */
+    public static String of(Diploma diploma) throws IOException {
+        return of(diploma, null);
+    }
+
+    /**
+     * Calcula la huella de un diploma construido con el constructor indicado.
+     * Además del diploma incluye la resolución y el manejo de la
+     * transparencia del caché de imágenes del constructor, y su plantilla,
+     * de modo que un mismo diploma tiene distinta huella en constructores
+     * que generan distinto PDF.
+     *
+     * @param diploma El diploma.
+     * @param builder El constructor que dibujará el diploma o null para usar
+     * la configuración de {@link DiplomaBuilder#DiplomaBuilder()}.
+     * @return La huella en hexadecimal.
+     * @throws IOException En caso de no poder leer el archivo de la firma.
+     */
+    public static String of(Diploma diploma, DiplomaBuilder builder) throws IOException {
+        MessageDigest digest = newDigest();
+        DataOutputStream data = new DataOutputStream(new DigestOutputStream(NullOutputStream.INSTANCE, digest));
+        ImageCache imageCache = builder != null ? builder.getImageCache() : ImageCache.getSharedCache();
+        DiplomaTemplate template = builder != null ? builder.getTemplate() : null;
+
+        data.writeInt(VERSION);
+        data.writeFloat(imageCache.getTargetDpi());
+        data.writeBoolean(imageCache.isFlattenAlpha());
+        writeString(data, template != null ? template.getFingerprint() : null);
+        writeDiploma(data, diploma);
+        data.write(getSignDigest(diploma.getSignFileName()));
+        data.flush();
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Calcula la huella de una plantilla a partir de su diploma de ejemplo.
+     * La firma se identifica por la ruta de su archivo, ya que la plantilla
+     * no la dibuja.
+     *
+     * @param prototype El diploma de ejemplo.
+     * @param invariantLayer true si la plantilla usa la capa invariante.
+     * @return La huella en hexadecimal.
+     */
+    static String ofTemplate(Diploma prototype, boolean invariantLayer) {
+        MessageDigest digest = newDigest();
+        DataOutputStream data = new DataOutputStream(new DigestOutputStream(NullOutputStream.INSTANCE, digest));
+
+        try {
+            data.writeInt(VERSION);
+            data.writeBoolean(invariantLayer);
+            writeDiploma(data, prototype);
+            writeString(data, prototype.getSignFileName());
+            data.flush();
+        } catch (IOException ex) {
+            //El flujo no realiza escrituras.
+            throw new IllegalStateException(ex);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Escribe los datos del diploma que determinan el PDF, excepto la firma.
+     *
+     * @param data El flujo donde se escribirán los datos.
+     * @param diploma El diploma.
+     * @throws IOException Nunca, el flujo no realiza escrituras.
+     */
+    private static void writeDiploma(DataOutputStream data, Diploma diploma) throws IOException {
+        PageProperties pageProperties = diploma.getPageProperties();
+
+        data.writeFloat(pageProperties.getWidth());
+        data.writeFloat(pageProperties.getHeight());
+        writeString(data, String.valueOf(pageProperties.getPageOrientation()));
+        writeString(data, String.valueOf(pageProperties.getSizeUnit()));
+        data.writeFloat(diploma.getContentMarginSize());
+
+        data.writeInt(diploma.getPageBorders().size());
+
+        for (PageBorder border : diploma.getPageBorders()) {
+            writeString(data, String.valueOf(border.getBorderSide()));
+            data.writeFloat(border.getLineWidth());
+            data.writeFloat(border.getMarginWidth());
+            writeColor(data, border.getColor());
+        }
+
+        data.writeInt(diploma.getTexts().size());
+
+        for (Text text : diploma.getTexts()) {
+            writeString(data, text.getText());
+            data.writeFloat(text.getFontSize());
+            data.writeFloat(text.getMinFontSize());
+            writeFont(data, text);
+            writeString(data, String.valueOf(text.getAlignment()));
+            writeColor(data, text.getColor());
+            data.writeBoolean(text.isUnderlined());
+            data.writeBoolean(text.getBreakLine());
+        }
+
+        writeString(data, diploma.getInstructorName());
+    }
+
+    /**
+     * Escribe la fuente de un texto: el hash del contenido de la fuente
+     * incrustada o el nombre de la fuente estándar. La ruta de la fuente
+     * incrustada no basta, ya que el archivo puede reemplazarse.
+     *
+     * @param data El flujo donde se escribirá la fuente.
+     * @param text El texto.
+     * @throws IOException Nunca, el flujo no realiza escrituras.
+     */
+    private static void writeFont(DataOutputStream data, Text text) throws IOException {
+        EmbeddedFont embeddedFont = text.getEmbeddedFont();
+        data.writeBoolean(embeddedFont != null);
+
+        if (embeddedFont != null) {
+            data.write(embeddedFont.getDigest());
+        } else {
+            writeString(data, text.getFontType() != null ? text.getFontType().getBaseFont() : null);
+        }
+    }
+
+    /**
+     * Regresa el hash del contenido de la firma, reutilizando el calculado
+     * anteriormente mientras el archivo no cambie.
+     *
+     * @param signFileName La ruta del archivo de la firma.
+     * @return El hash del archivo.
+     * @throws IOException En caso de no poder leer el archivo.
+     */
+    private static byte[] getSignDigest(String signFileName) throws IOException {
+        Path path = Paths.get(signFileName).toAbsolutePath().normalize();
+        BasicFileAttributes attributes;
+
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException ex) {
+            SIGN_DIGESTS.remove(path);
+            throw ex;
+        }
+
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        SignDigest signDigest = SIGN_DIGESTS.get(path);
+
+        if (signDigest == null || signDigest.lastModified != lastModified || signDigest.size != size) {
+            signDigest = new SignDigest(lastModified, size, newDigest().digest(Files.readAllBytes(path)));
+            SIGN_DIGESTS.put(path, signDigest);
+        }
+
+        return signDigest.digest;
+    }
+
+    /**
+     * Escribe una cadena que puede ser nula.
+     *
+     * @param data El flujo donde se escribirá la cadena.
+     * @param value La cadena.
+     * @throws IOException Nunca, el flujo no realiza escrituras.
+     */
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        data.writeBoolean(value != null);
+
+        if (value != null) {
+            data.writeUTF(value);
+        }
+    }
+
+    /**
+     * Escribe un color que puede ser nulo.
+     *
+     * @param data El flujo donde se escribirá el color.
+     * @param color El color.
+     * @throws IOException Nunca, el flujo no realiza escrituras.
+     */
+    private static void writeColor(DataOutputStream data, Color color) throws IOException {
+        data.writeBoolean(color != null);
+
+        if (color != null) {
+            data.writeInt(color.getRGB());
+        }
+    }
+
+    /**
+     * Crea un calculador de SHA-256.
+     *
+     * @return El calculador.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            //Toda JVM debe incluir SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Convierte bytes a hexadecimal.
+     *
+     * @param bytes Los bytes a convertir.
+     * @return Una cadena con dos dígitos por byte.
+     */
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Hash del archivo de una firma junto con los atributos del archivo con
+     * los cuáles se calculó.
+     */
+    private static class SignDigest {
+
+        public final long lastModified;
+        public final long size;
+        public final byte[] digest;
+
+        public SignDigest(long lastModified, long size, byte[] digest) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * Flujo que descarta todo lo que recibe.
+     */
+    private static class NullOutputStream extends OutputStream {
+
+        public static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+        }
+    }
+}
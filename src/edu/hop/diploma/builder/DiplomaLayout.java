@@ -0,0 +1,260 @@
+package edu.hop.diploma.builder;
+
+import edu.hop.diploma.border.BorderSides;
+import edu.hop.diploma.border.PageBorder;
+import edu.hop.diploma.text.Alignments;
+import edu.hop.diploma.text.EmbeddedFont;
+import edu.hop.diploma.text.FontMetrics;
+import edu.hop.diploma.text.Text;
+import java.io.IOException;
+
+/**
+ * Clase que calcula la ubicación de los bordes y textos de un diploma sin
+ * dibujarlos. Los cálculos modifican los límites y posiciones del
+ * {@link RenderContext} recibido.
+ *
+ * @author jjsanche
+ */
+final class DiplomaLayout {
+
+    private DiplomaLayout() {
+    }
+
+    /**
+     * Calcula el rectángulo de un borde y ajusta los límites del contenido
+     * del diploma.
+     *
+     * @param context El contexto de la construcción actual.
+     * @param border El borde a ubicar.
+     * @return Un arreglo con x, y, ancho y alto del rectángulo del borde.
+     */
+    static float[] layoutBorder(RenderContext context, PageBorder border) {
+        BorderSides side = border.getBorderSide();
+        float margin = border.getMarginWidth() * context.pointsPerUnit;
+        float lineWidth = border.getLineWidth() * context.pointsPerUnit;
+        float widthRight = context.pageWidth - margin;
+        float heightTop = context.pageHeight - margin;
+
+        float x = margin;
+        float y = margin;
+        float width = 1; //1 is assigned just to avoid the compile error
+        float height = 1; //1 is assigned just to avoid the compile error
+
+        switch (side) {
+            case TOP:
+                y = heightTop - lineWidth;
+
+                if (context.heightTopLimit >= y) {
+                    context.heightTopLimit = context.currentYPosition = y - context.contentMarginSize;
+                }
+            case BOTTOM:
+                width = widthRight - margin;
+                height = lineWidth;
+
+                if (side == BorderSides.BOTTOM && context.heightBottomLimit <= y) {
+                    context.heightBottomLimit = y + context.contentMarginSize + lineWidth;
+                }
+                break;
+            case RIGHT:
+                x = widthRight - lineWidth;
+
+                if (context.widthRightLimit >= x) {
+                    context.widthRightLimit = x - context.contentMarginSize;
+                    context.currentXPosition = context.widthRightLimit + lineWidth;
+                }
+            case LEFT:
+                width = lineWidth;
+                height = heightTop - margin;
+
+                if (side == BorderSides.LEFT && context.widthLeftLimit <= x) {
+                    context.widthLeftLimit = context.currentXPosition = x + context.contentMarginSize;
+                }
+                break;
+        }
+
+        return new float[]{x, y, width, height};
+    }
+
+    /**
+     * Calcula el ancho y alto de todos los textos y su posición en el diploma.
+     *
+     * @param context El contexto de la construcción actual.
+     * @param texts Los textos a ubicar.
+     * @return El acomodo de los textos.
+     * @throws IOException En caso de error al medir algún texto.
+     */
+    static TextLayout layoutTexts(RenderContext context, Text[] texts) throws IOException {
+        TextLayout layout = new TextLayout(texts.length);
+
+        int lineStart = 0;
+
+        for (int i = 0; i < texts.length; i++) {
+            measure(texts[i], layout, i);
+
+            if (texts[i].getBreakLine() || i == texts.length - 1) {
+                fitLine(context, texts, layout, lineStart, i + 1);
+                lineStart = i + 1;
+            }
+        }
+
+        layoutRange(context, texts, layout, 0, texts.length);
+
+        return layout;
+    }
+
+    /**
+     * Calcula la posición de los textos dentro del rango indicado. Los textos
+     * alineados a la izquierda o derecha se ubican de inmediato, mientras que
+     * los centrados se acumulan hasta encontrar el texto que termina la línea
+     * para centrar la línea completa.
+     *
+     * @param context El contexto de la construcción actual.
+     * @param texts Los textos del diploma.
+     * @param layout El acomodo con las dimensiones ya calculadas, donde se
+     * guardarán las posiciones.
+     * @param start El índice del primer texto a ubicar.
+     * @param end El índice siguiente al último texto a ubicar.
+     */
+    static void layoutRange(RenderContext context, Text[] texts, TextLayout layout,
+            int start, int end) {
+        int[] centered = new int[end - start];
+        float[] deltaWidths = new float[end - start];
+        int centeredCount = 0;
+        float centeredX = context.pageWidth / 2;
+
+        for (int i = start; i < end; i++) {
+            Text text = texts[i];
+            float textWidth = layout.widths[i];
+            float textHeight = layout.heights[i];
+            Alignments textAlignment = text.getAlignment();
+
+            if (textAlignment == Alignments.CENTER) {
+                float x = (context.pageWidth - textWidth) / 2;
+                float delta = context.pageWidth / 2 - (x >= 0 ? x : 0);
+
+                if (text.getBreakLine()) {
+                    moveToNextLine(context, textHeight);
+                }
+
+                centered[centeredCount] = i;
+                deltaWidths[centeredCount++] = delta * 2;//la longitud del texto completo
+                centeredX -= delta;
+
+                if (text.getBreakLine()) {
+                    for (int j = 0; j < centeredCount; j++) {
+                        layout.place(centered[j], centeredX, context.currentYPosition);
+                        centeredX += deltaWidths[j];
+                    }
+
+                    centeredCount = 0;
+                    centeredX = context.pageWidth / 2;
+                }
+            } else {
+                float y = context.currentYPosition - textHeight;
+                float x = textAlignment == Alignments.LEFT
+                        ? context.currentXPosition : context.currentXPosition - textWidth;
+
+                if (text.getBreakLine()) {
+                    moveToNextLine(context, textHeight);
+                } else {
+                    context.currentXPosition += textAlignment == Alignments.LEFT ? textWidth : -textWidth;
+                }
+
+                layout.place(i, x, y);
+            }
+        }
+    }
+
+    /**
+     * Reduce el tamaño de los textos de una línea que se ajustan al ancho
+     * disponible cuando la línea no cabe entre los límites izquierdo y
+     * derecho. Como el ancho de un texto es proporcional al tamaño de su
+     * fuente, el tamaño se calcula directamente a partir del ancho medido con
+     * el tamaño máximo, sin volver a medir el texto. La altura de los textos
+     * no cambia para que la línea ocupe siempre el mismo espacio.
+     *
+     * @param context El contexto de la construcción actual.
+     * @param texts Los textos del diploma.
+     * @param layout El acomodo con las dimensiones ya calculadas.
+     * @param start El índice del primer texto de la línea.
+     * @param end El índice siguiente al último texto de la línea.
+     */
+    static void fitLine(RenderContext context, Text[] texts, TextLayout layout, int start, int end) {
+        float fixedWidth = 0;
+        float shrinkWidth = 0;
+
+        for (int i = start; i < end; i++) {
+            Text text = texts[i];
+
+            if (text.isShrinkToFit()) {
+                //El acomodo puede venir de una plantilla con un tamaño ya
+                //reducido, por lo que el ancho se lleva al tamaño máximo.
+                if (layout.fontSizes[i] != text.getFontSize()) {
+                    layout.widths[i] = layout.widths[i] / layout.fontSizes[i] * text.getFontSize();
+                    layout.fontSizes[i] = text.getFontSize();
+                }
+
+                shrinkWidth += layout.widths[i];
+            } else {
+                fixedWidth += layout.widths[i];
+            }
+        }
+
+        float available = context.widthRightLimit - context.widthLeftLimit - fixedWidth;
+
+        if (shrinkWidth == 0 || shrinkWidth <= available) {
+            return;
+        }
+
+        float scale = available > 0 ? available / shrinkWidth : 0;
+
+        for (int i = start; i < end; i++) {
+            Text text = texts[i];
+
+            if (text.isShrinkToFit()) {
+                //Se redondea hacia abajo a centésimas para que el texto quepa
+                //y el tamaño se escriba corto en el PDF.
+                float fontSize = (float) Math.floor(text.getFontSize() * scale * 100) / 100;
+                fontSize = Math.max(fontSize, text.getMinFontSize());
+                layout.widths[i] = layout.widths[i] / text.getFontSize() * fontSize;
+                layout.fontSizes[i] = fontSize;
+            }
+        }
+    }
+
+    /**
+     * Mueve las posiciones actuales al inicio de la siguiente línea sin
+     * rebasar el límite inferior del contenido.
+     *
+     * @param context El contexto de la construcción actual.
+     * @param textHeight La altura del texto que termina la línea.
+     */
+    private static void moveToNextLine(RenderContext context, float textHeight) {
+        context.currentXPosition = context.widthLeftLimit + context.contentMarginSize;
+        context.currentYPosition -= context.currentYPosition - textHeight > context.heightBottomLimit
+                ? textHeight : context.currentYPosition - context.heightBottomLimit;
+    }
+
+    /**
+     * Calcula el ancho y alto de un texto con el tamaño de su fuente.
+     *
+     * @param text El texto a medir.
+     * @param layout El acomodo donde se guardarán las dimensiones.
+     * @param index El índice del texto.
+     * @throws IOException En caso de error al obtener las métricas de la fuente.
+     */
+    static void measure(Text text, TextLayout layout, int index) throws IOException {
+        EmbeddedFont embeddedFont = text.getEmbeddedFont();
+        layout.fontSizes[index] = text.getFontSize();
+
+        if (embeddedFont != null) {
+            layout.widths[index] = embeddedFont.getWidth(text.getText(), text.getFontSize());
+            layout.heights[index] = embeddedFont.getHeight(text.getFontSize());
+            return;
+        }
+
+        FontMetrics metrics = FontMetrics.of(text.getFontType());
+        layout.widths[index] = metrics.getWidth(text.getText(), text.getFontSize());
+        layout.heights[index] = metrics.getHeight(text.getFontSize());
+    }
+}
@@ -0,0 +1,159 @@
+package edu.hop.diploma.builder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registro de la huella de cada diploma construido, guardado junto a los
+ * diplomas generados. Al volver a construir un lote, los diplomas cuya huella
+ * no cambió y cuyo archivo existe pueden omitirse.
+ *
+ * <p>El registro es un archivo de texto con una línea por diploma que
+ * contiene la huella y la ubicación del diploma separadas por un tabulador.
+ * Puede actualizarse desde varios hilos.</p>
+ *
+ * @author jjsanche
+ * @see DiplomaFingerprint
+ */
+public class DiplomaManifest {
+    /**
+     * El nombre de archivo sugerido para el registro dentro del directorio de
+     * los diplomas.
+     */
+    public static final String DEFAULT_FILE_NAME = "diplomas.manifest";
+
+    private static final String HEADER = "# java-diploma manifest v1";
+
+    private final Path file;
+    private final ConcurrentMap<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    /**
+     * Crea un registro vacío que se guardará en el archivo indicado.
+     *
+     * @param file La ruta del archivo del registro.
+     */
+    public DiplomaManifest(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Lee el registro del archivo indicado. Si el archivo no existe se regresa
+     * un registro vacío.
+     *
+     * @param file La ruta del archivo del registro.
+     * @return El registro leído.
+     * @throws IOException En caso de error al leer el archivo o de que éste no
+     * tenga el formato esperado.
+     */
+    public static DiplomaManifest load(Path file) throws IOException {
+        DiplomaManifest manifest = new DiplomaManifest(file);
+
+        if (!Files.exists(file)) {
+            return manifest;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+
+            if (!HEADER.equals(line)) {
+                throw new IOException("Unsupported manifest format: " + file);
+            }
+
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('\t');
+
+                if (separator > 0) {
+                    manifest.fingerprints.put(line.substring(separator + 1), line.substring(0, separator));
+                }
+            }
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Indica si la huella registrada para un diploma coincide con la indicada.
+     *
+     * @param location La ubicación del diploma.
+     * @param fingerprint La huella actual del diploma.
+     * @return true si el diploma se construyó antes con la misma huella.
+     */
+    public boolean matches(String location, String fingerprint) {
+        return fingerprint.equals(fingerprints.get(location));
+    }
+
+    /**
+     * Registra la huella de un diploma construido.
+     *
+     * @param location La ubicación del diploma.
+     * @param fingerprint La huella del diploma.
+     */
+    public void put(String location, String fingerprint) {
+        fingerprints.put(location, fingerprint);
+    }
+
+    /**
+     * Elimina el registro de un diploma, por ejemplo cuando su construcción
+     * falló.
+     *
+     * @param location La ubicación del diploma.
+     */
+    public void remove(String location) {
+        fingerprints.remove(location);
+    }
+
+    /**
+     * Regresa el número de diplomas registrados.
+     *
+     * @return El número de diplomas.
+     */
+    public int size() {
+        return fingerprints.size();
+    }
+
+    /**
+     * Guarda el registro. El archivo se escribe primero con otro nombre y
+     * después se renombra, de modo que una falla a la mitad no deja un
+     * registro incompleto.
+     *
+     * @throws IOException En caso de error al escribir el archivo.
+     */
+    public void save() throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+
+                for (Map.Entry<String, String> entry : new TreeMap<>(fingerprints).entrySet()) {
+                    writer.write(entry.getValue());
+                    writer.write('\t');
+                    writer.write(entry.getKey());
+                    writer.newLine();
+                }
+            }
+
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
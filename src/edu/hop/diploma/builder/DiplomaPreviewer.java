@@ -0,0 +1,215 @@
+package edu.hop.diploma.builder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import javax.imageio.ImageIO;
+
+/**
+ * Genera vistas previas en PNG de los diplomas. Cada vista previa se dibuja a
+ * partir del acomodo del diploma en un documento en memoria, por lo que no es
+ * necesario leer de nuevo el PDF guardado.
+ *
+ * <p>Las imágenes se generan en el {@link Executor} indicado y se guardan en
+ * memoria identificadas por la huella del contenido del diploma, de modo que
+ * los diplomas con el mismo contenido comparten su vista previa. Si varios
+ * hilos piden al mismo tiempo una vista previa que no está en memoria, ésta
+ * se genera una sola vez. Esta clase es segura para usarse desde varios
+ * hilos.</p>
+ *
+ * @author jjsanche
+ * @see DiplomaFingerprint
+ */
+public class DiplomaPreviewer {
+    /**
+     * Resolución de las vistas previas cuando no se indica otra.
+     */
+    public static final int DEFAULT_DPI = 96;
+
+    private final DiplomaBuilder builder;
+    private final Executor executor;
+    private final int dpi;
+    private final long maxCacheBytes;
+    private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private long cacheBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Crea un generador de vistas previas.
+     *
+     * @param builder El constructor con el cuál se acomodan los diplomas.
+     * @param executor El ejecutor donde se dibujarán las imágenes. Quien
+     * invoca es responsable de terminarlo.
+     * @param dpi La resolución de las imágenes en puntos por pulgada.
+     * @param maxCacheBytes El total de bytes de imágenes que puede guardar la
+     * memoria. Con 0 no se guarda ninguna.
+     */
+    public DiplomaPreviewer(DiplomaBuilder builder, Executor executor, int dpi, long maxCacheBytes) {
+        if (dpi <= 0) {
+            throw new IllegalArgumentException("dpi must be greater than 0.");
+        }
+
+        if (maxCacheBytes < 0) {
+            throw new IllegalArgumentException("maxCacheBytes must not be negative.");
+        }
+
+        this.builder = builder;
+        this.executor = executor;
+        this.dpi = dpi;
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    /**
+     * Regresa la vista previa de un diploma, generándola en el ejecutor en
+     * caso de no encontrarse en memoria.
+     *
+     * @param diploma El diploma. No debe modificarse hasta que termine la
+     * vista previa.
+     * @return La vista previa en formato PNG. Los bytes no deben modificarse
+     * ya que se comparten con otros hilos.
+     */
+    public CompletableFuture<byte[]> preview(Diploma diploma) {
+        String fingerprint;
+
+        try {
+            fingerprint = DiplomaFingerprint.of(diploma, builder);
+        } catch (IOException | RuntimeException ex) {
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+
+        byte[] png = get(fingerprint);
+
+        if (png != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(png);
+        }
+
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(fingerprint, future);
+
+        if (existing != null) {
+            hits.increment();
+            return existing;
+        }
+
+        misses.increment();
+
+        try {
+            executor.execute(() -> {
+                try {
+                    byte[] image = render(diploma);
+                    put(fingerprint, image);
+                    future.complete(image);
+                } catch (Exception | LinkageError ex) {
+                    future.completeExceptionally(ex);
+                } finally {
+                    inFlight.remove(fingerprint, future);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.remove(fingerprint, future);
+            future.completeExceptionally(ex);
+        }
+
+        return future;
+    }
+
+    /**
+     * Dibuja la vista previa de un diploma en el hilo actual, sin usar la
+     * memoria.
+     *
+     * @param diploma El diploma.
+     * @return La vista previa en formato PNG.
+     * @throws IOException En caso de no poder leer la firma del diploma o de
+     * error al dibujar la imagen.
+     */
+    public byte[] render(Diploma diploma) throws IOException {
+        BufferedImage image = builder.renderImage(builder.layout(diploma), dpi);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(64 * 1024);
+
+        if (!ImageIO.write(image, "png", output)) {
+            throw new IOException("No PNG writer available.");
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * @return La resolución de las vistas previas en puntos por pulgada.
+     */
+    public int getDpi() {
+        return dpi;
+    }
+
+    /**
+     * @return El número de vistas previas encontradas en memoria o en curso.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return El número de vistas previas que tuvieron que dibujarse.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return El total de bytes de imágenes guardados en memoria.
+     */
+    public long getCacheBytes() {
+        synchronized (cache) {
+            return cacheBytes;
+        }
+    }
+
+    /**
+     * Busca una vista previa en memoria.
+     *
+     * @param fingerprint La huella del diploma.
+     * @return Los bytes de la imagen o null si no está en memoria.
+     */
+    private byte[] get(String fingerprint) {
+        synchronized (cache) {
+            return cache.get(fingerprint);
+        }
+    }
+
+    /**
+     * Guarda una vista previa en memoria, eliminando las usadas hace más
+     * tiempo hasta que quepa.
+     *
+     * @param fingerprint La huella del diploma.
+     * @param png Los bytes de la imagen.
+     */
+    private void put(String fingerprint, byte[] png) {
+        if (png.length > maxCacheBytes) {
+            return;
+        }
+
+        synchronized (cache) {
+            byte[] previous = cache.put(fingerprint, png);
+            cacheBytes += png.length - (previous != null ? previous.length : 0);
+            Iterator<byte[]> eldest = cache.values().iterator();
+
+            while (cacheBytes > maxCacheBytes && eldest.hasNext()) {
+                cacheBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+}
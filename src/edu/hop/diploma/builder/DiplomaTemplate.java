@@ -0,0 +1,393 @@
+package edu.hop.diploma.builder;
+
+import edu.hop.diploma.border.BorderSides;
+import edu.hop.diploma.border.PageBorder;
+import edu.hop.diploma.text.Alignments;
+import edu.hop.diploma.text.EmbeddedFont;
+import edu.hop.diploma.text.Text;
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Plantilla compilada a partir de un diploma de ejemplo. Contiene las
+ * dimensiones y posiciones ya calculadas de todos sus textos, de modo que al
+ * construir otro diploma con la misma estructura sólo es necesario medir y
+ * ubicar los textos que cambiaron, como el nombre del participante, las horas
+ * o la fecha.
+ *
+ * <p>Una plantilla sólo se aplica a diplomas con las mismas dimensiones,
+ * márgenes, límites de bordes y la misma secuencia de fuentes, tamaños y
+ * alineaciones, y cuyas líneas pueden ubicarse de manera independiente; para
+ * cualquier otro diploma se calcula el acomodo completo.
+ * Sus valores no cambian una vez compilada, por lo que puede compartirse
+ * entre hilos.</p>
+ *
+ * <p>Opcionalmente la plantilla puede usar una capa invariante: los bordes y
+ * las líneas sin textos variables (ver {@link Text#isVariable()}) se dibujan
+ * una sola vez como un Form XObject que cada página invoca, y sobre él sólo se
+ * dibujan los textos personalizados.</p>
+ *
+ * @author jjsanche
+ */
+public final class DiplomaTemplate {
+    private final float[] geometry;
+    private final String[] strings;
+    private final PDFont[] fonts;
+    private final EmbeddedFont[] embeddedFonts;
+    private final float[] fontSizes;
+    private final float[] minFontSizes;
+    private final Alignments[] alignments;
+    private final boolean[] breakLines;
+    private final float[] widths;
+    private final float[] heights;
+    private final float[] fittedFontSizes;
+    private final float[] xs;
+    private final float[] ys;
+    private final int[] order;
+    private final int[] lineStarts;
+    private final int[] lineOrderStarts;
+    private final float[] lineXPositions;
+    private final float[] lineYPositions;
+    private final boolean independentLines;
+    private final boolean invariantLayer;
+    private final Color[] colors;
+    private final boolean[] underlines;
+    private final boolean[] invariantTexts;
+    private final BorderSides[] borderSides;
+    private final float[] borderLineWidths;
+    private final float[] borderMarginWidths;
+    private final Color[] borderColors;
+    private final String signFileName;
+    private final String instructorName;
+    private final String fingerprint;
+
+    /**
+     * Compila una plantilla a partir del diploma de ejemplo recibido.
+     *
+     * @param prototype El diploma del cuál se tomarán los textos y bordes.
+     * @return La plantilla compilada.
+     * @throws IOException En caso de error al medir algún texto.
+     */
+    public static DiplomaTemplate compile(Diploma prototype) throws IOException {
+        return new DiplomaTemplate(prototype, false);
+    }
+
+    /**
+     * Compila una plantilla a partir del diploma de ejemplo recibido.
+     *
+     * @param prototype El diploma del cuál se tomarán los textos y bordes.
+     * @param invariantLayer true para dibujar los bordes y textos fijos una
+     * sola vez como un Form XObject reutilizado por cada página.
+     * @return La plantilla compilada.
+     * @throws IOException En caso de error al medir algún texto.
+     */
+    public static DiplomaTemplate compile(Diploma prototype, boolean invariantLayer) throws IOException {
+        return new DiplomaTemplate(prototype, invariantLayer);
+    }
+
+    /**
+     * Calcula el acomodo del diploma de ejemplo y guarda la información de
+     * cada línea.
+     *
+     * @param prototype El diploma de ejemplo.
+     * @param invariantLayer true para usar la capa invariante.
+     * @throws IOException En caso de error al medir algún texto.
+     */
+    private DiplomaTemplate(Diploma prototype, boolean invariantLayer) throws IOException {
+        RenderContext context = new RenderContext(prototype);
+        PageBorder[] borders = prototype.getPageBorders().toArray(new PageBorder[0]);
+        borderSides = new BorderSides[borders.length];
+        borderLineWidths = new float[borders.length];
+        borderMarginWidths = new float[borders.length];
+        borderColors = new Color[borders.length];
+
+        for (int i = 0; i < borders.length; i++) {
+            DiplomaLayout.layoutBorder(context, borders[i]);
+            borderSides[i] = borders[i].getBorderSide();
+            borderLineWidths[i] = borders[i].getLineWidth();
+            borderMarginWidths[i] = borders[i].getMarginWidth();
+            borderColors[i] = borders[i].getColor();
+        }
+
+        this.invariantLayer = invariantLayer;
+        signFileName = prototype.getSignFileName();
+        instructorName = prototype.getInstructorName();
+        fingerprint = DiplomaFingerprint.ofTemplate(prototype, invariantLayer);
+
+        Text[] texts = prototype.getTexts().toArray(new Text[0]);
+        int size = texts.length;
+        geometry = geometryOf(context);
+        strings = new String[size];
+        fonts = new PDFont[size];
+        embeddedFonts = new EmbeddedFont[size];
+        fontSizes = new float[size];
+        minFontSizes = new float[size];
+        alignments = new Alignments[size];
+        breakLines = new boolean[size];
+        colors = new Color[size];
+        underlines = new boolean[size];
+        invariantTexts = new boolean[size];
+        boolean pendingCentered = false;
+        boolean independent = true;
+        int lines = 0;
+
+        for (int i = 0; i < size; i++) {
+            strings[i] = texts[i].getText();
+            fonts[i] = texts[i].getFontType();
+            embeddedFonts[i] = texts[i].getEmbeddedFont();
+            fontSizes[i] = texts[i].getFontSize();
+            minFontSizes[i] = texts[i].getMinFontSize();
+            alignments[i] = texts[i].getAlignment();
+            breakLines[i] = texts[i].getBreakLine();
+            colors[i] = texts[i].getColor();
+            underlines[i] = texts[i].isUnderlined();
+
+            if (i == 0 || breakLines[i - 1]) {
+                lines++;
+            }
+
+            //Los textos centrados pendientes pasan a la siguiente línea cuando
+            //la línea la termina un texto no centrado.
+            if (alignments[i] == Alignments.CENTER) {
+                pendingCentered = !breakLines[i];
+            } else if (breakLines[i] && pendingCentered) {
+                independent = false;
+            }
+        }
+
+        independentLines = independent;
+
+        lineStarts = new int[lines + 1];
+        lineOrderStarts = new int[lines + 1];
+        lineXPositions = new float[lines + 1];
+        lineYPositions = new float[lines + 1];
+        TextLayout layout = new TextLayout(size);
+
+        for (int i = 0; i < size; i++) {
+            DiplomaLayout.measure(texts[i], layout, i);
+        }
+
+        int line = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || breakLines[i - 1]) {
+                lineStarts[line] = i;
+                lineXPositions[line] = context.currentXPosition;
+                lineYPositions[line++] = context.currentYPosition;
+            }
+
+            if (breakLines[i] || i == size - 1) {
+                DiplomaLayout.fitLine(context, texts, layout, lineStarts[line - 1], i + 1);
+                DiplomaLayout.layoutRange(context, texts, layout, lineStarts[line - 1], i + 1);
+                lineOrderStarts[line] = layout.count;
+            }
+        }
+
+        lineStarts[line] = size;
+        order = layout.order;
+
+        for (int l = 0; l < line; l++) {
+            boolean invariant = true;
+
+            for (int i = lineStarts[l]; i < lineStarts[l + 1]; i++) {
+                invariant &= !texts[i].isVariable();
+            }
+
+            Arrays.fill(invariantTexts, lineStarts[l], lineStarts[l + 1], invariant);
+        }
+        lineXPositions[line] = context.currentXPosition;
+        lineYPositions[line] = context.currentYPosition;
+        widths = layout.widths;
+        heights = layout.heights;
+        fittedFontSizes = layout.fontSizes;
+        xs = layout.xs;
+        ys = layout.ys;
+    }
+
+    /**
+     * Calcula el acomodo de los textos de un diploma. Las líneas cuyos textos
+     * son iguales a los de la plantilla se copian sin volver a medirlas ni
+     * ubicarlas; el resto se calcula a partir de la posición guardada al
+     * inicio de la línea.
+     *
+     * @param context El contexto de la construcción actual, con los límites de
+     * los bordes ya calculados.
+     * @param texts Los textos del diploma a construir.
+     * @return El acomodo de los textos o null si la plantilla no corresponde
+     * al diploma.
+     * @throws IOException En caso de error al medir algún texto.
+     */
+    TextLayout layoutTexts(RenderContext context, Text[] texts) throws IOException {
+        if (!matches(context, texts)) {
+            return null;
+        }
+
+        TextLayout layout = new TextLayout(texts.length);
+
+        for (int line = 0; line + 1 < lineStarts.length; line++) {
+            int start = lineStarts[line];
+            int end = lineStarts[line + 1];
+            boolean unchanged = true;
+
+            for (int i = start; i < end; i++) {
+                String text = texts[i].getText();
+
+                if (text == strings[i] || text.equals(strings[i])) {
+                    layout.widths[i] = widths[i];
+                    layout.heights[i] = heights[i];
+                    layout.fontSizes[i] = fittedFontSizes[i];
+                } else {
+                    DiplomaLayout.measure(texts[i], layout, i);
+                    unchanged = false;
+                }
+            }
+
+            if (unchanged) {
+                copyLine(layout, line);
+            } else {
+                context.currentXPosition = lineXPositions[line];
+                context.currentYPosition = lineYPositions[line];
+                DiplomaLayout.fitLine(context, texts, layout, start, end);
+                DiplomaLayout.layoutRange(context, texts, layout, start, end);
+            }
+        }
+
+        context.currentXPosition = lineXPositions[lineXPositions.length - 1];
+        context.currentYPosition = lineYPositions[lineYPositions.length - 1];
+
+        return layout;
+    }
+
+    /**
+     * Copia las posiciones de una línea de la plantilla respetando el orden en
+     * que la plantilla la dibujó.
+     *
+     * @param layout El acomodo donde se copiarán las posiciones.
+     * @param line El índice de la línea a copiar.
+     */
+    private void copyLine(TextLayout layout, int line) {
+        for (int j = lineOrderStarts[line]; j < lineOrderStarts[line + 1]; j++) {
+            int i = order[j];
+            layout.place(i, xs[i], ys[i]);
+        }
+    }
+
+    /**
+     * true si la plantilla dibuja los bordes y textos fijos como una capa
+     * invariante.
+     *
+     * @return true si se usa la capa invariante, false en caso contrario.
+     */
+    boolean usesInvariantLayer() {
+        return invariantLayer;
+    }
+
+    /**
+     * Regresa la huella del diploma de ejemplo y de las opciones con las que
+     * se compiló la plantilla.
+     *
+     * @return La huella en hexadecimal.
+     * @see DiplomaFingerprint#of(Diploma, DiplomaBuilder)
+     */
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * true si el texto indicado pertenece a una línea sin textos variables y
+     * por lo tanto se dibuja en la capa invariante.
+     *
+     * @param index El índice del texto.
+     * @return true si el texto forma parte de la capa invariante.
+     */
+    boolean isInvariant(int index) {
+        return invariantTexts[index];
+    }
+
+    /**
+     * true si la capa invariante de la plantilla puede usarse para el diploma,
+     * es decir, si sus bordes, firma y textos fijos son iguales a los del
+     * diploma de ejemplo. Debe invocarse sólo si
+     * {@link #layoutTexts(RenderContext, Text[])} aceptó el diploma.
+     *
+     * @param diploma El diploma a construir.
+     * @param texts Los textos del diploma.
+     * @return true si la capa invariante corresponde al diploma.
+     */
+    boolean matchesInvariantLayer(Diploma diploma, Text[] texts) {
+        if (!invariantLayer || !signFileName.equals(diploma.getSignFileName())
+                || !instructorName.equals(diploma.getInstructorName())) {
+            return false;
+        }
+
+        int b = 0;
+
+        for (PageBorder border : diploma.getPageBorders()) {
+            if (b == borderSides.length || border.getBorderSide() != borderSides[b]
+                    || border.getLineWidth() != borderLineWidths[b]
+                    || border.getMarginWidth() != borderMarginWidths[b]
+                    || !border.getColor().equals(borderColors[b])) {
+                return false;
+            }
+
+            b++;
+        }
+
+        if (b != borderSides.length) {
+            return false;
+        }
+
+        for (int i = 0; i < texts.length; i++) {
+            if (invariantTexts[i] && (!texts[i].getText().equals(strings[i])
+                    || !texts[i].getColor().equals(colors[i])
+                    || texts[i].isUnderlined() != underlines[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * true si la plantilla puede aplicarse al diploma.
+     *
+     * @param context El contexto de la construcción actual.
+     * @param texts Los textos del diploma.
+     * @return true si el diploma tiene la misma geometría y estructura de
+     * textos que la plantilla, false en caso contrario.
+     */
+    private boolean matches(RenderContext context, Text[] texts) {
+        if (!independentLines || texts.length != strings.length || !Arrays.equals(geometry, geometryOf(context))) {
+            return false;
+        }
+
+        for (int i = 0; i < texts.length; i++) {
+            Text text = texts[i];
+
+            if (text.getFontType() != fonts[i] || text.getEmbeddedFont() != embeddedFonts[i]
+                    || text.getFontSize() != fontSizes[i]
+                    || text.getMinFontSize() != minFontSizes[i]
+                    || text.getAlignment() != alignments[i]
+                    || text.getBreakLine() != breakLines[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Regresa los valores del contexto de los cuáles depende la ubicación de
+     * los textos.
+     *
+     * @param context El contexto con los límites de los bordes ya calculados.
+     * @return Un arreglo con los valores del contexto.
+     */
+    private static float[] geometryOf(RenderContext context) {
+        return new float[]{context.pageWidth, context.contentMarginSize,
+            context.heightBottomLimit, context.widthLeftLimit, context.widthRightLimit,
+            context.currentXPosition, context.currentYPosition};
+    }
+}
@@ -0,0 +1,37 @@
+package edu.hop.diploma.builder;
+
+/**
+ * Error que lanza el iterador de una lista de diplomas cuando un registro no
+ * es válido, como un número de horas o una fecha con formato incorrecto. El
+ * registro se descarta y el iterador puede seguir usándose para leer los
+ * siguientes, por lo que un {@link DiplomaBatchBuilder} lo reporta como un
+ * diploma fallido y continúa con el lote.
+ *
+ * @author jjsanche
+ */
+public class InvalidRecordException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long offset;
+
+    /**
+     * Crea el error de un registro.
+     *
+     * @param offset La posición en bytes donde inicia el registro.
+     * @param message La descripción del error.
+     * @param cause El error original.
+     */
+    public InvalidRecordException(long offset, String message, Throwable cause) {
+        super(message, cause);
+        this.offset = offset;
+    }
+
+    /**
+     * Regresa la posición del registro dentro del archivo.
+     *
+     * @return La posición en bytes donde inicia el registro.
+     */
+    public long getOffset() {
+        return offset;
+    }
+}
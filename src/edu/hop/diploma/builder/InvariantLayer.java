@@ -0,0 +1,139 @@
+package edu.hop.diploma.builder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectForm;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+
+/**
+ * Capa con los bordes y textos fijos de una plantilla, ya convertida a los
+ * operadores de PDF y comprimida. Se genera una sola vez y en cada documento
+ * sólo se copia como un Form XObject, sin volver a dibujarla ni comprimirla.
+ *
+ * @author jjsanche
+ */
+final class InvariantLayer {
+    private static final COSName FORM = COSName.getPDFName("Form");
+
+    private final byte[] content;
+    private final COSBase filter;
+    private final Map<COSName, COSBase> fonts;
+    private final COSName signImageName;
+    private final float width;
+    private final float height;
+
+    /**
+     * Crea la capa a partir de una página en la cuál ya se dibujó el contenido
+     * invariante.
+     *
+     * @param page La página con el contenido invariante.
+     * @param signImage La firma dibujada en la página o null si no se dibujó.
+     * @param width El ancho de la página.
+     * @param height La altura de la página.
+     * @throws IOException En caso de error al leer el contenido de la página.
+     */
+    InvariantLayer(PDPage page, PDXObjectImage signImage, float width, float height) throws IOException {
+        COSStream stream = page.getContents().getStream();
+        COSDictionary resources = page.findResources().getCOSDictionary();
+        COSDictionary fontDictionary = (COSDictionary) resources.getDictionaryObject(COSName.FONT);
+        COSDictionary xObjectDictionary = (COSDictionary) resources.getDictionaryObject(COSName.XOBJECT);
+        COSName imageName = null;
+
+        this.content = readAll(stream.getFilteredStream());
+        this.filter = stream.getDictionaryObject(COSName.FILTER);
+        this.fonts = new LinkedHashMap<>();
+        this.width = width;
+        this.height = height;
+
+        if (fontDictionary != null) {
+            for (COSName name : fontDictionary.keySet()) {
+                fonts.put(name, fontDictionary.getDictionaryObject(name));
+            }
+        }
+
+        if (xObjectDictionary != null) {
+            for (COSName name : xObjectDictionary.keySet()) {
+                if (signImage == null || xObjectDictionary.getDictionaryObject(name) != signImage.getCOSObject()) {
+                    throw new IllegalStateException("Unexpected XObject in the invariant layer: " + name.getName());
+                }
+
+                imageName = name;
+            }
+        }
+
+        this.signImageName = imageName;
+    }
+
+    /**
+     * Crea el Form XObject de la capa para un documento.
+     *
+     * @param document El documento donde se usará la capa.
+     * @param signImage La firma del documento a la cuál hará referencia la capa.
+     * @return El Form XObject listo para invocarse desde las páginas.
+     * @throws IOException En caso de error al copiar el contenido al documento.
+     */
+    PDXObjectForm createForm(PDDocument document, PDXObjectImage signImage) throws IOException {
+        PDStream stream = new PDStream(document, new ByteArrayInputStream(content), true);
+        COSStream cosStream = stream.getStream();
+        COSDictionary resources = new COSDictionary();
+        COSDictionary fontDictionary = new COSDictionary();
+
+        for (Map.Entry<COSName, COSBase> font : fonts.entrySet()) {
+            fontDictionary.setItem(font.getKey(), font.getValue());
+        }
+
+        resources.setItem(COSName.FONT, fontDictionary);
+
+        if (signImageName != null) {
+            COSDictionary xObjectDictionary = new COSDictionary();
+            xObjectDictionary.setItem(signImageName, signImage);
+            resources.setItem(COSName.XOBJECT, xObjectDictionary);
+        }
+
+        if (filter != null) {
+            cosStream.setItem(COSName.FILTER, filter);
+        }
+
+        cosStream.setItem(COSName.TYPE, COSName.XOBJECT);
+        cosStream.setItem(COSName.SUBTYPE, FORM);
+        PDXObjectForm form = new PDXObjectForm(stream);
+        form.setBBox(new PDRectangle(width, height));
+        form.setResources(new PDResources(resources));
+
+        return form;
+    }
+
+    /**
+     * Lee todos los bytes del flujo recibido y lo cierra.
+     *
+     * @param input El flujo a leer.
+     * @return Los bytes leídos.
+     * @throws IOException En caso de error al leer el flujo.
+     */
+    private static byte[] readAll(InputStream input) throws IOException {
+        try (InputStream in = input) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+
+            return output.toByteArray();
+        }
+    }
+}
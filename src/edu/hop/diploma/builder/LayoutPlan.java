@@ -0,0 +1,470 @@
+package edu.hop.diploma.builder;
+
+import edu.hop.diploma.text.EmbeddedFont;
+import edu.hop.diploma.text.Text;
+import java.util.Arrays;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Acomodo completo de una página de diploma: los rectángulos de los bordes,
+ * los textos con su posición en el orden en que se dibujan, las líneas de
+ * subrayado y firma, y el recuadro de la firma. Todo se guarda en arreglos de
+ * tipos primitivos.
+ *
+ * <p>Un acomodo no cambia una vez creado, por lo que puede guardarse en un
+ * caché, compararse con otro o dibujarse varias veces, incluso desde varios
+ * hilos. Los colores se representan como enteros RGB.</p>
+ *
+ * @author jjsanche
+ * @see DiplomaBuilder#layout(Diploma)
+ */
+public final class LayoutPlan {
+    /**
+     * Escala con la que se dibuja la firma: cada pixel de la imagen original
+     * ocupa esta cantidad de puntos.
+     */
+    public static final float SIGNATURE_SCALE = 0.2f;
+
+    private static final int UNDERLINED = 1;
+    private static final int INVARIANT = 2;
+    private static final int SIGNATURE = 4;
+
+    private final float pageWidth;
+    private final float pageHeight;
+    private final String signFileName;
+    private final boolean invariantLayer;
+
+    private final float[] borders;
+    private final int[] borderColors;
+
+    private final String[] runTexts;
+    private final PDFont[] runFonts;
+    private final EmbeddedFont[] runEmbeddedFonts;
+    private final float[] runFontSizes;
+    private final int[] runColors;
+    private final float[] runXs;
+    private final float[] runYs;
+    private final float[] runWidths;
+    private final float[] runHeights;
+    private final int[] runLines;
+    private final int[] runFlags;
+    private final int[] runRuleStarts;
+    private final int lineCount;
+
+    private final float[] rules;
+    private final float[] signatures;
+
+    /**
+     * Crea el acomodo a partir de las posiciones ya calculadas.
+     *
+     * @param context El contexto con las dimensiones de la página.
+     * @param diploma El diploma acomodado.
+     * @param texts Los textos del diploma.
+     * @param borders Los rectángulos de los bordes, cuatro valores por borde.
+     * @param borderColors El color RGB de cada borde.
+     * @param layout La posición de los textos.
+     * @param invariantTemplate La plantilla cuya capa invariante corresponde
+     * al diploma o null si el diploma se dibuja completo.
+     * @param signWidth El ancho de la imagen de la firma.
+     * @param signHeight El alto de la imagen de la firma.
+     */
+    LayoutPlan(RenderContext context, Diploma diploma, Text[] texts, float[] borders, int[] borderColors,
+            TextLayout layout, DiplomaTemplate invariantTemplate, float signWidth, float signHeight) {
+        int count = layout.count;
+        String instructorName = diploma.getInstructorName();
+        int[] lineOfText = new int[texts.length];
+        int lines = 0;
+
+        for (int i = 0; i < texts.length; i++) {
+            lineOfText[i] = lines;
+
+            if (texts[i].getBreakLine()) {
+                lines++;
+            }
+        }
+
+        this.pageWidth = context.pageWidth;
+        this.pageHeight = context.pageHeight;
+        this.signFileName = diploma.getSignFileName();
+        this.invariantLayer = invariantTemplate != null;
+        this.borders = borders;
+        this.borderColors = borderColors;
+        this.lineCount = texts.length > 0 ? lineOfText[texts.length - 1] + 1 : 0;
+
+        runTexts = new String[count];
+        runFonts = new PDFont[count];
+        runEmbeddedFonts = new EmbeddedFont[count];
+        runFontSizes = new float[count];
+        runColors = new int[count];
+        runXs = new float[count];
+        runYs = new float[count];
+        runWidths = new float[count];
+        runHeights = new float[count];
+        runLines = new int[count];
+        runFlags = new int[count];
+        runRuleStarts = new int[count + 1];
+
+        float[] ruleBuffer = new float[count * 4 * 3];
+        float[] signatureBuffer = new float[count * 4];
+        int ruleCount = 0;
+        int signatureCount = 0;
+
+        for (int j = 0; j < count; j++) {
+            int i = layout.order[j];
+            Text text = texts[i];
+            float x = layout.xs[i];
+            float y = layout.ys[i];
+            float width = layout.widths[i];
+            float height = layout.heights[i];
+
+            runTexts[j] = text.getText();
+            runFonts[j] = text.getFontType();
+            runEmbeddedFonts[j] = text.getEmbeddedFont();
+            runFontSizes[j] = layout.fontSizes[i];
+            runColors[j] = text.getColor().getRGB() & 0xFFFFFF;
+            runXs[j] = x;
+            runYs[j] = y;
+            runWidths[j] = width;
+            runHeights[j] = height;
+            runLines[j] = lineOfText[i];
+            runRuleStarts[j] = ruleCount;
+
+            if (invariantTemplate != null && invariantTemplate.isInvariant(i)) {
+                runFlags[j] |= INVARIANT;
+            }
+
+            if (text.isUnderlined()) {
+                runFlags[j] |= UNDERLINED;
+                ruleCount = addRule(ruleBuffer, ruleCount, x, y - 1.5f, width);
+                ruleCount = addRule(ruleBuffer, ruleCount, x, y - 1, width);
+            }
+
+            if (text.getText().equals(instructorName)) {
+                runFlags[j] |= SIGNATURE;
+                ruleCount = addRule(ruleBuffer, ruleCount, x, y + height + 1.5f, width);
+                ruleCount = addRule(ruleBuffer, ruleCount, x, y + height + 1, width);
+                float signatureWidth = signWidth * SIGNATURE_SCALE;
+                float signatureHeight = signHeight * SIGNATURE_SCALE;
+                signatureBuffer[signatureCount * 4] = (width - signatureWidth) / 2 + x;
+                signatureBuffer[signatureCount * 4 + 1] = y + height + 5;
+                signatureBuffer[signatureCount * 4 + 2] = signatureWidth;
+                signatureBuffer[signatureCount * 4 + 3] = signatureHeight;
+                signatureCount++;
+            }
+        }
+
+        runRuleStarts[count] = ruleCount;
+        rules = Arrays.copyOf(ruleBuffer, ruleCount * 3);
+        signatures = Arrays.copyOf(signatureBuffer, signatureCount * 4);
+    }
+
+    /**
+     * Agrega una línea horizontal. Al igual que los textos, las coordenadas
+     * negativas se cambian por 0.
+     *
+     * @return El nuevo número de líneas.
+     */
+    private static int addRule(float[] buffer, int count, float x, float y, float width) {
+        buffer[count * 3] = x >= 0 ? x : 0;
+        buffer[count * 3 + 1] = y >= 0 ? y : 0;
+        buffer[count * 3 + 2] = width;
+
+        return count + 1;
+    }
+
+    /**
+     * @return El ancho de la página en puntos.
+     */
+    public float getPageWidth() {
+        return pageWidth;
+    }
+
+    /**
+     * @return El alto de la página en puntos.
+     */
+    public float getPageHeight() {
+        return pageHeight;
+    }
+
+    /**
+     * @return La ruta del archivo de la firma.
+     */
+    public String getSignFileName() {
+        return signFileName;
+    }
+
+    /**
+     * Indica si los bordes y los textos invariantes se dibujan mediante la
+     * capa invariante de la plantilla del constructor.
+     *
+     * @return true si el acomodo usa la capa invariante.
+     */
+    public boolean usesInvariantLayer() {
+        return invariantLayer;
+    }
+
+    /**
+     * @return El número de bordes.
+     */
+    public int getBorderCount() {
+        return borderColors.length;
+    }
+
+    /**
+     * Regresa el rectángulo de un borde.
+     *
+     * @param border El índice del borde.
+     * @return Un arreglo nuevo con x, y, ancho y alto.
+     */
+    public float[] getBorder(int border) {
+        return Arrays.copyOfRange(borders, border * 4, border * 4 + 4);
+    }
+
+    /**
+     * @param border El índice del borde.
+     * @return El color RGB del borde.
+     */
+    public int getBorderColor(int border) {
+        return borderColors[border];
+    }
+
+    /**
+     * @return El número de textos, en el orden en que se dibujan.
+     */
+    public int getRunCount() {
+        return runTexts.length;
+    }
+
+    /**
+     * @return El número de líneas de texto del diploma.
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return La cadena del texto.
+     */
+    public String getRunText(int run) {
+        return runTexts[run];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return La fuente del texto.
+     */
+    public PDFont getRunFont(int run) {
+        return runFonts[run];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return La fuente TrueType incrustada del texto o null si el texto usa
+     * la fuente estándar de {@link #getRunFont(int)}.
+     */
+    public EmbeddedFont getRunEmbeddedFont(int run) {
+        return runEmbeddedFonts[run];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return El tamaño de la fuente del texto.
+     */
+    public float getRunFontSize(int run) {
+        return runFontSizes[run];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return El color RGB del texto.
+     */
+    public int getRunColor(int run) {
+        return runColors[run];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return La coordenada x donde inicia el texto.
+     */
+    public float getRunX(int run) {
+        return runXs[run];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return La coordenada y de la línea base del texto.
+     */
+    public float getRunY(int run) {
+        return runYs[run];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return El ancho del texto.
+     */
+    public float getRunWidth(int run) {
+        return runWidths[run];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return La altura del texto.
+     */
+    public float getRunHeight(int run) {
+        return runHeights[run];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return El número de la línea a la que pertenece el texto.
+     */
+    public int getRunLine(int run) {
+        return runLines[run];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return true si el texto está subrayado.
+     */
+    public boolean isRunUnderlined(int run) {
+        return (runFlags[run] & UNDERLINED) != 0;
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return true si el texto se dibuja en la capa invariante.
+     */
+    public boolean isRunInvariant(int run) {
+        return (runFlags[run] & INVARIANT) != 0;
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return true si el texto es el nombre del instructor y lleva la firma
+     * encima.
+     */
+    public boolean isRunSigned(int run) {
+        return (runFlags[run] & SIGNATURE) != 0;
+    }
+
+    /**
+     * @return El número de líneas horizontales de subrayado y firma.
+     */
+    public int getRuleCount() {
+        return rules.length / 3;
+    }
+
+    /**
+     * @param rule El índice de la línea.
+     * @return La coordenada x donde inicia la línea.
+     */
+    public float getRuleX(int rule) {
+        return rules[rule * 3];
+    }
+
+    /**
+     * @param rule El índice de la línea.
+     * @return La coordenada y de la línea.
+     */
+    public float getRuleY(int rule) {
+        return rules[rule * 3 + 1];
+    }
+
+    /**
+     * @param rule El índice de la línea.
+     * @return El ancho de la línea.
+     */
+    public float getRuleWidth(int rule) {
+        return rules[rule * 3 + 2];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return El índice de la primera línea que pertenece al texto.
+     */
+    int getRunRuleStart(int run) {
+        return runRuleStarts[run];
+    }
+
+    /**
+     * @param run El índice del texto en el orden de dibujo.
+     * @return El índice siguiente a la última línea que pertenece al texto.
+     */
+    int getRunRuleEnd(int run) {
+        return runRuleStarts[run + 1];
+    }
+
+    /**
+     * @return El número de firmas, una por cada texto firmado.
+     */
+    public int getSignatureCount() {
+        return signatures.length / 4;
+    }
+
+    /**
+     * Regresa el recuadro de una firma.
+     *
+     * @param signature El índice de la firma, en el orden de los textos
+     * firmados.
+     * @return Un arreglo nuevo con x, y, ancho y alto.
+     */
+    public float[] getSignatureBox(int signature) {
+        return Arrays.copyOfRange(signatures, signature * 4, signature * 4 + 4);
+    }
+
+    /**
+     * Regresa un valor del recuadro de una firma sin copiar el recuadro.
+     *
+     * @param signature El índice de la firma.
+     * @param component 0 para x, 1 para y, 2 para el ancho y 3 para el alto.
+     * @return El valor indicado.
+     */
+    float getSignatureValue(int signature, int component) {
+        return signatures[signature * 4 + component];
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+
+        if (!(object instanceof LayoutPlan)) {
+            return false;
+        }
+
+        LayoutPlan other = (LayoutPlan) object;
+
+        return pageWidth == other.pageWidth && pageHeight == other.pageHeight
+                && invariantLayer == other.invariantLayer
+                && signFileName.equals(other.signFileName)
+                && Arrays.equals(borders, other.borders)
+                && Arrays.equals(borderColors, other.borderColors)
+                && Arrays.equals(runTexts, other.runTexts)
+                && Arrays.equals(runFonts, other.runFonts)
+                && Arrays.equals(runEmbeddedFonts, other.runEmbeddedFonts)
+                && Arrays.equals(runFontSizes, other.runFontSizes)
+                && Arrays.equals(runColors, other.runColors)
+                && Arrays.equals(runXs, other.runXs)
+                && Arrays.equals(runYs, other.runYs)
+                && Arrays.equals(runWidths, other.runWidths)
+                && Arrays.equals(runHeights, other.runHeights)
+                && Arrays.equals(runLines, other.runLines)
+                && Arrays.equals(runFlags, other.runFlags)
+                && Arrays.equals(rules, other.rules)
+                && Arrays.equals(signatures, other.signatures);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Float.floatToIntBits(pageWidth);
+        hash = 31 * hash + Float.floatToIntBits(pageHeight);
+        hash = 31 * hash + Arrays.hashCode(borders);
+        hash = 31 * hash + Arrays.hashCode(runTexts);
+        hash = 31 * hash + Arrays.hashCode(runXs);
+        hash = 31 * hash + Arrays.hashCode(runYs);
+
+        return hash;
+    }
+}
@@ -0,0 +1,127 @@
+package edu.hop.diploma.builder;
+
+import edu.hop.diploma.text.EmbeddedFont;
+import edu.hop.diploma.text.FontSubset;
+import java.io.IOException;
+import java.util.Map;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+
+/**
+ * Dibuja un {@link LayoutPlan} en el flujo de contenido de una página. El
+ * acomodo ya contiene todas las posiciones, por lo que dibujar no realiza
+ * ningún cálculo de acomodo. Los operadores se escriben mediante un
+ * {@link ContentEmitter}, que omite los cambios de estado repetidos.
+ *
+ * @author jjsanche
+ */
+final class LayoutRenderer {
+
+    private LayoutRenderer() {
+    }
+
+    /**
+     * Dibuja el acomodo completo, o sólo una de sus partes cuando la página
+     * usa la capa invariante.
+     *
+     * @param plan El acomodo a dibujar.
+     * @param signImage La imagen de la firma, ya agregada al documento.
+     * @param drawInvariant true para dibujar los bordes y los textos de la
+     * capa invariante.
+     * @param drawVariable true para dibujar los textos que no pertenecen a la
+     * capa invariante.
+     * @param contentStream El flujo de contenido de la página.
+     * @throws IOException En caso de error al dibujar. La página queda
+     * incompleta, por lo que el documento no debe guardarse.
+     */
+    static void render(LayoutPlan plan, PDXObjectImage signImage, Map<EmbeddedFont, FontSubset> fontSubsets,
+            boolean drawInvariant, boolean drawVariable, PDPageContentStream contentStream) throws IOException {
+        ContentEmitter emitter = new ContentEmitter(contentStream);
+
+        if (drawInvariant) {
+            renderBorders(plan, emitter);
+        }
+
+        int signature = 0;
+
+        for (int run = 0; run < plan.getRunCount(); run++) {
+            boolean invariant = plan.isRunInvariant(run);
+
+            if (invariant ? drawInvariant : drawVariable) {
+                renderRun(plan, run, signImage, signature, fontSubsets, emitter);
+            }
+
+            if (plan.isRunSigned(run)) {
+                signature++;
+            }
+        }
+
+        emitter.finish();
+    }
+
+    /**
+     * Dibuja los bordes del acomodo.
+     *
+     * @param plan El acomodo.
+     * @param emitter El emisor del flujo de contenido de la página.
+     * @throws IOException En caso de error al dibujar.
+     */
+    private static void renderBorders(LayoutPlan plan, ContentEmitter emitter) throws IOException {
+        for (int border = 0; border < plan.getBorderCount(); border++) {
+            float[] rectangle = plan.getBorder(border);
+            emitter.setFillColor(plan.getBorderColor(border));
+            emitter.fillRect(rectangle[0], rectangle[1], rectangle[2], rectangle[3]);
+        }
+    }
+
+    /**
+     * Dibuja un texto con sus líneas y, si es el nombre del instructor, la
+     * firma. Los textos vacíos no dibujan nada, por lo que se omiten.
+     *
+     * @param plan El acomodo.
+     * @param run El índice del texto en el orden de dibujo.
+     * @param signImage La imagen de la firma.
+     * @param signature El índice de la firma que corresponde al texto si éste
+     * está firmado.
+     * @param fontSubsets Los subconjuntos de las fuentes incrustadas.
+     * @param emitter El emisor del flujo de contenido de la página.
+     * @throws IOException En caso de error al dibujar.
+     */
+    private static void renderRun(LayoutPlan plan, int run, PDXObjectImage signImage, int signature,
+            Map<EmbeddedFont, FontSubset> fontSubsets, ContentEmitter emitter) throws IOException {
+        EmbeddedFont embeddedFont = plan.getRunEmbeddedFont(run);
+        String text = plan.getRunText(run);
+
+        if (!text.isEmpty()) {
+            emitter.setFillColor(plan.getRunColor(run));
+
+            if (embeddedFont == null) {
+                emitter.showText(plan.getRunFont(run), plan.getRunFontSize(run), plan.getRunX(run),
+                        plan.getRunY(run), text);
+            } else {
+                FontSubset subset = fontSubsets.get(embeddedFont);
+
+                if (subset == null) {
+                    subset = embeddedFont.createSubset();
+                    fontSubsets.put(embeddedFont, subset);
+                }
+
+                //drawString escribe los caracteres y no los glifos de la fuente.
+                emitter.showGlyphs(subset.getFont(), plan.getRunFontSize(run), plan.getRunX(run),
+                        plan.getRunY(run), subset.encode(text));
+            }
+        }
+
+        for (int rule = plan.getRunRuleStart(run); rule < plan.getRunRuleEnd(run); rule++) {
+            float x = plan.getRuleX(rule);
+            float y = plan.getRuleY(rule);
+            emitter.strokeLine(x, y, x + plan.getRuleWidth(rule), y);
+        }
+
+        if (plan.isRunSigned(run)) {
+            emitter.drawImage(signImage, plan.getSignatureValue(signature, 0),
+                    plan.getSignatureValue(signature, 1), plan.getSignatureValue(signature, 2),
+                    plan.getSignatureValue(signature, 3));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package edu.hop.diploma.builder;
+
+import edu.hop.diploma.physical.PageProperties;
+
+/**
+ * Clase que agrupa el estado de la construcción de un diploma. Cada
+ * construcción crea su propio contexto, de modo que construcciones
+ * concurrentes no comparten valores mutables.
+ *
+ * @author jjsanche
+ */
+final class RenderContext {
+
+    final Diploma diploma;
+    final float pointsPerUnit;
+    final float pageWidth;
+    final float pageHeight;
+    final float contentMarginSize;
+    float currentYPosition;
+    float currentXPosition;
+    float heightTopLimit;
+    float heightBottomLimit;
+    float widthRightLimit;
+    float widthLeftLimit;
+
+    /**
+     * Inicializa el contexto con las dimensiones y límites iniciales del
+     * diploma a construir.
+     *
+     * @param diploma El {@link Diploma} a construir.
+     */
+    RenderContext(Diploma diploma) {
+        PageProperties pageProperties = diploma.getPageProperties();
+        this.diploma = diploma;
+        pointsPerUnit = pageProperties.getSizeUnit().getPointsPerUnit();
+        contentMarginSize = diploma.getContentMarginSize() * pointsPerUnit;
+        pageWidth = pageProperties.getWidth() * pointsPerUnit;
+        pageHeight = pageProperties.getHeight() * pointsPerUnit;
+        heightTopLimit = pageHeight - contentMarginSize;
+        heightBottomLimit = 0 + contentMarginSize;
+        widthRightLimit = pageWidth - contentMarginSize;
+        widthLeftLimit = 0 + contentMarginSize;
+        currentYPosition = heightTopLimit - contentMarginSize;
+        currentXPosition = widthLeftLimit + contentMarginSize;
+    }
+}
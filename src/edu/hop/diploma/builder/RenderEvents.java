@@ -0,0 +1,122 @@
+package edu.hop.diploma.builder;
+
+import edu.hop.diploma.metrics.RenderPhase;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Eventos de JDK Flight Recorder emitidos durante la construcción de los
+ * diplomas. Sólo se cargan cuando la JVM incluye Flight Recorder.
+ *
+ * @author jjsanche
+ */
+final class RenderEvents {
+
+    private RenderEvents() {
+    }
+
+    /**
+     * Evento que cubre una fase de la construcción de una página.
+     */
+    @Name("edu.hop.diploma.RenderPhase")
+    @Label("Diploma Render Phase")
+    @Category("Diploma")
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    /**
+     * Evento que cubre la construcción completa de un documento.
+     */
+    @Name("edu.hop.diploma.Render")
+    @Label("Diploma Render")
+    @Category("Diploma")
+    static final class DocumentEvent extends Event {
+        @Label("File Name")
+        String fileName;
+
+        @Label("Pages")
+        int pages;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocatedBytes;
+
+        @Label("Successful")
+        boolean successful;
+    }
+
+    /**
+     * Inicia el evento de una fase en caso de que esté habilitado.
+     *
+     * @param phase La fase que inicia.
+     * @return El evento iniciado o null si no está habilitado.
+     */
+    static Object beginPhase(RenderPhase phase) {
+        PhaseEvent event = new PhaseEvent();
+
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.phase = phase.name();
+        event.begin();
+
+        return event;
+    }
+
+    /**
+     * Termina y registra el evento de una fase.
+     *
+     * @param event El evento regresado por {@link #beginPhase(RenderPhase)}.
+     */
+    static void endPhase(Object event) {
+        ((PhaseEvent) event).commit();
+    }
+
+    /**
+     * Inicia el evento de un documento en caso de que esté habilitado.
+     *
+     * @return El evento iniciado o null si no está habilitado.
+     */
+    static Object beginDocument() {
+        DocumentEvent event = new DocumentEvent();
+
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+
+        return event;
+    }
+
+    /**
+     * Termina y registra el evento de un documento.
+     *
+     * @param event El evento regresado por {@link #beginDocument()}.
+     * @param fileName El nombre de archivo del primer diploma.
+     * @param pages El número de páginas construidas.
+     * @param bytesWritten Los bytes escritos.
+     * @param allocatedBytes La memoria asignada o -1 si no se midió.
+     * @param successful true si el documento se construyó correctamente.
+     */
+    static void endDocument(Object event, String fileName, int pages, long bytesWritten,
+            long allocatedBytes, boolean successful) {
+        DocumentEvent documentEvent = (DocumentEvent) event;
+        documentEvent.fileName = fileName;
+        documentEvent.pages = pages;
+        documentEvent.bytesWritten = bytesWritten;
+        documentEvent.allocatedBytes = allocatedBytes;
+        documentEvent.successful = successful;
+        documentEvent.commit();
+    }
+}
@@ -0,0 +1,174 @@
+package edu.hop.diploma.builder;
+
+import edu.hop.diploma.metrics.RenderListener;
+import edu.hop.diploma.metrics.RenderMetrics;
+import edu.hop.diploma.metrics.RenderPhase;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Mide las fases de la construcción de un documento y entrega el resultado al
+ * {@link RenderListener} del constructor y a Flight Recorder.
+ *
+ * <p>Cada construcción usa su propio medidor desde un solo hilo. Cuando no hay
+ * quién reciba las mediciones se usa {@link #DISABLED}, cuyos métodos no
+ * realizan ninguna acción.</p>
+ *
+ * @author jjsanche
+ */
+final class RenderRecorder {
+    static final RenderRecorder DISABLED = new RenderRecorder(null, false);
+
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+    private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = getAllocationBean();
+
+    private final RenderListener listener;
+    private final boolean enabled;
+    private final long[] phaseNanos = new long[RenderPhase.values().length];
+    private final long start;
+    private final long startAllocated;
+    private final Object documentEvent;
+    private RenderPhase currentPhase;
+    private long phaseStart;
+    private Object phaseEvent;
+
+    /**
+     * Crea un medidor.
+     *
+     * @param listener Quien recibirá las mediciones o null.
+     * @param enabled true para medir.
+     */
+    private RenderRecorder(RenderListener listener, boolean enabled) {
+        this.listener = listener;
+        this.enabled = enabled;
+        this.start = enabled ? System.nanoTime() : 0;
+        this.startAllocated = listener != null ? allocatedBytes() : -1;
+        this.documentEvent = enabled && JFR_AVAILABLE ? RenderEvents.beginDocument() : null;
+    }
+
+    /**
+     * Inicia la medición de un documento.
+     *
+     * @param listener Quien recibirá las mediciones o null si sólo se
+     * emitirán eventos de Flight Recorder.
+     * @return Un medidor nuevo o {@link #DISABLED} si no hay quién reciba las
+     * mediciones.
+     */
+    static RenderRecorder start(RenderListener listener) {
+        if (listener == null && !JFR_AVAILABLE) {
+            return DISABLED;
+        }
+
+        return new RenderRecorder(listener, true);
+    }
+
+    /**
+     * Inicia una fase. Si otra fase está en curso, ésta se termina.
+     *
+     * @param phase La fase que inicia.
+     */
+    void begin(RenderPhase phase) {
+        if (!enabled) {
+            return;
+        }
+
+        end();
+        currentPhase = phase;
+        phaseEvent = JFR_AVAILABLE ? RenderEvents.beginPhase(phase) : null;
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * Termina la fase en curso.
+     */
+    void end() {
+        if (currentPhase == null) {
+            return;
+        }
+
+        phaseNanos[currentPhase.ordinal()] += System.nanoTime() - phaseStart;
+        currentPhase = null;
+
+        if (phaseEvent != null) {
+            RenderEvents.endPhase(phaseEvent);
+            phaseEvent = null;
+        }
+    }
+
+    /**
+     * Termina la medición del documento y entrega el resultado.
+     *
+     * @param fileName El nombre de archivo del primer diploma o null.
+     * @param pages El número de páginas construidas.
+     * @param bytesWritten El número de bytes escritos.
+     * @param error El error ocurrido o null.
+     */
+    void finish(String fileName, int pages, long bytesWritten, Throwable error) {
+        if (!enabled) {
+            return;
+        }
+
+        end();
+        long totalNanos = System.nanoTime() - start;
+        long allocated = startAllocated >= 0 ? allocatedBytes() - startAllocated : -1;
+
+        if (documentEvent != null) {
+            RenderEvents.endDocument(documentEvent, fileName, pages, bytesWritten, allocated,
+                    error == null);
+        }
+
+        if (listener != null) {
+            listener.renderCompleted(new RenderMetrics(fileName, pages, phaseNanos, totalNanos,
+                    bytesWritten, allocated, error));
+        }
+    }
+
+    /**
+     * Regresa la memoria asignada hasta ahora por el hilo actual.
+     *
+     * @return El número de bytes o -1 si la JVM no permite medirlos.
+     */
+    private static long allocatedBytes() {
+        return ALLOCATION_BEAN != null
+                ? ALLOCATION_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    /**
+     * Obtiene la interfaz de la JVM que mide la memoria asignada por hilo.
+     *
+     * @return La interfaz o null si la JVM no la incluye o la tiene
+     * deshabilitada.
+     */
+    private static com.sun.management.ThreadMXBean getAllocationBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+
+                if (allocationBean.isThreadAllocatedMemorySupported()
+                        && allocationBean.isThreadAllocatedMemoryEnabled()) {
+                    return allocationBean;
+                }
+            }
+        } catch (LinkageError | SecurityException ex) {
+            //La JVM no incluye la extensión de Oracle.
+        }
+
+        return null;
+    }
+
+    /**
+     * Indica si la JVM incluye Flight Recorder.
+     *
+     * @return true si los eventos de Flight Recorder pueden emitirse.
+     */
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package edu.hop.diploma.builder;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Escribe un documento PDF página por página, de modo que cada página puede
+ * descartarse en cuanto se escribe y la memoria usada no crece con el número
+ * de páginas.
+ *
+ * <p>Los objetos de cada página se escriben al terminarla y se olvidan, con
+ * excepción de los que comparten las páginas: los XObject, como las firmas y
+ * la capa invariante, se escriben la primera vez que se usan y conservan su
+ * número, y las fuentes se escriben al final, después de incrustar sus
+ * subconjuntos. El árbol de páginas, el catálogo, la tabla de referencias
+ * cruzadas y el trailer se escriben al terminar el documento.</p>
+ *
+ * <p>Al igual que PDFBox, los diccionarios se escriben como objetos
+ * indirectos salvo que estén marcados como directos.</p>
+ *
+ * @author jjsanche
+ */
+final class StreamingPdfWriter {
+    private static final byte[] HEADER = {'%', 'P', 'D', 'F', '-', '1', '.', '4', '\n',
+        '%', (byte) 0xF6, (byte) 0xE4, (byte) 0xFC, (byte) 0xDF, '\n'};
+    private static final int CATALOG_NUMBER = 1;
+    private static final int PAGES_NUMBER = 2;
+
+    private final PositionOutputStream output;
+    private final COSDictionary pages = new COSDictionary();
+    private final Map<COSBase, Integer> sharedNumbers = new IdentityHashMap<>();
+    private final Map<COSBase, Integer> pageNumbers = new IdentityHashMap<>();
+    private final ArrayDeque<COSBase> pending = new ArrayDeque<>();
+    private final List<COSBase> fonts = new ArrayList<>();
+    private long[] offsets = new long[1024];
+    private int[] kids = new int[256];
+    private int pageCount;
+    private int nextNumber = PAGES_NUMBER + 1;
+
+    /**
+     * Crea un escritor y escribe el encabezado del documento. El flujo no se
+     * cierra al terminar.
+     *
+     * @param output El flujo donde se escribirá el documento.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    StreamingPdfWriter(OutputStream output) throws IOException {
+        this.output = new PositionOutputStream(new BufferedOutputStream(output, 64 * 1024));
+        pages.setItem(COSName.TYPE, COSName.PAGES);
+        sharedNumbers.put(pages, PAGES_NUMBER);
+        this.output.write(HEADER);
+    }
+
+    /**
+     * Escribe una página terminada junto con sus objetos. Después de esto la
+     * página ya no debe modificarse.
+     *
+     * @param page La página a escribir.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    void writePage(PDPage page) throws IOException {
+        COSDictionary dictionary = page.getCOSDictionary();
+        dictionary.setItem(COSName.PARENT, pages);
+
+        if (pageCount == kids.length) {
+            kids = Arrays.copyOf(kids, kids.length * 2);
+        }
+
+        kids[pageCount++] = numberOf(dictionary);
+        writePending();
+    }
+
+    /**
+     * Escribe las fuentes, el árbol de páginas, el catálogo, la tabla de
+     * referencias cruzadas y el trailer, y vacía el flujo.
+     *
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    void finish() throws IOException {
+        //Las fuentes descendientes de otra fuente se agregan a la lista
+        //mientras se escribe la fuente que las contiene.
+        for (int i = 0; i < fonts.size(); i++) {
+            pending.add(fonts.get(i));
+            writePending();
+        }
+
+        beginObject(PAGES_NUMBER);
+        write("<<\n/Type /Pages\n/Kids [");
+
+        for (int i = 0; i < pageCount; i++) {
+            write(i == 0 ? "" : " ");
+            writeReference(kids[i]);
+        }
+
+        write("]\n/Count " + pageCount + "\n>>");
+        endObject();
+
+        beginObject(CATALOG_NUMBER);
+        write("<<\n/Type /Catalog\n/Pages ");
+        writeReference(PAGES_NUMBER);
+        write("\n>>");
+        endObject();
+
+        long xref = output.position;
+        write("xref\n0 " + nextNumber + "\n0000000000 65535 f\r\n");
+
+        for (int number = 1; number < nextNumber; number++) {
+            write(String.format("%010d 00000 n\r\n", offsets[number]));
+        }
+
+        write("trailer\n<<\n/Size " + nextNumber + "\n/Root ");
+        writeReference(CATALOG_NUMBER);
+        write("\n>>\nstartxref\n" + xref + "\n%%EOF\n");
+        output.flush();
+    }
+
+    /**
+     * @return El número de páginas escritas.
+     */
+    int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Escribe los objetos pendientes y olvida los números de los objetos que
+     * no se comparten entre páginas.
+     *
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void writePending() throws IOException {
+        COSBase object;
+
+        while ((object = pending.poll()) != null) {
+            writeObject(object);
+        }
+
+        pageNumbers.clear();
+    }
+
+    /**
+     * Regresa el número de un objeto indirecto, asignándole uno la primera
+     * vez que se solicita. Los objetos con número nuevo se agregan a los
+     * pendientes, salvo las fuentes, que se escriben al terminar.
+     *
+     * @param object El objeto.
+     * @return El número del objeto.
+     */
+    private int numberOf(COSBase object) {
+        Integer number = sharedNumbers.get(object);
+
+        if (number == null) {
+            number = pageNumbers.get(object);
+        }
+
+        if (number == null) {
+            number = nextNumber++;
+            COSBase type = object instanceof COSDictionary
+                    ? ((COSDictionary) object).getDictionaryObject(COSName.TYPE) : null;
+
+            if (COSName.FONT.equals(type)) {
+                sharedNumbers.put(object, number);
+                fonts.add(object);
+            } else {
+                (COSName.XOBJECT.equals(type) ? sharedNumbers : pageNumbers).put(object, number);
+                pending.add(object);
+            }
+        }
+
+        return number;
+    }
+
+    /**
+     * Escribe un objeto indirecto. La longitud de los flujos se escribe en
+     * un objeto aparte, ya que sólo se conoce al terminar de copiarlos.
+     *
+     * @param object El objeto a escribir.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void writeObject(COSBase object) throws IOException {
+        beginObject(numberOf(object));
+
+        if (object instanceof COSStream) {
+            COSStream stream = (COSStream) object;
+            int lengthNumber = nextNumber++;
+            writeDictionary(stream, lengthNumber);
+            write("\nstream\r\n");
+            long start = output.position;
+
+            try (InputStream data = stream.getFilteredStream()) {
+                byte[] buffer = new byte[8192];
+                int read;
+
+                while ((read = data.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+            }
+
+            long length = output.position - start;
+            write("\r\nendstream");
+            endObject();
+            beginObject(lengthNumber);
+            write(Long.toString(length));
+        } else if (object instanceof COSDictionary) {
+            writeDictionary((COSDictionary) object, 0);
+        } else {
+            writeValue(object);
+        }
+
+        endObject();
+    }
+
+    /**
+     * Escribe un diccionario.
+     *
+     * @param dictionary El diccionario a escribir.
+     * @param lengthNumber El número del objeto con la longitud del flujo o 0
+     * si el diccionario no es un flujo.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void writeDictionary(COSDictionary dictionary, int lengthNumber) throws IOException {
+        write("<<\n");
+
+        for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet()) {
+            if (lengthNumber != 0 && COSName.LENGTH.equals(entry.getKey())) {
+                continue;
+            }
+
+            entry.getKey().writePDF(output);
+            write(" ");
+            writeValue(entry.getValue());
+            write("\n");
+        }
+
+        if (lengthNumber != 0) {
+            write("/Length ");
+            writeReference(lengthNumber);
+            write("\n");
+        }
+
+        write(">>");
+    }
+
+    /**
+     * Escribe un valor dentro de un diccionario o de un arreglo, como
+     * referencia si se trata de un objeto indirecto.
+     *
+     * @param value El valor a escribir.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void writeValue(COSBase value) throws IOException {
+        if (value instanceof COSObject) {
+            value = ((COSObject) value).getObject();
+        }
+
+        if (value == null) {
+            write("null");
+        } else if (value instanceof COSDictionary && (value instanceof COSStream || !value.isDirect())) {
+            writeReference(numberOf(value));
+        } else if (value instanceof COSDictionary) {
+            writeDictionary((COSDictionary) value, 0);
+        } else if (value instanceof COSArray) {
+            COSArray array = (COSArray) value;
+            write("[");
+
+            for (int i = 0; i < array.size(); i++) {
+                write(i == 0 ? "" : " ");
+                writeValue(array.get(i));
+            }
+
+            write("]");
+        } else if (value instanceof COSName) {
+            ((COSName) value).writePDF(output);
+        } else if (value instanceof COSInteger) {
+            ((COSInteger) value).writePDF(output);
+        } else if (value instanceof COSFloat) {
+            ((COSFloat) value).writePDF(output);
+        } else if (value instanceof COSString) {
+            ((COSString) value).writePDF(output);
+        } else if (value instanceof COSBoolean) {
+            ((COSBoolean) value).writePDF(output);
+        } else {
+            write("null");
+        }
+    }
+
+    /**
+     * Registra la posición de un objeto y escribe su inicio.
+     *
+     * @param number El número del objeto.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void beginObject(int number) throws IOException {
+        if (number >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, number + 1));
+        }
+
+        offsets[number] = output.position;
+        write(number + " 0 obj\n");
+    }
+
+    /**
+     * Escribe el final de un objeto.
+     *
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void endObject() throws IOException {
+        write("\nendobj\n");
+    }
+
+    /**
+     * Escribe una referencia a un objeto indirecto.
+     *
+     * @param number El número del objeto.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void writeReference(int number) throws IOException {
+        write(number + " 0 R");
+    }
+
+    /**
+     * Escribe texto ASCII.
+     *
+     * @param text El texto a escribir.
+     * @throws IOException En caso de error al escribir en el flujo.
+     */
+    private void write(String text) throws IOException {
+        output.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Flujo que lleva la cuenta de la posición en el documento.
+     */
+    private static class PositionOutputStream extends FilterOutputStream {
+        public long position;
+
+        /**
+         * Crea un flujo que escribe en el flujo indicado.
+         *
+         * @param output El flujo donde se escribirán los bytes.
+         */
+        public PositionOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            position += length;
+        }
+    }
+}
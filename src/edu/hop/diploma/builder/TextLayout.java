@@ -0,0 +1,47 @@
+package edu.hop.diploma.builder;
+
+/**
+ * Clase que contiene las dimensiones y posiciones calculadas para los textos
+ * de un diploma, así como el orden en que deben dibujarse.
+ *
+ * @author jjsanche
+ */
+final class TextLayout {
+
+    final float[] widths;
+    final float[] heights;
+    final float[] fontSizes;
+    final float[] xs;
+    final float[] ys;
+    final int[] order;
+    int count;
+
+    /**
+     * Crea un acomodo vacío para el número de textos indicado.
+     *
+     * @param size El número de textos del diploma.
+     */
+    TextLayout(int size) {
+        widths = new float[size];
+        heights = new float[size];
+        fontSizes = new float[size];
+        xs = new float[size];
+        ys = new float[size];
+        order = new int[size];
+    }
+
+    /**
+     * Agrega un texto al final del orden de dibujo con la posición indicada.
+     * Al igual que los puntos del diploma, las coordenadas negativas se
+     * cambian por 0.
+     *
+     * @param index El índice del texto.
+     * @param x La coordenada x donde inicia el texto.
+     * @param y La coordenada y donde inicia el texto.
+     */
+    void place(int index, float x, float y) {
+        xs[index] = x >= 0 ? x : 0;
+        ys[index] = y >= 0 ? y : 0;
+        order[count++] = index;
+    }
+}
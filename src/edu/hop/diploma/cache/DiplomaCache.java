@@ -0,0 +1,490 @@
+package edu.hop.diploma.cache;
+
+import edu.hop.diploma.builder.Diploma;
+import edu.hop.diploma.builder.DiplomaBuilder;
+import edu.hop.diploma.builder.DiplomaFingerprint;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caché de diplomas ya construidos, identificados por la huella de su
+ * contenido. Tiene dos niveles: uno en memoria y otro opcional en disco, cada
+ * uno limitado por el total de bytes que guarda. Al llenarse un nivel se
+ * eliminan los diplomas usados hace más tiempo.
+ *
+ * <p>Los diplomas que salen de la memoria permanecen en disco, y los que se
+ * leen de disco regresan a la memoria. Esta clase es segura para usarse desde
+ * varios hilos; si varios hilos piden al mismo tiempo un diploma que no está
+ * en el caché, éste se construye una sola vez.</p>
+ *
+ * @author jjsanche
+ * @see DiplomaFingerprint
+ */
+public class DiplomaCache {
+    private static final String EXTENSION = ".pdf";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final Logger LOGGER = Logger.getLogger(DiplomaCache.class.getName());
+
+    private final long maxMemoryBytes;
+    private final Path directory;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(64, 0.75f, true);
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private long memoryBytes;
+    private long diskBytes;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder memoryEvictions = new LongAdder();
+    private final LongAdder diskEvictions = new LongAdder();
+
+    /**
+     * Crea un caché sólo en memoria.
+     *
+     * @param maxMemoryBytes El total de bytes que puede guardar la memoria.
+     */
+    public DiplomaCache(long maxMemoryBytes) {
+        this.maxMemoryBytes = checkLimit(maxMemoryBytes, "maxMemoryBytes");
+        this.directory = null;
+        this.maxDiskBytes = 0;
+    }
+
+    /**
+     * Crea un caché en memoria y en disco. Los diplomas que ya existan en el
+     * directorio de una ejecución anterior se incorporan al caché.
+     *
+     * @param maxMemoryBytes El total de bytes que puede guardar la memoria.
+     * @param directory El directorio donde se guardarán los diplomas. No
+     * debe contener otros archivos PDF. Los archivos temporales que haya
+     * dejado una ejecución interrumpida se borran.
+     * @param maxDiskBytes El total de bytes que puede guardar el disco.
+     * @throws IOException En caso de no poder crear o leer el directorio.
+     */
+    public DiplomaCache(long maxMemoryBytes, Path directory, long maxDiskBytes) throws IOException {
+        this.maxMemoryBytes = checkLimit(maxMemoryBytes, "maxMemoryBytes");
+        this.directory = directory;
+        this.maxDiskBytes = checkLimit(maxDiskBytes, "maxDiskBytes");
+        Files.createDirectories(directory);
+        loadDiskIndex();
+    }
+
+    /**
+     * Regresa el diploma guardado con la huella indicada.
+     *
+     * @param fingerprint La huella del diploma.
+     * @return Los bytes del PDF o null si el diploma no está en el caché. No
+     * deben modificarse ya que se comparten con otros hilos.
+     * @throws IOException En caso de error al leer el diploma del disco.
+     */
+    public byte[] get(String fingerprint) throws IOException {
+        byte[] pdf;
+
+        synchronized (memory) {
+            pdf = memory.get(fingerprint);
+        }
+
+        if (pdf != null) {
+            memoryHits.increment();
+            return pdf;
+        }
+
+        pdf = readFromDisk(fingerprint);
+
+        if (pdf != null) {
+            diskHits.increment();
+            putInMemory(fingerprint, pdf);
+            return pdf;
+        }
+
+        misses.increment();
+
+        return null;
+    }
+
+    /**
+     * Guarda un diploma en ambos niveles del caché.
+     *
+     * @param fingerprint La huella del diploma.
+     * @param pdf Los bytes del PDF. No deben modificarse después.
+     * @throws IOException En caso de error al escribir el diploma en disco.
+     */
+    public void put(String fingerprint, byte[] pdf) throws IOException {
+        putInMemory(fingerprint, pdf);
+        writeToDisk(fingerprint, pdf);
+    }
+
+    /**
+     * Regresa el diploma del caché o lo construye y lo guarda en caso de no
+     * encontrarse. Guardar en el caché es opcional: un error al leer o
+     * escribir el disco se registra y el diploma se construye o se regresa
+     * de cualquier forma.
+     *
+     * @param diploma El diploma.
+     * @param builder El constructor a usar si el diploma no está en el
+     * caché. Su configuración forma parte de la huella, por lo que los
+     * constructores que generan distinto PDF no comparten diplomas.
+     * @return Los bytes del PDF. No deben modificarse ya que se comparten con
+     * otros hilos.
+     * @throws IOException En caso de error al construir el diploma.
+     */
+    public byte[] getOrBuild(Diploma diploma, DiplomaBuilder builder) throws IOException {
+        String fingerprint = DiplomaFingerprint.of(diploma, builder);
+        byte[] pdf;
+
+        try {
+            pdf = get(fingerprint);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Error al leer el diploma " + fingerprint + " del caché", ex);
+            pdf = null;
+        }
+
+        if (pdf != null) {
+            return pdf;
+        }
+
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(fingerprint, future);
+
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            pdf = builder.buildBytes(diploma);
+
+            try {
+                put(fingerprint, pdf);
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Error al guardar el diploma " + fingerprint + " en el caché", ex);
+            }
+
+            future.complete(pdf);
+        } catch (IOException | RuntimeException | Error ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(fingerprint, future);
+        }
+
+        return pdf;
+    }
+
+    /**
+     * Elimina todos los diplomas del caché, incluyendo sus archivos.
+     *
+     * @throws IOException En caso de no poder borrar algún archivo.
+     */
+    public void clear() throws IOException {
+        synchronized (memory) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+
+        synchronized (disk) {
+            Iterator<String> fingerprints = disk.keySet().iterator();
+
+            while (fingerprints.hasNext()) {
+                Files.deleteIfExists(fileOf(fingerprints.next()));
+                fingerprints.remove();
+            }
+
+            diskBytes = 0;
+        }
+    }
+
+    /**
+     * @return El número de diplomas encontrados en memoria.
+     */
+    public long getMemoryHitCount() {
+        return memoryHits.sum();
+    }
+
+    /**
+     * @return El número de diplomas encontrados en disco.
+     */
+    public long getDiskHitCount() {
+        return diskHits.sum();
+    }
+
+    /**
+     * @return El número de búsquedas que no encontraron el diploma.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Regresa la proporción de búsquedas que encontraron el diploma en
+     * cualquiera de los dos niveles.
+     *
+     * @return Un número entre 0 y 1 o 0 si no ha habido búsquedas.
+     */
+    public double getHitRatio() {
+        long hits = memoryHits.sum() + diskHits.sum();
+        long total = hits + misses.sum();
+
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return El número de diplomas eliminados de la memoria por falta de
+     * espacio.
+     */
+    public long getMemoryEvictionCount() {
+        return memoryEvictions.sum();
+    }
+
+    /**
+     * @return El número de diplomas eliminados del disco por falta de espacio.
+     */
+    public long getDiskEvictionCount() {
+        return diskEvictions.sum();
+    }
+
+    /**
+     * @return El total de bytes guardados en memoria.
+     */
+    public long getMemoryBytes() {
+        synchronized (memory) {
+            return memoryBytes;
+        }
+    }
+
+    /**
+     * @return El total de bytes guardados en disco.
+     */
+    public long getDiskBytes() {
+        synchronized (disk) {
+            return diskBytes;
+        }
+    }
+
+    /**
+     * Guarda un diploma en memoria, eliminando los usados hace más tiempo
+     * hasta que quepa. Los diplomas más grandes que la memoria completa no se
+     * guardan.
+     *
+     * @param fingerprint La huella del diploma.
+     * @param pdf Los bytes del PDF.
+     */
+    private void putInMemory(String fingerprint, byte[] pdf) {
+        if (pdf.length > maxMemoryBytes) {
+            return;
+        }
+
+        synchronized (memory) {
+            byte[] previous = memory.put(fingerprint, pdf);
+            memoryBytes += pdf.length - (previous != null ? previous.length : 0);
+            Iterator<byte[]> eldest = memory.values().iterator();
+
+            while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+                memoryBytes -= eldest.next().length;
+                eldest.remove();
+                memoryEvictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Lee un diploma del disco.
+     *
+     * @param fingerprint La huella del diploma.
+     * @return Los bytes del PDF o null si no está en disco.
+     * @throws IOException En caso de error al leer el archivo.
+     */
+    private byte[] readFromDisk(String fingerprint) throws IOException {
+        if (directory == null) {
+            return null;
+        }
+
+        synchronized (disk) {
+            if (disk.get(fingerprint) == null) {
+                return null;
+            }
+        }
+
+        try {
+            return Files.readAllBytes(fileOf(fingerprint));
+        } catch (NoSuchFileException ex) {
+            //El archivo se eliminó por fuera del caché; el registro se
+            //descarta para que el diploma pueda guardarse de nuevo.
+            synchronized (disk) {
+                if (!Files.exists(fileOf(fingerprint))) {
+                    Long size = disk.remove(fingerprint);
+                    diskBytes -= size != null ? size : 0;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Escribe un diploma en disco, eliminando los usados hace más tiempo
+     * hasta que quepa. El archivo se escribe con otro nombre y después se
+     * renombra para que nunca se lea un archivo incompleto. Sólo el
+     * renombrado y el borrado de los diplomas desplazados ocurren dentro del
+     * candado del índice.
+     *
+     * @param fingerprint La huella del diploma.
+     * @param pdf Los bytes del PDF.
+     * @throws IOException En caso de error al escribir el archivo.
+     */
+    private void writeToDisk(String fingerprint, byte[] pdf) throws IOException {
+        if (directory == null || pdf.length > maxDiskBytes) {
+            return;
+        }
+
+        synchronized (disk) {
+            if (disk.containsKey(fingerprint)) {
+                return;
+            }
+        }
+
+        Path file = fileOf(fingerprint);
+        Path temporary = Files.createTempFile(directory, fingerprint, TEMPORARY_EXTENSION);
+
+        try {
+            Files.write(temporary, pdf);
+
+            //El archivo se renombra y los diplomas desplazados se borran
+            //junto con los cambios al índice, de modo que un diploma que se
+            //vuelve a guardar mientras otro hilo hace espacio no pierda su
+            //archivo.
+            synchronized (disk) {
+                try {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                Long previous = disk.put(fingerprint, (long) pdf.length);
+                diskBytes += pdf.length - (previous != null ? previous : 0);
+                Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+
+                while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+                    Map.Entry<String, Long> entry = eldest.next();
+                    Files.deleteIfExists(fileOf(entry.getKey()));
+                    diskBytes -= entry.getValue();
+                    eldest.remove();
+                    diskEvictions.increment();
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Incorpora al índice los diplomas que ya existen en el directorio, del
+     * más antiguo al más reciente, y elimina los que excedan el límite, así
+     * como los archivos temporales de escrituras que no terminaron.
+     *
+     * @throws IOException En caso de no poder leer el directorio.
+     */
+    private void loadDiskIndex() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TEMPORARY_EXTENSION)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : stream) {
+                attributes.put(file, Files.readAttributes(file, BasicFileAttributes.class));
+                files.add(file);
+            }
+        }
+
+        files.sort((a, b) -> attributes.get(a).lastModifiedTime().compareTo(attributes.get(b).lastModifiedTime()));
+
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            disk.put(name.substring(0, name.length() - EXTENSION.length()), attributes.get(file).size());
+            diskBytes += attributes.get(file).size();
+        }
+
+        Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+
+        while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            diskBytes -= entry.getValue();
+            Files.deleteIfExists(fileOf(entry.getKey()));
+            eldest.remove();
+            diskEvictions.increment();
+        }
+    }
+
+    /**
+     * Espera el resultado de la construcción de otro hilo.
+     *
+     * @param future La construcción en curso.
+     * @return Los bytes del PDF.
+     * @throws IOException En caso de que la construcción haya fallado o de que
+     * el hilo sea interrumpido.
+     */
+    private static byte[] await(CompletableFuture<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the diploma", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+
+            throw new IOException("Error al construir el diploma", ex.getCause());
+        }
+    }
+
+    /**
+     * Regresa la ruta del archivo de un diploma.
+     *
+     * @param fingerprint La huella del diploma.
+     * @return La ruta del archivo.
+     */
+    private Path fileOf(String fingerprint) {
+        return directory.resolve(fingerprint + EXTENSION);
+    }
+
+    /**
+     * Verifica que un límite sea positivo.
+     *
+     * @param limit El límite.
+     * @param name El nombre del parámetro.
+     * @return El límite.
+     */
+    private static long checkLimit(long limit, String name) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException(name + " must be greater than 0.");
+        }
+
+        return limit;
+    }
+}
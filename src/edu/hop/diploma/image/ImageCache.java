@@ -0,0 +1,414 @@
+package edu.hop.diploma.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.imageio.ImageIO;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDJpeg;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+
+/**
+ * Caché de imágenes usadas en los diplomas, como la firma del instructor.
+ * Acepta archivos JPEG y PNG, incluso con transparencia.
+ *
+ * <p>Cada archivo se lee una sola vez y se guardan sus bytes junto con las
+ * dimensiones de la imagen. Además, para cada tamaño con el que se dibuja la
+ * imagen se guarda una versión preparada: reducida a la resolución indicada
+ * en el constructor y ya codificada, de manera que crear la imagen para un
+ * nuevo documento no requiere leer, decodificar ni comprimir la imagen
+ * nuevamente. Las entradas se invalidan cuando cambia la fecha de
+ * modificación o el tamaño del archivo.</p>
+ *
+ * <p>Esta clase es segura para usarse desde varios hilos.</p>
+ *
+ * @author jjsanche
+ */
+public final class ImageCache {
+    /**
+     * Resolución con la que se preparan las imágenes si no se indica otra,
+     * suficiente para imprimir una firma sin pérdida visible.
+     */
+    public static final float DEFAULT_TARGET_DPI = 300;
+
+    private static final ImageCache SHARED_CACHE = new ImageCache();
+
+    private final ConcurrentMap<Path, CachedImage> images = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final float targetDpi;
+    private final boolean flattenAlpha;
+
+    /**
+     * Crea un caché que prepara las imágenes a {@link #DEFAULT_TARGET_DPI} y
+     * conserva su transparencia.
+     */
+    public ImageCache() {
+        this(DEFAULT_TARGET_DPI, false);
+    }
+
+    /**
+     * Crea un caché que prepara las imágenes con la resolución indicada.
+     *
+     * @param targetDpi Los pixeles por pulgada con los que se guardan las
+     * imágenes según el tamaño con el que se dibujan, o 0 para conservar
+     * siempre la resolución original. Las imágenes nunca se amplían.
+     * @param flattenAlpha true para mezclar la transparencia de las imágenes
+     * PNG con un fondo blanco, false para conservarla como una máscara.
+     */
+    public ImageCache(float targetDpi, boolean flattenAlpha) {
+        if (targetDpi < 0 || Float.isNaN(targetDpi)) {
+            throw new IllegalArgumentException("targetDpi must not be negative.");
+        }
+
+        this.targetDpi = targetDpi;
+        this.flattenAlpha = flattenAlpha;
+    }
+
+    /**
+     * Regresa el caché compartido por todo el proceso.
+     *
+     * @return La instancia de ImageCache compartida.
+     */
+    public static ImageCache getSharedCache() {
+        return SHARED_CACHE;
+    }
+
+    /**
+     * Regresa la imagen guardada para el archivo indicado, leyéndola del disco
+     * si no se encuentra en el caché o si el archivo cambió.
+     *
+     * @param fileName La ruta del archivo JPEG o PNG.
+     * @return La imagen guardada en el caché.
+     * @throws IOException En caso de no poder leer el archivo o de que éste
+     * no sea una imagen JPEG o PNG válida.
+     */
+    public CachedImage getImage(String fileName) throws IOException {
+        Path path = Paths.get(fileName).toAbsolutePath();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        CachedImage image = images.get(path);
+
+        if (image != null && image.lastModified == lastModified && image.size == size) {
+            hits.increment();
+            return image;
+        }
+
+        misses.increment();
+        image = new CachedImage(path, Files.readAllBytes(path), lastModified, size, targetDpi, flattenAlpha);
+        images.put(path, image);
+
+        return image;
+    }
+
+    /**
+     * Crea una imagen para el documento a partir del archivo indicado, con su
+     * resolución original.
+     *
+     * @param document El documento al cuál pertenecerá la imagen.
+     * @param fileName La ruta del archivo JPEG.
+     * @return La imagen lista para dibujarse en el documento.
+     * @throws IOException En caso de no poder leer el archivo.
+     */
+    public PDJpeg createJpeg(PDDocument document, String fileName) throws IOException {
+        return getImage(fileName).createJpeg(document);
+    }
+
+    /**
+     * Crea una imagen para el documento a partir del archivo indicado,
+     * preparada para dibujarse a la escala indicada.
+     *
+     * @param document El documento al cuál pertenecerá la imagen.
+     * @param fileName La ruta del archivo JPEG o PNG.
+     * @param pointsPerPixel Los puntos que ocupará cada pixel de la imagen
+     * original al dibujarla.
+     * @return La imagen lista para dibujarse en el documento.
+     * @throws IOException En caso de no poder leer el archivo.
+     */
+    public PDXObjectImage createImage(PDDocument document, String fileName, float pointsPerPixel)
+            throws IOException {
+        return getImage(fileName).prepare(pointsPerPixel).createImage(document);
+    }
+
+    /**
+     * Regresa la resolución con la que se preparan las imágenes.
+     *
+     * @return Los pixeles por pulgada o 0 si se conserva la resolución
+     * original.
+     */
+    public float getTargetDpi() {
+        return targetDpi;
+    }
+
+    /**
+     * true si la transparencia de las imágenes se mezcla con un fondo blanco.
+     *
+     * @return true si se mezcla la transparencia, false si se conserva como
+     * una máscara.
+     */
+    public boolean isFlattenAlpha() {
+        return flattenAlpha;
+    }
+
+    /**
+     * Elimina todas las imágenes del caché.
+     */
+    public void clear() {
+        images.clear();
+    }
+
+    /**
+     * Regresa el número de veces que una imagen se encontró en el caché.
+     *
+     * @return El número de aciertos del caché.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Regresa el número de veces que una imagen tuvo que leerse del disco.
+     *
+     * @return El número de fallos del caché.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Clase que contiene los bytes y dimensiones de una imagen JPEG o PNG
+     * leída del disco, junto con sus versiones preparadas para cada escala.
+     * Sus valores no cambian una vez creada.
+     */
+    public static final class CachedImage {
+        private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+        private final byte[] data;
+        private final long lastModified;
+        private final long size;
+        private final float targetDpi;
+        private final boolean flattenAlpha;
+        private final boolean png;
+        private final int width;
+        private final int height;
+        private final int components;
+        private final ConcurrentMap<Float, PreparedImage> prepared = new ConcurrentHashMap<>();
+
+        /**
+         * Crea una imagen a partir de los bytes de un archivo JPEG o PNG.
+         *
+         * @param file La ruta del archivo, para los mensajes de error.
+         * @param data Los bytes del archivo.
+         * @param lastModified La fecha de modificación del archivo.
+         * @param size El tamaño del archivo.
+         * @param targetDpi La resolución con la que se preparará la imagen.
+         * @param flattenAlpha true para mezclar la transparencia con blanco.
+         * @throws IOException En caso de que el archivo no sea una imagen
+         * JPEG o PNG o de que su encabezado esté incompleto.
+         */
+        private CachedImage(Path file, byte[] data, long lastModified, long size, float targetDpi,
+                boolean flattenAlpha) throws IOException {
+            this.data = data;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.targetDpi = targetDpi;
+            this.flattenAlpha = flattenAlpha;
+            this.png = isPng(data);
+
+            if (png) {
+                //El encabezado IHDR siempre es el primer bloque del archivo.
+                if (data.length < 24) {
+                    throw new IOException("The PNG image has no header: " + file);
+                }
+
+                width = readInt(data, 16);
+                height = readInt(data, 20);
+                components = 0;
+            } else {
+                int[] header = readFrameHeader(file, data);
+                height = header[0];
+                width = header[1];
+                components = header[2];
+            }
+        }
+
+        /**
+         * Regresa la versión de la imagen preparada para dibujarse a la
+         * escala indicada, creándola la primera vez que se solicita. Los
+         * archivos JPEG que no necesitan reducirse se usan sin decodificar.
+         *
+         * @param pointsPerPixel Los puntos que ocupará cada pixel de la
+         * imagen original al dibujarla.
+         * @return La imagen preparada.
+         * @throws IOException En caso de no poder decodificar la imagen.
+         */
+        public PreparedImage prepare(float pointsPerPixel) throws IOException {
+            Float key = pointsPerPixel;
+            PreparedImage image = prepared.get(key);
+
+            if (image == null) {
+                image = createPrepared(pointsPerPixel);
+                PreparedImage previous = prepared.putIfAbsent(key, image);
+
+                if (previous != null) {
+                    image = previous;
+                }
+            }
+
+            return image;
+        }
+
+        /**
+         * Crea la versión preparada de la imagen.
+         *
+         * @param pointsPerPixel Los puntos que ocupará cada pixel al dibujarla.
+         * @return La imagen preparada.
+         * @throws IOException En caso de no poder decodificar la imagen.
+         */
+        private PreparedImage createPrepared(float pointsPerPixel) throws IOException {
+            float scale = targetDpi > 0 ? Math.min(1, pointsPerPixel * targetDpi / 72) : 1;
+            int targetWidth = Math.max(1, Math.round(width * scale));
+            int targetHeight = Math.max(1, Math.round(height * scale));
+
+            if (!png && targetWidth == width && targetHeight == height) {
+                return PreparedImage.ofJpeg(data, width, height, components);
+            }
+
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+
+            if (image == null) {
+                throw new IOException("The image could not be decoded.");
+            }
+
+            return PreparedImage.of(image, targetWidth, targetHeight, !png, flattenAlpha);
+        }
+
+        /**
+         * Crea una imagen JPEG para el documento recibido reutilizando los
+         * bytes guardados, sin decodificar ni reducir la imagen.
+         *
+         * @param document El documento al cuál pertenecerá la imagen.
+         * @return La imagen lista para dibujarse en el documento.
+         * @throws IOException En caso de error al copiar los bytes al
+         * documento o de que la imagen sea PNG.
+         */
+        public PDJpeg createJpeg(PDDocument document) throws IOException {
+            if (png) {
+                throw new IOException("The image is not a JPEG image.");
+            }
+
+            return (PDJpeg) PreparedImage.ofJpeg(data, width, height, components).createImage(document);
+        }
+
+        /**
+         * @return true si el archivo es una imagen PNG.
+         */
+        public boolean isPng() {
+            return png;
+        }
+
+        /**
+         * Regresa el ancho de la imagen original. El tamaño con el que se
+         * dibuja la imagen se calcula a partir de éste, aunque la versión
+         * preparada tenga menos pixeles.
+         *
+         * @return El ancho de la imagen en pixeles.
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Regresa la altura de la imagen.
+         *
+         * @return La altura de la imagen en pixeles.
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @param data Los bytes de un archivo.
+         * @return true si los bytes inician con la firma de PNG.
+         */
+        private static boolean isPng(byte[] data) {
+            if (data.length < PNG_SIGNATURE.length) {
+                return false;
+            }
+
+            for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+                if (data[i] != PNG_SIGNATURE[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Lee un entero de 32 bits en orden de red.
+         *
+         * @param data Los bytes.
+         * @param position La posición del entero.
+         * @return El entero.
+         */
+        private static int readInt(byte[] data, int position) {
+            return ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16)
+                    | ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+        }
+
+        /**
+         * Lee el encabezado de cuadro (SOF) del archivo JPEG.
+         *
+         * @param file La ruta del archivo, para los mensajes de error.
+         * @param data Los bytes del archivo JPEG.
+         * @return Un arreglo con la altura, ancho y número de componentes.
+         * @throws IOException En caso de que los bytes no correspondan a una
+         * imagen JPEG o de que no tengan un encabezado de cuadro completo.
+         */
+        private static int[] readFrameHeader(Path file, byte[] data) throws IOException {
+            int position = 2;
+
+            if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+                throw new IOException("The file is not a JPEG or PNG image: " + file);
+            }
+
+            while (position + 9 < data.length) {
+                if ((data[position] & 0xFF) != 0xFF) {
+                    position++;
+                    continue;
+                }
+
+                int marker = data[position + 1] & 0xFF;
+
+                if (marker == 0xFF || marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                    position += marker == 0xFF ? 1 : 2;
+                    continue;
+                }
+
+                int length = ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+
+                if (marker >= 0xC0 && marker <= 0xCF
+                        && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                    int height = ((data[position + 5] & 0xFF) << 8) | (data[position + 6] & 0xFF);
+                    int width = ((data[position + 7] & 0xFF) << 8) | (data[position + 8] & 0xFF);
+                    int components = data[position + 9] & 0xFF;
+
+                    return new int[]{height, width, components};
+                }
+
+                position += 2 + length;
+            }
+
+            throw new IOException("The JPEG image has no frame header: " + file);
+        }
+    }
+}
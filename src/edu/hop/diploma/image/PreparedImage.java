@@ -0,0 +1,367 @@
+package edu.hop.diploma.image;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDJpeg;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDPixelMap;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
+
+/**
+ * Imagen ya codificada con los filtros de PDF y con la resolución con la
+ * que se dibujará, lista para copiarse a cualquier documento sin volver a
+ * decodificarla ni comprimirla.
+ *
+ * <p>Los pixeles se guardan comprimidos con DCT (JPEG) o Flate, en escala de
+ * grises cuando la imagen no tiene color, y la transparencia se guarda como
+ * una máscara suave (SMask) en escala de grises. La imagen no cambia una vez
+ * creada y puede usarse desde varios hilos.</p>
+ *
+ * @author jjsanche
+ */
+public final class PreparedImage {
+    private static final float JPEG_QUALITY = 0.9f;
+
+    private final COSName filter;
+    private final byte[] data;
+    private final byte[] softMask;
+    private final int width;
+    private final int height;
+    private final int components;
+
+    /**
+     * Crea una imagen a partir de bytes ya codificados.
+     *
+     * @param filter El filtro con el que están codificados los pixeles.
+     * @param data Los pixeles codificados.
+     * @param softMask La transparencia comprimida con Flate o null si la
+     * imagen es opaca.
+     * @param width El ancho en pixeles.
+     * @param height La altura en pixeles.
+     * @param components 1 para escala de grises o 3 para RGB.
+     */
+    private PreparedImage(COSName filter, byte[] data, byte[] softMask, int width, int height, int components) {
+        this.filter = filter;
+        this.data = data;
+        this.softMask = softMask;
+        this.width = width;
+        this.height = height;
+        this.components = components;
+    }
+
+    /**
+     * Usa los bytes de un archivo JPEG sin decodificarlo.
+     *
+     * @param jpeg Los bytes del archivo JPEG.
+     * @param width El ancho en pixeles.
+     * @param height La altura en pixeles.
+     * @param components El número de componentes de color del JPEG.
+     * @return La imagen preparada.
+     */
+    static PreparedImage ofJpeg(byte[] jpeg, int width, int height, int components) {
+        return new PreparedImage(COSName.DCT_DECODE, jpeg, null, width, height, components);
+    }
+
+    /**
+     * Prepara una imagen decodificada, reduciéndola al tamaño indicado.
+     *
+     * @param image La imagen decodificada.
+     * @param width El ancho final en pixeles.
+     * @param height La altura final en pixeles.
+     * @param jpeg true para comprimir los pixeles como JPEG, false para
+     * comprimirlos sin pérdida con Flate.
+     * @param flattenAlpha true para mezclar la transparencia con un fondo
+     * blanco en lugar de guardarla como máscara.
+     * @return La imagen preparada.
+     * @throws IOException En caso de error al codificar la imagen.
+     */
+    static PreparedImage of(BufferedImage image, int width, int height, boolean jpeg,
+            boolean flattenAlpha) throws IOException {
+        BufferedImage scaled = resample(image, width, height);
+        boolean alpha = scaled.getColorModel().hasAlpha() && !isOpaque(scaled);
+        int[] pixels = scaled.getRGB(0, 0, width, height, null, 0, width);
+        boolean gray = true;
+
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+
+            if (alpha && flattenAlpha) {
+                pixel = flatten(pixel);
+                pixels[i] = pixel;
+            }
+
+            int red = (pixel >> 16) & 0xFF;
+            gray &= red == ((pixel >> 8) & 0xFF) && red == (pixel & 0xFF);
+        }
+
+        int components = gray ? 1 : 3;
+        byte[] softMask = null;
+
+        if (alpha && !flattenAlpha) {
+            byte[] mask = new byte[pixels.length];
+
+            for (int i = 0; i < pixels.length; i++) {
+                mask[i] = (byte) (pixels[i] >>> 24);
+            }
+
+            softMask = deflate(mask);
+        }
+
+        if (jpeg) {
+            return new PreparedImage(COSName.DCT_DECODE, encodeJpeg(pixels, width, height, gray),
+                    softMask, width, height, components);
+        }
+
+        byte[] samples = new byte[pixels.length * components];
+
+        for (int i = 0, j = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+
+            if (gray) {
+                samples[j++] = (byte) pixel;
+            } else {
+                samples[j++] = (byte) (pixel >> 16);
+                samples[j++] = (byte) (pixel >> 8);
+                samples[j++] = (byte) pixel;
+            }
+        }
+
+        return new PreparedImage(COSName.FLATE_DECODE, deflate(samples), softMask, width, height, components);
+    }
+
+    /**
+     * Reduce una imagen al tamaño indicado, a la mitad en cada paso para
+     * conservar la calidad de los trazos delgados.
+     *
+     * @param image La imagen original.
+     * @param width El ancho final.
+     * @param height La altura final.
+     * @return La imagen reducida, o la original si ya tiene ese tamaño.
+     */
+    private static BufferedImage resample(BufferedImage image, int width, int height) {
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+
+        if (currentWidth == width && currentHeight == height) {
+            return image;
+        }
+
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = next.createGraphics();
+
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+
+            current = next;
+        } while (currentWidth != width || currentHeight != height);
+
+        return current;
+    }
+
+    /**
+     * @param image Una imagen con canal de transparencia.
+     * @return true si todos sus pixeles son opacos.
+     */
+    private static boolean isOpaque(BufferedImage image) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if ((image.getRGB(x, y) >>> 24) != 0xFF) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Mezcla un pixel con un fondo blanco según su transparencia.
+     *
+     * @param pixel El pixel ARGB.
+     * @return El pixel opaco.
+     */
+    private static int flatten(int pixel) {
+        int alpha = pixel >>> 24;
+        int red = ((pixel >> 16) & 0xFF) * alpha / 255 + 255 - alpha;
+        int green = ((pixel >> 8) & 0xFF) * alpha / 255 + 255 - alpha;
+        int blue = (pixel & 0xFF) * alpha / 255 + 255 - alpha;
+
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * Comprime bytes con Flate.
+     *
+     * @param bytes Los bytes a comprimir.
+     * @return Los bytes comprimidos.
+     * @throws IOException En caso de error al comprimir.
+     */
+    private static byte[] deflate(byte[] bytes) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(output, deflater)) {
+            deflate.write(bytes);
+        } finally {
+            deflater.end();
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Codifica los pixeles como JPEG.
+     *
+     * @param pixels Los pixeles RGB.
+     * @param width El ancho.
+     * @param height La altura.
+     * @param gray true para codificar la imagen en escala de grises.
+     * @return Los bytes del JPEG.
+     * @throws IOException En caso de error al codificar.
+     */
+    private static byte[] encodeJpeg(int[] pixels, int width, int height, boolean gray) throws IOException {
+        BufferedImage image;
+
+        if (gray) {
+            //Las muestras se copian sin conversión de color, igual que con
+            //Flate. La conversión de setRGB a escala de grises no es
+            //confiable cuando varios hilos la usan por primera vez al mismo
+            //tiempo y deja renglones en negro.
+            image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            image.getRaster().setSamples(0, 0, width, height, 0, pixels);
+        } else {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            image.setRGB(0, 0, width, height, pixels, 0, width);
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer available.");
+        }
+
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(output)) {
+            ImageWriteParam parameters = writer.getDefaultWriteParam();
+            parameters.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            parameters.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), parameters);
+        } finally {
+            writer.dispose();
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Crea la imagen para el documento recibido copiando los bytes ya
+     * codificados.
+     *
+     * @param document El documento al cuál pertenecerá la imagen.
+     * @return La imagen lista para dibujarse en el documento.
+     * @throws IOException En caso de error al copiar los bytes al documento.
+     */
+    public PDXObjectImage createImage(PDDocument document) throws IOException {
+        if (filter == COSName.DCT_DECODE && components != 1 && components != 3) {
+            //Las imágenes CMYK requieren la conversión que realiza PDJpeg.
+            return new PDJpeg(document, new ByteArrayInputStream(data));
+        }
+
+        PDStream stream = new PDStream(document, new ByteArrayInputStream(data), true);
+        PDXObjectImage image = filter == COSName.DCT_DECODE ? new PDJpeg(stream) : new PDPixelMap(stream);
+        setImageEntries(image.getCOSStream(), filter);
+        image.setBitsPerComponent(8);
+        image.setColorSpace(components == 3 ? PDDeviceRGB.INSTANCE : new PDDeviceGray());
+        image.setHeight(height);
+        image.setWidth(width);
+
+        if (softMask != null) {
+            PDStream mask = new PDStream(document, new ByteArrayInputStream(softMask), true);
+            COSDictionary maskDictionary = mask.getStream();
+            setImageEntries(maskDictionary, COSName.FLATE_DECODE);
+            maskDictionary.setInt(COSName.BITS_PER_COMPONENT, 8);
+            maskDictionary.setItem(COSName.COLORSPACE, COSName.DEVICEGRAY);
+            maskDictionary.setInt(COSName.HEIGHT, height);
+            maskDictionary.setInt(COSName.WIDTH, width);
+            image.getCOSStream().setItem(COSName.SMASK, mask.getStream());
+        }
+
+        return image;
+    }
+
+    /**
+     * Agrega al diccionario las entradas comunes de una imagen.
+     *
+     * @param dictionary El diccionario del flujo de la imagen.
+     * @param filter El filtro de los pixeles.
+     */
+    private static void setImageEntries(COSDictionary dictionary, COSName filter) {
+        dictionary.setItem(COSName.FILTER, filter);
+        dictionary.setItem(COSName.SUBTYPE, COSName.IMAGE);
+        dictionary.setItem(COSName.TYPE, COSName.XOBJECT);
+    }
+
+    /**
+     * Regresa el ancho de los pixeles codificados, que puede ser menor al de
+     * la imagen original.
+     *
+     * @return El ancho en pixeles.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Regresa la altura de los pixeles codificados.
+     *
+     * @return La altura en pixeles.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Regresa el número de bytes que ocupa la imagen en cada documento.
+     *
+     * @return El tamaño de los pixeles y la máscara codificados.
+     */
+    public int getEncodedSize() {
+        return data.length + (softMask != null ? softMask.length : 0);
+    }
+
+    /**
+     * @return true si la imagen tiene una máscara de transparencia.
+     */
+    public boolean hasSoftMask() {
+        return softMask != null;
+    }
+}
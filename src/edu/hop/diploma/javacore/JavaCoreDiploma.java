@@ -21,28 +21,86 @@ import org.apache.pdfbox.pdmodel.font.PDType1Font;
  * manera predefinida los datos que todos los diplomas llevarán, así como la
  * fecha y firma del instructor que dictó el curso.
  *
+ * <p>Las instancias no deben usarse desde varios hilos al mismo tiempo:
+ * {@link #getTexts()} actualiza los textos variables con los valores
+ * asignados desde la última llamada. Un diploma puede construirse en otro
+ * hilo siempre que nadie lo modifique mientras tanto.</p>
+ *
  * @author jjsanche
  */
 public final class JavaCoreDiploma implements Diploma, BordersManager {
-    private final String OTORGA_EL_PRESENTE = "Otorga el presente";
-    private final String DIPLOMA = "DIPLOMA";
-    private final String A = "A:   ";
-    private final String DE = "   de   ";
-    private final String DEL = "   del   ";
+    private static final String OTORGA_EL_PRESENTE = "Otorga el presente";
+    private static final String DIPLOMA = "DIPLOMA";
+    private static final String A = "A:   ";
+    private static final String DE = "   de   ";
+    private static final String DEL = "   del   ";
+    private static final String COURSE_TITLE = " Java Core ";
+    private static final String INSTRUCTOR_NAME = "José Alonso de Jesús Sánchez Fuentes";
+    private static final String SIGNER_TITLE = "Java Certifications Instructor";
+    private static final String LASTING = " Con una duración de: ";
+    private static final String DURATION = " horas";
+    private static final float MIN_TO_FONT_SIZE = 10;
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("dd");
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("MMMM");
+    private static final DateTimeFormatter YEAR_FORMATTER = DateTimeFormatter.ofPattern("yyyy");
+    
+    private static final int FROM_CHANGED = 1;
+    private static final int TO_CHANGED = 1 << 1;
+    private static final int MOTIVE_CHANGED = 1 << 2;
+    private static final int HOURS_CHANGED = 1 << 3;
+    private static final int PLACE_CHANGED = 1 << 4;
+    private static final int DATE_CHANGED = 1 << 5;
+    private static final int ALL_CHANGED = (1 << 6) - 1;
+    
+    private static final int FROM_INDEX = 0;
+    private static final int TO_INDEX = 5;
+    private static final int MOTIVE_INDEX = 7;
+    private static final int HOURS_INDEX = 11;
+    private static final int PLACE_INDEX = 14;
+    private static final int DAY_INDEX = 15;
+    private static final int MONTH_INDEX = 17;
+    private static final int YEAR_INDEX = 19;
+    
+    /**
+     * Modelos de los textos que no cambian entre diplomas. Cada diploma
+     * trabaja con copias, por lo que los modelos nunca se entregan.
+     */
+    private static final Text[] STATIC_TEXTS = {
+        null,
+        new Text(OTORGA_EL_PRESENTE, 14, PDType1Font.TIMES_ROMAN, Alignments.CENTER),
+        new Text(DIPLOMA, 100, PDType1Font.TIMES_ROMAN, Alignments.CENTER),
+        new Text("", 50, PDType1Font.TIMES_ROMAN, Alignments.CENTER),
+        new Text(A, 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false),
+        null,
+        new Text("", 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER),
+        null,
+        new Text(COURSE_TITLE, 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER),
+        new Text("", 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER),
+        new Text(LASTING, 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false),
+        null,
+        new Text(DURATION, 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER),
+        new Text("", 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER),
+        null,
+        null,
+        new Text(DE, 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false),
+        null,
+        new Text(DEL, 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false),
+        null,
+        new Text("", 50, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER).setBreakLine(true),
+        new Text(INSTRUCTOR_NAME, 14, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(true),
+        new Text(SIGNER_TITLE, 14, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(true)
+    };
     
     private PageProperties pageProperties;
     private List<PageBorder> pageBorders;
-    private List<Text> texts;
+    private final Text[] texts = new Text[23];
+    private final List<Text> textsView = Collections.unmodifiableList(Arrays.asList(texts));
+    private int changedFields = ALL_CHANGED;
     private String fileName = "Java Core Diploma.pdf";
-    private String courseTitle = " Java Core ";
     private String to = " José Alonso de Jesús Sánchez Fuentes";
-    private String instructorName = "José Alonso de Jesús Sánchez Fuentes";
     private String from = "Hands-on Programming";
     private String place = "Guadalajara, Jalisco a   ";
     private String motive = "Por haber concluido satisfactoriamente el curso de:";
-    private String signerTitle = "Java Certifications Instructor";
-    private String lasting = " Con una duración de: ";
-    private String duration = " horas";
     private LocalDate date = LocalDate.now();
     private float contentMarginSize = 0;
     private int hours = 60;
@@ -72,7 +130,7 @@ public final class JavaCoreDiploma implements Diploma, BordersManager {
      */
     public JavaCoreDiploma(PageProperties pageProperties) {
         setPageProperties(pageProperties);
-        buildTexts();
+        buildStaticTexts();
     }
     /**
      * Crea un diploma con propiedades y bordes definidos por el usuario.
@@ -87,36 +145,66 @@ public final class JavaCoreDiploma implements Diploma, BordersManager {
     }
     /**
      * Construye los textos con el tamaño, tipo de letra y alineación correctos
-     * para cada uno de ellos.
+     * para cada uno de ellos. Los textos fijos se copian de sus modelos para
+     * que los cambios a los textos de un diploma no afecten a los demás, y
+     * los textos variables se crean vacíos; su contenido se asigna hasta que
+     * se solicitan los textos del diploma.
      */
-    private void buildTexts() {
-        List<Text> texts = new ArrayList<>();
+    private void buildStaticTexts() {
+        for (int i = 0; i < texts.length; i++) {
+            if (STATIC_TEXTS[i] != null) {
+                texts[i] = new Text(STATIC_TEXTS[i]);
+            }
+        }
+        
+        texts[FROM_INDEX] = new Text("", 18, PDType1Font.HELVETICA_BOLD, Alignments.CENTER, Color.BLUE).setIsUnderlined(true).setIsVariable(true);
+        texts[TO_INDEX] = new Text("", 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER).setShrinkToFit(MIN_TO_FONT_SIZE, 18).setIsVariable(true);
+        texts[MOTIVE_INDEX] = new Text("", 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false).setIsVariable(true);
+        texts[HOURS_INDEX] = new Text("", 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER).setBreakLine(false).setIsVariable(true);
+        texts[PLACE_INDEX] = new Text("", 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false).setIsVariable(true);
+        texts[DAY_INDEX] = new Text("", 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER).setBreakLine(false).setIsVariable(true);
+        texts[MONTH_INDEX] = new Text("", 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER).setBreakLine(false).setIsVariable(true);
+        texts[YEAR_INDEX] = new Text("", 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER).setBreakLine(true).setIsVariable(true);
+    }
+    /**
+     * Actualiza únicamente los textos variables cuyo valor cambió desde la
+     * última vez que se solicitaron los textos del diploma.
+     */
+    private void updateTexts() {
+        int changed = changedFields;
         
-        texts.add(new Text(getFrom(), 18, PDType1Font.HELVETICA_BOLD, Alignments.CENTER, Color.BLUE).setIsUnderlined(true));
-        texts.add(new Text(OTORGA_EL_PRESENTE, 14, PDType1Font.TIMES_ROMAN, Alignments.CENTER));
-        texts.add(new Text(DIPLOMA, 100, PDType1Font.TIMES_ROMAN, Alignments.CENTER));
-        texts.add(new Text("", 50, PDType1Font.TIMES_ROMAN, Alignments.CENTER));
-        texts.add(new Text(A, 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false));
-        texts.add(new Text(getTo(), 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER));
-        texts.add(new Text("", 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER));
-        texts.add(new Text(getMotive(), 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false));
-        texts.add(new Text(courseTitle, 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER));
-        texts.add(new Text("", 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER));
-        texts.add(new Text(lasting, 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false));
-        texts.add(new Text(String.valueOf(getHours()), 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER).setBreakLine(false));
-        texts.add(new Text(duration, 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER));
-        texts.add(new Text("", 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER));
-        texts.add(new Text(getPlace(), 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false));
-        texts.add(new Text(DateTimeFormatter.ofPattern("dd").format(getDate()), 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER).setBreakLine(false));
-        texts.add(new Text(DE, 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false).setBreakLine(false));
-        texts.add(new Text(DateTimeFormatter.ofPattern("MMMM").format(getDate()), 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER).setBreakLine(false));
-        texts.add(new Text(DEL, 18, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(false));
-        texts.add(new Text(DateTimeFormatter.ofPattern("yyyy").format(getDate()), 18, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER).setBreakLine(true));
-        texts.add(new Text("", 50, PDType1Font.HELVETICA_BOLD_OBLIQUE, Alignments.CENTER).setBreakLine(true));
-        texts.add(new Text(instructorName, 14, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(true));
-        texts.add(new Text(signerTitle, 14, PDType1Font.TIMES_ROMAN, Alignments.CENTER).setBreakLine(true));
+        if (changed == 0) {
+            return;
+        }
+        
+        if ((changed & FROM_CHANGED) != 0) {
+            texts[FROM_INDEX].setText(getFrom());
+        }
+        
+        if ((changed & TO_CHANGED) != 0) {
+            texts[TO_INDEX].setText(getTo());
+        }
+        
+        if ((changed & MOTIVE_CHANGED) != 0) {
+            texts[MOTIVE_INDEX].setText(getMotive());
+        }
+        
+        if ((changed & HOURS_CHANGED) != 0) {
+            texts[HOURS_INDEX].setText(String.valueOf(getHours()));
+        }
+        
+        if ((changed & PLACE_CHANGED) != 0) {
+            texts[PLACE_INDEX].setText(getPlace());
+        }
+        
+        if ((changed & DATE_CHANGED) != 0) {
+            LocalDate date = getDate();
+            texts[DAY_INDEX].setText(DAY_FORMATTER.format(date));
+            texts[MONTH_INDEX].setText(MONTH_FORMATTER.format(date));
+            texts[YEAR_INDEX].setText(YEAR_FORMATTER.format(date));
+        }
         
-        this.texts = texts;
+        changedFields = 0;
     }
     /**
      * Cambia las propiedades físicas del documento actual. Estas propiedades no
@@ -207,7 +295,8 @@ public final class JavaCoreDiploma implements Diploma, BordersManager {
      * {@inheritDoc}
      */
     public Collection<Text> getTexts() {
-        return texts;
+        updateTexts();
+        return textsView;
     }
     /**
      * Cambia el nombre del participante del curso.
@@ -216,7 +305,7 @@ public final class JavaCoreDiploma implements Diploma, BordersManager {
      */
     public void setTo(String to) {
         this.to = to;
-        buildTexts();
+        changedFields |= TO_CHANGED;
     }
     /**
      * Regresa el nombre del participante del curso.
@@ -233,6 +322,7 @@ public final class JavaCoreDiploma implements Diploma, BordersManager {
      */
     public void setFrom(String from) {
         this.from = from;
+        changedFields |= FROM_CHANGED;
     }
     /**
      * Regresa el nombre de la compañia.
@@ -249,6 +339,7 @@ public final class JavaCoreDiploma implements Diploma, BordersManager {
      */
     public void setDate(LocalDate date) {
         this.date = date != null ? date : LocalDate.now();
+        changedFields |= DATE_CHANGED;
     }
     /**
      * Regresa la fecha del diploma.
@@ -264,6 +355,7 @@ public final class JavaCoreDiploma implements Diploma, BordersManager {
      */
     public void setMotive(String motive) {
         this.motive = motive;
+        changedFields |= MOTIVE_CHANGED;
     }
     /**
      * Regresa el motivo del diploma.
@@ -278,6 +370,7 @@ public final class JavaCoreDiploma implements Diploma, BordersManager {
      */
     public void setPlace(String place) {
         this.place = place;
+        changedFields |= PLACE_CHANGED;
     }
     /**
      * {@inheritDoc }
@@ -311,7 +404,7 @@ public final class JavaCoreDiploma implements Diploma, BordersManager {
      * {@inheritDoc }
      */
     public String getInstructorName() {
-       return instructorName; 
+       return INSTRUCTOR_NAME; 
     }
     
     /**
@@ -319,7 +412,7 @@ public final class JavaCoreDiploma implements Diploma, BordersManager {
      */
     public void setHours(int hours) {
         this.hours = hours;
-        buildTexts();
+        changedFields |= HOURS_CHANGED;
     }
     
     /**
@@ -0,0 +1,142 @@
+package edu.hop.diploma.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias con cubetas de tamaño logarítmico. Cada potencia
+ * de dos se divide en ocho cubetas, por lo que los percentiles tienen un error
+ * relativo menor al 12.5%.
+ *
+ * <p>Puede actualizarse desde varios hilos sin bloqueos.</p>
+ *
+ * @author jjsanche
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Registra un valor.
+     *
+     * @param nanos El valor en nanosegundos. Los valores negativos se
+     * registran como 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * Regresa el número de valores registrados.
+     *
+     * @return El número de valores.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Regresa el promedio de los valores registrados.
+     *
+     * @return El promedio en nanosegundos o 0 si no hay valores.
+     */
+    public double getMean() {
+        long total = count.sum();
+
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    /**
+     * Regresa el valor debajo del cuál se encuentra el porcentaje indicado de
+     * los valores registrados.
+     *
+     * @param percentile El percentil, entre 0 y 100.
+     * @return El límite superior de la cubeta del percentil en nanosegundos o
+     * 0 si no hay valores.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100.");
+        }
+
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+
+            if (seen >= target) {
+                return upperBoundOf(i);
+            }
+        }
+
+        return upperBoundOf(BUCKETS - 1);
+    }
+
+    /**
+     * Elimina todos los valores registrados.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+
+        count.reset();
+        sum.reset();
+    }
+
+    /**
+     * Calcula la cubeta de un valor.
+     *
+     * @param value Un valor no negativo.
+     * @return El índice de la cubeta.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Calcula el mayor valor que corresponde a una cubeta.
+     *
+     * @param bucket El índice de la cubeta.
+     * @return El límite superior de la cubeta.
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
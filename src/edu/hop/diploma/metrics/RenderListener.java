@@ -0,0 +1,21 @@
+package edu.hop.diploma.metrics;
+
+/**
+ * Recibe las mediciones de cada documento construido por un
+ * {@link edu.hop.diploma.builder.DiplomaBuilder}.
+ *
+ * <p>El método se invoca desde el hilo que construyó el documento, por lo que
+ * las implementaciones deben poder usarse desde varios hilos y terminar
+ * rápido.</p>
+ *
+ * @author jjsanche
+ */
+public interface RenderListener {
+    /**
+     * Se invoca al terminar la construcción de un documento, aún cuando haya
+     * ocurrido un error.
+     *
+     * @param metrics Las mediciones del documento.
+     */
+    public void renderCompleted(RenderMetrics metrics);
+}
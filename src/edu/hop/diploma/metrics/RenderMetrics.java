@@ -0,0 +1,120 @@
+package edu.hop.diploma.metrics;
+
+/**
+ * Clase que describe las mediciones de la construcción de un documento.
+ *
+ * @author jjsanche
+ */
+public final class RenderMetrics {
+    private final String fileName;
+    private final int pages;
+    private final long[] phaseNanos;
+    private final long totalNanos;
+    private final long bytesWritten;
+    private final long allocatedBytes;
+    private final Throwable error;
+
+    /**
+     * Crea las mediciones de un documento.
+     *
+     * @param fileName El nombre de archivo del primer diploma del documento o
+     * null si el documento no tiene diplomas.
+     * @param pages El número de páginas construidas.
+     * @param phaseNanos El tiempo en nanosegundos de cada fase, en el orden de
+     * {@link RenderPhase}.
+     * @param totalNanos El tiempo total en nanosegundos.
+     * @param bytesWritten El número de bytes del PDF escritos.
+     * @param allocatedBytes Los bytes de memoria asignados por el hilo durante
+     * la construcción o -1 si la JVM no permite medirlos.
+     * @param error El error ocurrido o null si el documento se construyó
+     * correctamente.
+     */
+    public RenderMetrics(String fileName, int pages, long[] phaseNanos, long totalNanos,
+            long bytesWritten, long allocatedBytes, Throwable error) {
+        if (phaseNanos.length != RenderPhase.values().length) {
+            throw new IllegalArgumentException("phaseNanos must have one value per RenderPhase.");
+        }
+
+        this.fileName = fileName;
+        this.pages = pages;
+        this.phaseNanos = phaseNanos.clone();
+        this.totalNanos = totalNanos;
+        this.bytesWritten = bytesWritten;
+        this.allocatedBytes = allocatedBytes;
+        this.error = error;
+    }
+
+    /**
+     * Regresa el nombre de archivo del primer diploma del documento.
+     *
+     * @return La ruta del archivo o null si el documento no tiene diplomas.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Regresa el número de páginas construidas.
+     *
+     * @return El número de páginas.
+     */
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * Regresa el tiempo acumulado en una fase por todas las páginas del
+     * documento.
+     *
+     * @param phase La fase a consultar.
+     * @return El tiempo en nanosegundos.
+     */
+    public long getPhaseNanos(RenderPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Regresa el tiempo total de la construcción.
+     *
+     * @return El tiempo en nanosegundos.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Regresa el número de bytes del PDF escritos.
+     *
+     * @return El número de bytes o 0 si el documento no se guardó.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Regresa la memoria asignada por el hilo durante la construcción.
+     *
+     * @return El número de bytes o -1 si la JVM no permite medirlos.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Regresa el error ocurrido durante la construcción.
+     *
+     * @return El error o null si el documento se construyó correctamente.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Indica si el documento se construyó correctamente.
+     *
+     * @return true si no ocurrió ningún error.
+     */
+    public boolean isSuccessful() {
+        return error == null;
+    }
+}
@@ -0,0 +1,30 @@
+package edu.hop.diploma.metrics;
+
+/**
+ * Contiene las fases en que se divide la construcción de un diploma.
+ *
+ * @author jjsanche
+ */
+public enum RenderPhase {
+    /**
+     * Lectura de la firma y su incorporación al documento.
+     */
+    SIGNATURE_LOAD,
+    /**
+     * Cálculo y dibujo de los bordes de la página.
+     */
+    BORDERS,
+    /**
+     * Medición y acomodo de los textos.
+     */
+    TEXT_LAYOUT,
+    /**
+     * Escritura de los textos, líneas, firma y capa invariante en el flujo de
+     * contenido de la página.
+     */
+    CONTENT_EMIT,
+    /**
+     * Serialización del documento PDF.
+     */
+    SAVE
+}
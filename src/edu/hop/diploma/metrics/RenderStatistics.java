@@ -0,0 +1,171 @@
+package edu.hop.diploma.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Acumula las mediciones de los documentos construidos en histogramas de
+ * latencia por fase. Puede registrarse en el servidor de JMX de la plataforma
+ * para consultarse con herramientas como JConsole o VisualVM.
+ *
+ * @author jjsanche
+ */
+public class RenderStatistics implements RenderListener, RenderStatisticsMXBean {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final LatencyHistogram renders = new LatencyHistogram();
+    private final LatencyHistogram[] phases = new LatencyHistogram[RenderPhase.values().length];
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder allocationSamples = new LongAdder();
+
+    /**
+     * Crea un acumulador sin mediciones.
+     */
+    public RenderStatistics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void renderCompleted(RenderMetrics metrics) {
+        renders.record(metrics.getTotalNanos());
+        pages.add(metrics.getPages());
+        bytesWritten.add(metrics.getBytesWritten());
+
+        for (RenderPhase phase : RenderPhase.values()) {
+            phases[phase.ordinal()].record(metrics.getPhaseNanos(phase));
+        }
+
+        if (!metrics.isSuccessful()) {
+            errors.increment();
+        }
+
+        if (metrics.getAllocatedBytes() >= 0) {
+            allocatedBytes.add(metrics.getAllocatedBytes());
+            allocationSamples.increment();
+        }
+    }
+
+    /**
+     * Registra este acumulador en el servidor de JMX de la plataforma con el
+     * nombre <code>edu.hop.diploma:type=RenderStatistics,name=</code><i>name</i>.
+     *
+     * @param name El nombre que distingue a este acumulador.
+     * @return El nombre con el cuál se registró.
+     * @throws JMException En caso de que el nombre sea inválido o ya esté
+     * registrado.
+     */
+    public ObjectName register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("edu.hop.diploma:type=RenderStatistics,name="
+                + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+
+        return objectName;
+    }
+
+    /**
+     * Regresa el histograma de latencias de una fase.
+     *
+     * @param phase La fase a consultar.
+     * @return El histograma de la fase, en nanosegundos.
+     */
+    public LatencyHistogram getPhaseHistogram(RenderPhase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    /**
+     * Regresa el histograma de latencias de los documentos completos.
+     *
+     * @return El histograma, en nanosegundos.
+     */
+    public LatencyHistogram getRenderHistogram() {
+        return renders;
+    }
+
+    @Override
+    public long getRenderCount() {
+        return renders.getCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getPageCount() {
+        return pages.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public double getMeanAllocatedBytes() {
+        long samples = allocationSamples.sum();
+
+        return samples == 0 ? -1 : (double) allocatedBytes.sum() / samples;
+    }
+
+    @Override
+    public double getMeanRenderMillis() {
+        return renders.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP99RenderMillis() {
+        return renders.getPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMeanMillis() {
+        Map<String, Double> means = new LinkedHashMap<>();
+
+        for (RenderPhase phase : RenderPhase.values()) {
+            means.put(phase.name(), phases[phase.ordinal()].getMean() / NANOS_PER_MILLI);
+        }
+
+        return means;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseP99Millis() {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+
+        for (RenderPhase phase : RenderPhase.values()) {
+            percentiles.put(phase.name(), phases[phase.ordinal()].getPercentile(99) / NANOS_PER_MILLI);
+        }
+
+        return percentiles;
+    }
+
+    @Override
+    public void reset() {
+        renders.reset();
+
+        for (LatencyHistogram phase : phases) {
+            phase.reset();
+        }
+
+        errors.reset();
+        pages.reset();
+        bytesWritten.reset();
+        allocatedBytes.reset();
+        allocationSamples.reset();
+    }
+}
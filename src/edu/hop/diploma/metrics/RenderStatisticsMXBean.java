@@ -0,0 +1,65 @@
+package edu.hop.diploma.metrics;
+
+import java.util.Map;
+
+/**
+ * Interfaz de administración de {@link RenderStatistics}, expuesta por JMX.
+ *
+ * @author jjsanche
+ */
+public interface RenderStatisticsMXBean {
+    /**
+     * @return El número de documentos construidos.
+     */
+    public long getRenderCount();
+
+    /**
+     * @return El número de documentos que terminaron con error.
+     */
+    public long getErrorCount();
+
+    /**
+     * @return El número de páginas construidas.
+     */
+    public long getPageCount();
+
+    /**
+     * @return El total de bytes de PDF escritos.
+     */
+    public long getBytesWritten();
+
+    /**
+     * @return El promedio de memoria asignada por documento en bytes o -1 si
+     * la JVM no permite medirla.
+     */
+    public double getMeanAllocatedBytes();
+
+    /**
+     * @return El tiempo promedio de construcción de un documento en
+     * milisegundos.
+     */
+    public double getMeanRenderMillis();
+
+    /**
+     * @return El percentil 99 del tiempo de construcción de un documento en
+     * milisegundos.
+     */
+    public double getP99RenderMillis();
+
+    /**
+     * @return El tiempo promedio de cada fase en milisegundos, por nombre de
+     * fase.
+     */
+    public Map<String, Double> getPhaseMeanMillis();
+
+    /**
+     * @return El percentil 99 de cada fase en milisegundos, por nombre de
+     * fase.
+     */
+    public Map<String, Double> getPhaseP99Millis();
+
+    /**
+     * Elimina todas las mediciones acumuladas.
+     */
+    public void reset();
+}
@@ -0,0 +1,607 @@
+package edu.hop.diploma.output;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Destino que guarda cada diploma como un archivo en un directorio desde un
+ * hilo escritor propio, de modo que los hilos que construyen los diplomas no
+ * esperan al disco.
+ *
+ * <p>{@link #write(String, ByteBuffer)} sólo agrega el diploma a una cola
+ * limitada; únicamente cuando la cola está llena el hilo que construye espera
+ * a que el escritor avance. El escritor toma de la cola grupos de diplomas,
+ * los escribe con {@link FileChannel} en archivos temporales, fuerza a disco
+ * todo el grupo, renombra cada archivo a su nombre final y fuerza a disco el
+ * directorio, por lo que nunca queda un diploma incompleto con su nombre
+ * definitivo.</p>
+ *
+ * <p>{@link #submit(String, ByteBuffer)} regresa una tarea por diploma que
+ * el escritor termina después de forzar a disco y renombrar su grupo, o con
+ * el error de ese diploma si no pudo guardarse. Los errores de los diplomas
+ * entregados con {@link #write(String, ByteBuffer)} se informan, con el
+ * nombre de cada diploma, en la siguiente llamada a {@link #flush()} o
+ * {@link #close()}. Un diploma fallido no impide guardar los siguientes.</p>
+ *
+ * <p>Los diplomas entregados antes de cerrar el destino se escriben antes de
+ * que termine {@link #close()}; los que se entregan después se rechazan. Si
+ * el hilo escritor termina por un error inesperado, los diplomas que
+ * quedaron en la cola se informan como fallidos y los siguientes se
+ * rechazan.</p>
+ *
+ * @author jjsanche
+ */
+public class AsyncFileSink implements DiplomaSink {
+    /**
+     * El número de diplomas que pueden esperar en la cola cuando no se indica
+     * otro.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    /**
+     * El número máximo de diplomas que se fuerzan a disco juntos cuando no se
+     * indica otro.
+     */
+    public static final int DEFAULT_GROUP_SIZE = 32;
+
+    private static final String TEMPORARY_SUFFIX = ".part";
+    private static final long OFFER_MILLIS = 100;
+    private static final PendingWrite CLOSE = new PendingWrite(null, null);
+
+    private final Path directory;
+    private final int groupSize;
+    private final boolean sync;
+    private final BlockingQueue<PendingWrite> queue;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, Throwable> failures = new ConcurrentHashMap<>();
+    private final Thread writer;
+    private final Object progress = new Object();
+    private long submitted;
+    private long completed;
+    private boolean closed;
+    private boolean writerRunning = true;
+
+    /**
+     * Crea un destino con la cola y los grupos por omisión que fuerza cada
+     * grupo a disco.
+     *
+     * @param directory El directorio donde se guardarán los diplomas.
+     * @throws IOException En caso de no poder crear el directorio.
+     */
+    public AsyncFileSink(Path directory) throws IOException {
+        this(directory, DEFAULT_QUEUE_CAPACITY, DEFAULT_GROUP_SIZE, true);
+    }
+
+    /**
+     * Crea un destino en el directorio indicado.
+     *
+     * @param directory El directorio donde se guardarán los diplomas.
+     * @param queueCapacity El número de diplomas que pueden esperar a ser
+     * escritos antes de que los hilos que construyen tengan que esperar.
+     * @param groupSize El número máximo de diplomas que se escriben y se
+     * fuerzan a disco juntos.
+     * @param sync true para forzar cada grupo a disco antes de renombrar sus
+     * archivos, false para dejar la escritura al sistema operativo.
+     * @throws IOException En caso de no poder crear el directorio.
+     */
+    public AsyncFileSink(Path directory, int queueCapacity, int groupSize, boolean sync) throws IOException {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be greater than 0.");
+        }
+
+        if (groupSize <= 0) {
+            throw new IllegalArgumentException("groupSize must be greater than 0.");
+        }
+
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.groupSize = groupSize;
+        this.sync = sync;
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        writer = new Thread(this::writeLoop, "diploma-writer-" + directory.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Agrega el diploma a la cola del escritor. El buffer se conserva hasta
+     * que el diploma se escribe, por lo que no debe modificarse después. Si
+     * el diploma no puede guardarse, el error se informa en la siguiente
+     * llamada a {@link #flush()} o {@link #close()}.
+     *
+     * @param name El nombre del archivo del diploma, sin ruta.
+     * @param pdf Un buffer con los bytes del PDF, listo para leerse.
+     * @throws IOException En caso de que el destino esté cerrado, de que el
+     * hilo escritor haya terminado o de que el hilo sea interrumpido mientras
+     * espera espacio en la cola.
+     */
+    @Override
+    public void write(String name, ByteBuffer pdf) throws IOException {
+        enqueue(name, pdf).whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                failures.putIfAbsent(name, ex);
+            }
+        });
+    }
+
+    /**
+     * Agrega el diploma a la cola del escritor. El buffer se conserva hasta
+     * que el diploma se escribe, por lo que no debe modificarse después. El
+     * error de este diploma sólo se informa en la tarea regresada.
+     *
+     * @param name El nombre del archivo del diploma, sin ruta.
+     * @param pdf Un buffer con los bytes del PDF, listo para leerse.
+     * @return Una tarea que el hilo escritor termina cuando el diploma queda
+     * guardado y forzado a disco.
+     */
+    @Override
+    public CompletableFuture<Void> submit(String name, ByteBuffer pdf) {
+        try {
+            return enqueue(name, pdf);
+        } catch (IOException ex) {
+            CompletableFuture<Void> saved = new CompletableFuture<>();
+            saved.completeExceptionally(ex);
+
+            return saved;
+        }
+    }
+
+    /**
+     * Agrega un diploma a la cola del escritor, esperando mientras la cola
+     * esté llena.
+     *
+     * @param name El nombre del archivo del diploma, sin ruta.
+     * @param pdf Un buffer con los bytes del PDF, listo para leerse.
+     * @return La tarea que el escritor termina al guardar el diploma.
+     * @throws IOException En caso de que el destino esté cerrado, de que el
+     * hilo escritor haya terminado o de que el hilo sea interrumpido mientras
+     * espera espacio en la cola.
+     */
+    private CompletableFuture<Void> enqueue(String name, ByteBuffer pdf) throws IOException {
+        //El diploma se cuenta junto con la revisión del cierre, de modo que
+        //el escritor no termine mientras falte escribir un diploma aceptado.
+        synchronized (progress) {
+            if (closed) {
+                throw new IOException("The sink is closed.");
+            }
+
+            if (!writerRunning) {
+                throw new IOException("The writer thread is not running.");
+            }
+
+            pending.add(name);
+            submitted++;
+        }
+
+        PendingWrite write = new PendingWrite(name, pdf.slice());
+
+        try {
+            while (!queue.offer(write, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!isWriterRunning()) {
+                    discard(name);
+                    throw new IOException("The writer thread is not running.");
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            discard(name);
+            throw new InterruptedIOException("Interrupted while waiting for the writer queue");
+        }
+
+        //Si el escritor terminó justo después de aceptar el diploma, nadie
+        //más lo retirará de la cola.
+        if (!isWriterRunning()) {
+            failRemaining();
+        }
+
+        pdf.position(pdf.limit());
+
+        return write.saved;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String locationOf(String name) {
+        return directory.resolve(name).toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Path pathOf(String name) {
+        return directory.resolve(name);
+    }
+
+    /**
+     * Indica si el diploma ya existe en el directorio o está en la cola para
+     * escribirse.
+     *
+     * @param name El nombre del archivo del diploma, sin ruta.
+     * @return true si el diploma existe o se escribirá.
+     */
+    @Override
+    public boolean contains(String name) {
+        return pending.contains(name) || Files.isRegularFile(directory.resolve(name));
+    }
+
+    /**
+     * Espera a que se escriban todos los diplomas entregados hasta el
+     * momento.
+     *
+     * @throws IOException En caso de que algún diploma entregado con
+     * {@link #write(String, ByteBuffer)} no haya podido escribirse desde la
+     * llamada anterior, o de que el hilo sea interrumpido mientras espera.
+     */
+    @Override
+    public void flush() throws IOException {
+        boolean stopped;
+
+        synchronized (progress) {
+            long target = submitted;
+
+            while (completed < target && writerRunning) {
+                try {
+                    progress.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the writer");
+                }
+            }
+
+            stopped = !writerRunning;
+        }
+
+        if (stopped) {
+            failRemaining();
+        }
+
+        checkFailures();
+    }
+
+    /**
+     * Escribe los diplomas pendientes y termina el hilo escritor. Los
+     * diplomas entregados con {@link #write(String, ByteBuffer)} que no
+     * pudieron escribirse se informan como un error.
+     *
+     * @throws IOException En caso de que alguna escritura haya fallado o de
+     * que el hilo sea interrumpido mientras espera.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (progress) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+        }
+
+        try {
+            while (!queue.offer(CLOSE, OFFER_MILLIS, TimeUnit.MILLISECONDS) && isWriterRunning()) {
+                //La cola está llena; el escritor sigue avanzando.
+            }
+
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the writer");
+        }
+
+        failRemaining();
+        checkFailures();
+    }
+
+    /**
+     * Ciclo del hilo escritor: toma de la cola un grupo con los diplomas
+     * disponibles, sin esperar a que se llene, y lo escribe. Después de
+     * recibir la señal de cierre continúa hasta escribir todos los diplomas
+     * aceptados, ya que alguno pudo llegar a la cola después de la señal.
+     */
+    private void writeLoop() {
+        List<PendingWrite> group = new ArrayList<>(groupSize);
+        boolean closing = false;
+
+        try {
+            while (!closing || !isDone()) {
+                PendingWrite first = closing ? queue.poll(OFFER_MILLIS, TimeUnit.MILLISECONDS) : queue.take();
+
+                if (first == null) {
+                    continue;
+                }
+
+                group.add(first);
+                queue.drainTo(group, groupSize - 1);
+
+                if (group.remove(CLOSE)) {
+                    closing = true;
+                }
+
+                writeGroup(group);
+                group.clear();
+            }
+        } catch (InterruptedException ex) {
+            failAll(group, new InterruptedIOException("The writer thread was interrupted"));
+        } catch (RuntimeException | Error ex) {
+            failAll(group, new IOException("The writer thread failed", ex));
+        } finally {
+            synchronized (progress) {
+                writerRunning = false;
+                progress.notifyAll();
+            }
+
+            failRemaining();
+        }
+    }
+
+    /**
+     * Escribe un grupo de diplomas en archivos temporales, los fuerza a disco
+     * y los renombra. La tarea de cada diploma termina después de forzar a
+     * disco el directorio, o en cuanto falla su propia escritura.
+     *
+     * @param group Los diplomas a escribir.
+     */
+    private void writeGroup(List<PendingWrite> group) {
+        List<FileChannel> channels = new ArrayList<>(group.size());
+        List<PendingWrite> saved = new ArrayList<>(group.size());
+
+        for (PendingWrite write : group) {
+            FileChannel channel = null;
+
+            try {
+                channel = FileChannel.open(temporaryOf(write.name), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+                while (write.pdf.hasRemaining()) {
+                    channel.write(write.pdf);
+                }
+            } catch (IOException ex) {
+                fail(write, channel, ex);
+                channel = null;
+            }
+
+            channels.add(channel);
+        }
+
+        //Los archivos del grupo se fuerzan uno tras otro para que el sistema
+        //de archivos pueda agrupar sus confirmaciones.
+        for (int i = 0; i < group.size(); i++) {
+            PendingWrite write = group.get(i);
+            FileChannel channel = channels.get(i);
+
+            if (channel == null) {
+                continue;
+            }
+
+            try {
+                if (sync) {
+                    channel.force(false);
+                }
+
+                channel.close();
+                Path temporary = temporaryOf(write.name);
+                Path file = directory.resolve(write.name);
+
+                try {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                pending.remove(write.name);
+                saved.add(write);
+            } catch (IOException ex) {
+                fail(write, channel, ex);
+            }
+        }
+
+        IOException directoryError = sync ? forceDirectory() : null;
+
+        for (PendingWrite write : saved) {
+            if (directoryError == null) {
+                write.saved.complete(null);
+            } else {
+                fail(write, null, directoryError);
+            }
+        }
+
+        synchronized (progress) {
+            completed += group.size();
+            progress.notifyAll();
+        }
+    }
+
+    /**
+     * Fuerza a disco el directorio para que los nombres de los archivos
+     * renombrados sobrevivan a una falla del sistema.
+     *
+     * @return El error al forzar el directorio o null si no ocurrió ninguno.
+     */
+    private IOException forceDirectory() {
+        FileChannel channel;
+
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException ex) {
+            //Algunos sistemas, como Windows, no permiten abrir un directorio;
+            //en ellos el renombrado ya es definitivo.
+            return null;
+        }
+
+        try (FileChannel directoryChannel = channel) {
+            directoryChannel.force(true);
+            return null;
+        } catch (IOException ex) {
+            return ex;
+        }
+    }
+
+    /**
+     * Elimina el archivo temporal de un diploma y termina su tarea con el
+     * error ocurrido.
+     *
+     * @param write El diploma que no pudo escribirse.
+     * @param channel El canal del archivo temporal o null si no se abrió.
+     * @param ex El error ocurrido.
+     */
+    private void fail(PendingWrite write, FileChannel channel, IOException ex) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+
+            Files.deleteIfExists(temporaryOf(write.name));
+        } catch (IOException | RuntimeException ignored) {
+            //El error original es el que se informa.
+        }
+
+        pending.remove(write.name);
+        write.saved.completeExceptionally(ex);
+    }
+
+    /**
+     * Retira un diploma que no llegó a la cola.
+     *
+     * @param name El nombre del diploma.
+     */
+    private void discard(String name) {
+        pending.remove(name);
+
+        synchronized (progress) {
+            submitted--;
+        }
+    }
+
+    /**
+     * Informa como fallidos los diplomas de un grupo que no terminó de
+     * escribirse.
+     *
+     * @param group Los diplomas del grupo.
+     * @param ex El error ocurrido.
+     */
+    private void failAll(List<PendingWrite> group, IOException ex) {
+        for (PendingWrite write : group) {
+            if (write != CLOSE && !write.saved.isDone()) {
+                fail(write, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Informa como fallidos los diplomas que quedaron en la cola después de
+     * que terminó el hilo escritor.
+     */
+    private void failRemaining() {
+        List<PendingWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.remove(CLOSE);
+
+        for (PendingWrite write : remaining) {
+            fail(write, null, new IOException("The diploma " + write.name + " was not written."));
+        }
+
+        synchronized (progress) {
+            completed += remaining.size();
+            progress.notifyAll();
+        }
+    }
+
+    /**
+     * @return true si el hilo escritor sigue tomando diplomas de la cola.
+     */
+    private boolean isWriterRunning() {
+        synchronized (progress) {
+            return writerRunning;
+        }
+    }
+
+    /**
+     * @return true si se escribieron todos los diplomas aceptados.
+     */
+    private boolean isDone() {
+        synchronized (progress) {
+            return completed >= submitted;
+        }
+    }
+
+    /**
+     * Informa los diplomas entregados con {@link #write(String, ByteBuffer)}
+     * que no pudieron escribirse desde la revisión anterior. Cada error se
+     * informa una sola vez.
+     *
+     * @throws IOException Un error con el nombre de los diplomas fallidos,
+     * cuya causa es el error del primero.
+     */
+    private void checkFailures() throws IOException {
+        IOException error = null;
+        Iterator<Map.Entry<String, Throwable>> entries = failures.entrySet().iterator();
+
+        while (entries.hasNext()) {
+            Map.Entry<String, Throwable> entry = entries.next();
+            entries.remove();
+
+            if (error == null) {
+                error = new IOException("The diploma " + entry.getKey() + " could not be written",
+                        entry.getValue());
+            } else {
+                error.addSuppressed(new IOException("The diploma " + entry.getKey()
+                        + " could not be written", entry.getValue()));
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Regresa la ruta del archivo temporal de un diploma.
+     *
+     * @param name El nombre del diploma.
+     * @return La ruta del archivo temporal.
+     */
+    private Path temporaryOf(String name) {
+        return directory.resolve(name + TEMPORARY_SUFFIX);
+    }
+
+    /**
+     * Clase que agrupa un diploma con su nombre mientras espera en la cola.
+     */
+    private static class PendingWrite {
+
+        public final String name;
+        public final ByteBuffer pdf;
+        public final CompletableFuture<Void> saved = new CompletableFuture<>();
+
+        /**
+         * Crea un diploma pendiente.
+         *
+         * @param name El nombre del archivo del diploma.
+         * @param pdf Los bytes del PDF.
+         */
+        public PendingWrite(String name, ByteBuffer pdf) {
+            this.name = name;
+            this.pdf = pdf;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package edu.hop.diploma.output;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Define el destino donde se guardan los PDF de los diplomas construidos.
+ *
+ * <p>Las implementaciones deben poder usarse desde varios hilos al mismo
+ * tiempo, ya que los diplomas de un lote se construyen de manera
+ * concurrente.</p>
+ *
+ * @author jjsanche
+ */
+public interface DiplomaSink extends Closeable, Flushable {
+    /**
+     * Guarda el PDF de un diploma.
+     *
+     * @param name El nombre del archivo del diploma, sin ruta.
+     * @param pdf Un buffer con los bytes del PDF, listo para leerse.
+     * @throws IOException En caso de error al guardar el diploma.
+     */
+    public void write(String name, ByteBuffer pdf) throws IOException;
+
+    /**
+     * Guarda el PDF de un diploma e informa el resultado de ese diploma en
+     * particular. Los destinos que guardan cada diploma antes de regresar de
+     * {@link #write(String, ByteBuffer)} lo guardan en el hilo que invoca y
+     * regresan una tarea ya terminada.
+     *
+     * @param name El nombre del archivo del diploma, sin ruta.
+     * @param pdf Un buffer con los bytes del PDF, listo para leerse.
+     * @return Una tarea que termina cuando el diploma queda guardado o que
+     * termina con el error que impidió guardarlo.
+     */
+    public default CompletableFuture<Void> submit(String name, ByteBuffer pdf) {
+        CompletableFuture<Void> saved = new CompletableFuture<>();
+
+        try {
+            write(name, pdf);
+            saved.complete(null);
+        } catch (IOException | RuntimeException ex) {
+            saved.completeExceptionally(ex);
+        }
+
+        return saved;
+    }
+
+    /**
+     * Regresa la ubicación donde se guardó o se guardará el diploma con el
+     * nombre indicado.
+     *
+     * @param name El nombre del archivo del diploma, sin ruta.
+     * @return Una cadena que describe la ubicación del diploma dentro del
+     * destino.
+     */
+    public String locationOf(String name);
+
+    /**
+     * Indica si el destino ya contiene un diploma guardado en una ejecución
+     * anterior, de modo que pueda omitirse su construcción. Los destinos que
+     * se generan completos en cada ejecución, como los archivos ZIP, regresan
+     * siempre false.
+     *
+     * @param name El nombre del archivo del diploma, sin ruta.
+     * @return true si el diploma ya existe en el destino.
+     */
+    public default boolean contains(String name) {
+        return false;
+    }
+
+    /**
+     * Regresa el archivo donde el destino guarda el diploma con el nombre
+     * indicado, lo cuál permite verificar su contenido en una ejecución
+     * posterior. Los destinos que no guardan cada diploma en su propio
+     * archivo, como la memoria o los archivos ZIP y TAR, regresan null.
+     *
+     * @param name El nombre del archivo del diploma, sin ruta.
+     * @return La ruta del archivo del diploma o null si el destino no guarda
+     * los diplomas como archivos.
+     */
+    public default Path pathOf(String name) {
+        return null;
+    }
+
+    /**
+     * Espera a que los diplomas entregados hasta el momento queden guardados.
+     * Los destinos que guardan cada diploma antes de regresar de
+     * {@link #write(String, ByteBuffer)} no necesitan hacer nada.
+     *
+     * @throws IOException En caso de que algún diploma no haya podido
+     * guardarse.
+     */
+    @Override
+    public default void flush() throws IOException {
+    }
+}
@@ -0,0 +1,69 @@
+package edu.hop.diploma.output;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Destino que conserva los diplomas en memoria. Útil para pruebas o para
+ * lotes pequeños cuyo contenido se enviará a otro lugar.
+ *
+ * @author jjsanche
+ */
+public class MemorySink implements DiplomaSink {
+    private final Map<String, byte[]> diplomas = new ConcurrentHashMap<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(String name, ByteBuffer pdf) {
+        byte[] bytes = new byte[pdf.remaining()];
+        pdf.get(bytes);
+        diplomas.put(name, bytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String locationOf(String name) {
+        return name;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(String name) {
+        return diplomas.containsKey(name);
+    }
+
+    /**
+     * Regresa los bytes del diploma con el nombre indicado.
+     *
+     * @param name El nombre del archivo del diploma.
+     * @return Los bytes del PDF o null si no se ha guardado ese diploma.
+     */
+    public byte[] get(String name) {
+        return diplomas.get(name);
+    }
+
+    /**
+     * Regresa los nombres de todos los diplomas guardados.
+     *
+     * @return Un conjunto con los nombres de los diplomas.
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(diplomas.keySet());
+    }
+
+    /**
+     * No realiza ninguna acción; los diplomas permanecen disponibles.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,106 @@
+package edu.hop.diploma.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Destino que guarda cada diploma como un archivo dentro de subdirectorios
+ * calculados a partir del nombre del archivo, de modo que ningún directorio
+ * contenga demasiados archivos.
+ *
+ * <p>Con dos niveles, por ejemplo, el diploma "Ana.pdf" se guarda en una ruta
+ * como <code>raiz/3f/a1/Ana.pdf</code>. Los subdirectorios dependen sólo del
+ * nombre, por lo que un mismo diploma siempre se guarda en la misma ruta.</p>
+ *
+ * @author jjsanche
+ */
+public class ShardedDirectorySink implements DiplomaSink {
+    private final Path root;
+    private final int levels;
+
+    /**
+     * Crea un destino con dos niveles de subdirectorios.
+     *
+     * @param root El directorio raíz.
+     */
+    public ShardedDirectorySink(Path root) {
+        this(root, 2);
+    }
+
+    /**
+     * Crea un destino con el número de niveles de subdirectorios indicado.
+     * Cada nivel divide los archivos en 256 subdirectorios.
+     *
+     * @param root El directorio raíz.
+     * @param levels El número de niveles de subdirectorios, de 0 a 4.
+     */
+    public ShardedDirectorySink(Path root, int levels) {
+        if (levels < 0 || levels > 4) {
+            throw new IllegalArgumentException("levels must be between 0 and 4.");
+        }
+
+        this.root = root;
+        this.levels = levels;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(String name, ByteBuffer pdf) throws IOException {
+        Path file = pathOf(name);
+        Files.createDirectories(file.getParent());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (pdf.hasRemaining()) {
+                channel.write(pdf);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String locationOf(String name) {
+        return pathOf(name).toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(String name) {
+        return Files.isRegularFile(pathOf(name));
+    }
+
+    /**
+     * Regresa la ruta del archivo para el diploma con el nombre indicado.
+     *
+     * @param name El nombre del archivo del diploma.
+     * @return La ruta completa del archivo.
+     */
+    @Override
+    public Path pathOf(String name) {
+        int hash = name.hashCode() * 0x9E3779B9;
+        Path directory = root;
+
+        for (int level = 0; level < levels; level++) {
+            directory = directory.resolve(String.format("%02x", (hash >>> (24 - 8 * level)) & 0xFF));
+        }
+
+        return directory.resolve(name);
+    }
+
+    /**
+     * No realiza ninguna acción ya que cada archivo se cierra al escribirse.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,157 @@
+package edu.hop.diploma.output;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Destino que agrega cada diploma como una entrada de un archivo TAR (formato
+ * ustar) conforme se construye, sin guardar archivos intermedios.
+ *
+ * <p>Las entradas se escriben una a la vez; los hilos que terminan un diploma
+ * mientras otro se escribe esperan su turno.</p>
+ *
+ * @author jjsanche
+ */
+public class TarSink implements DiplomaSink {
+    private static final int BLOCK_SIZE = 512;
+    private static final byte[] PADDING = new byte[BLOCK_SIZE];
+
+    private final OutputStream output;
+
+    /**
+     * Crea un archivo TAR en la ruta indicada.
+     *
+     * @param file La ruta del archivo TAR.
+     * @throws IOException En caso de no poder crear el archivo.
+     */
+    public TarSink(Path file) throws IOException {
+        this(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+    }
+
+    /**
+     * Crea un TAR que se escribe en el flujo indicado.
+     *
+     * @param output El flujo donde se escribirá el TAR. Se cierra al cerrar
+     * este destino.
+     */
+    public TarSink(OutputStream output) {
+        this.output = output;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(String name, ByteBuffer pdf) throws IOException {
+        int length = pdf.remaining();
+        byte[] header = createHeader(name, length, System.currentTimeMillis() / 1000);
+        byte[] bytes;
+        int offset;
+
+        if (pdf.hasArray()) {
+            bytes = pdf.array();
+            offset = pdf.arrayOffset() + pdf.position();
+        } else {
+            bytes = new byte[length];
+            offset = 0;
+            pdf.duplicate().get(bytes);
+        }
+
+        synchronized (output) {
+            output.write(header);
+            output.write(bytes, offset, length);
+            output.write(PADDING, 0, (BLOCK_SIZE - length % BLOCK_SIZE) % BLOCK_SIZE);
+        }
+
+        pdf.position(pdf.limit());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String locationOf(String name) {
+        return name;
+    }
+
+    /**
+     * Escribe los dos bloques vacíos que marcan el fin del TAR y cierra el
+     * flujo.
+     *
+     * @throws IOException En caso de error al cerrar el archivo.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (output) {
+            output.write(PADDING);
+            output.write(PADDING);
+            output.close();
+        }
+    }
+
+    /**
+     * Crea el encabezado ustar de una entrada.
+     *
+     * @param name El nombre de la entrada.
+     * @param size El tamaño de la entrada en bytes.
+     * @param modified La fecha de modificación en segundos.
+     * @return Un bloque de 512 bytes con el encabezado.
+     * @throws IOException En caso de que el nombre exceda los 100 bytes que
+     * permite el formato.
+     */
+    private static byte[] createHeader(String name, long size, long modified) throws IOException {
+        byte[] header = new byte[BLOCK_SIZE];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+        if (nameBytes.length > 100) {
+            throw new IOException("Entry name is longer than 100 bytes: " + name);
+        }
+
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, modified);
+        header[156] = '0';
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+
+        long checksum = 0;
+
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+
+        putOctal(header, 148, 7, checksum);
+
+        return header;
+    }
+
+    /**
+     * Escribe un número en octal terminado en un byte nulo.
+     *
+     * @param header El encabezado donde se escribirá el número.
+     * @param offset La posición del campo.
+     * @param length La longitud del campo incluyendo el byte nulo.
+     * @param value El número a escribir.
+     */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+
+        for (int i = 0; i < length - 1; i++) {
+            int digit = octal.length() - (length - 1) + i;
+            header[offset + i] = (byte) (digit >= 0 ? octal.charAt(digit) : '0');
+        }
+
+        header[offset + length - 1] = 0;
+    }
+}
@@ -0,0 +1,107 @@
+package edu.hop.diploma.output;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Destino que agrega cada diploma como una entrada de un archivo ZIP conforme
+ * se construye, sin guardar archivos intermedios.
+ *
+ * <p>Las entradas se escriben una a la vez; los hilos que terminan un diploma
+ * mientras otro se escribe esperan su turno.</p>
+ *
+ * @author jjsanche
+ */
+public class ZipSink implements DiplomaSink {
+    private final ZipOutputStream zip;
+    private final boolean compress;
+
+    /**
+     * Crea un archivo ZIP en la ruta indicada. Las entradas se guardan sin
+     * comprimir debido a que el contenido de los PDF ya está comprimido.
+     *
+     * @param file La ruta del archivo ZIP.
+     * @throws IOException En caso de no poder crear el archivo.
+     */
+    public ZipSink(Path file) throws IOException {
+        this(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024), false);
+    }
+
+    /**
+     * Crea un ZIP que se escribe en el flujo indicado.
+     *
+     * @param output El flujo donde se escribirá el ZIP. Se cierra al cerrar
+     * este destino.
+     * @param compress true para comprimir cada entrada, false para guardarlas
+     * sin comprimir.
+     */
+    public ZipSink(OutputStream output, boolean compress) {
+        this.zip = new ZipOutputStream(output);
+        this.compress = compress;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(String name, ByteBuffer pdf) throws IOException {
+        byte[] bytes;
+        int offset;
+        int length = pdf.remaining();
+
+        if (pdf.hasArray()) {
+            bytes = pdf.array();
+            offset = pdf.arrayOffset() + pdf.position();
+        } else {
+            bytes = new byte[length];
+            offset = 0;
+            pdf.duplicate().get(bytes);
+        }
+
+        ZipEntry entry = new ZipEntry(name);
+
+        if (!compress) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes, offset, length);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(length);
+            entry.setCompressedSize(length);
+            entry.setCrc(crc.getValue());
+        }
+
+        synchronized (zip) {
+            zip.putNextEntry(entry);
+            zip.write(bytes, offset, length);
+            zip.closeEntry();
+        }
+
+        pdf.position(pdf.limit());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String locationOf(String name) {
+        return name;
+    }
+
+    /**
+     * Escribe el directorio central del ZIP y cierra el flujo.
+     *
+     * @throws IOException En caso de error al cerrar el archivo.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (zip) {
+            zip.close();
+        }
+    }
+}
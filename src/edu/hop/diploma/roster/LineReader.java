@@ -0,0 +1,170 @@
+package edu.hop.diploma.roster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Lee las líneas de un rango de bytes de un archivo UTF-8 usando lecturas
+ * grandes del canal, sin cargar el archivo completo en memoria.
+ *
+ * <p>Al rango le pertenecen las líneas que comienzan dentro de él: si el
+ * rango no inicia al principio del archivo se descarta la línea incompleta
+ * inicial, y la última línea se lee completa aunque termine después del
+ * rango. Así, al dividir un archivo en rangos contiguos cada línea se lee
+ * exactamente una vez.</p>
+ *
+ * @author jjsanche
+ */
+final class LineReader {
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final long end;
+    private final ByteBuffer buffer;
+    private long readPosition;
+    private long offset;
+    private long lineOffset;
+    private byte[] line = new byte[256];
+
+    /**
+     * Crea un lector para el rango indicado. El canal no se cierra al
+     * terminar.
+     *
+     * @param channel El canal del archivo.
+     * @param start La posición donde inicia el rango.
+     * @param end La posición siguiente al final del rango.
+     * @param bufferSize El tamaño de cada lectura del canal.
+     * @throws IOException En caso de error al leer el archivo.
+     */
+    LineReader(FileChannel channel, long start, long end, int bufferSize) throws IOException {
+        this.channel = channel;
+        this.end = end;
+        buffer = ByteBuffer.allocate(bufferSize);
+        buffer.flip();
+
+        if (start > 0) {
+            //Si el byte anterior es un fin de línea, el rango inicia justo en
+            //una línea; de lo contrario se descarta hasta el siguiente.
+            readPosition = offset = start - 1;
+            skipLine();
+        } else if (end > 0 && fill() && buffer.remaining() >= 3
+                && (buffer.get(0) & 0xFF) == 0xEF && (buffer.get(1) & 0xFF) == 0xBB
+                && (buffer.get(2) & 0xFF) == 0xBF) {
+            buffer.position(3);
+            offset = 3;
+        }
+    }
+
+    /**
+     * Lee la siguiente línea del rango, sin el fin de línea.
+     *
+     * @return La línea o null si no quedan líneas en el rango.
+     * @throws IOException En caso de error al leer el archivo.
+     */
+    String readLine() throws IOException {
+        return offset < end ? readContinuation() : null;
+    }
+
+    /**
+     * Lee la siguiente línea aunque inicie después del rango. Se usa para
+     * completar un registro que continúa en varias líneas.
+     *
+     * @return La línea o null si se llegó al final del archivo.
+     * @throws IOException En caso de error al leer el archivo.
+     */
+    String readContinuation() throws IOException {
+        lineOffset = offset;
+        int length = 0;
+        boolean terminated = false;
+
+        while (!terminated && (buffer.hasRemaining() || fill())) {
+            byte[] array = buffer.array();
+            int position = buffer.position();
+            int limit = buffer.limit();
+            int i = position;
+
+            while (i < limit && array[i] != '\n') {
+                i++;
+            }
+
+            int count = i - position;
+
+            if (length + count > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+            }
+
+            System.arraycopy(array, position, line, length, count);
+            length += count;
+            terminated = i < limit;
+            buffer.position(terminated ? i + 1 : limit);
+            offset += terminated ? count + 1 : count;
+        }
+
+        if (!terminated && length == 0) {
+            return null;
+        }
+
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return La posición en el archivo donde inicia la última línea leída.
+     */
+    long getLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * Descarta los bytes hasta el siguiente fin de línea, incluyéndolo.
+     *
+     * @throws IOException En caso de error al leer el archivo.
+     */
+    private void skipLine() throws IOException {
+        while (buffer.hasRemaining() || fill()) {
+            byte[] array = buffer.array();
+            int position = buffer.position();
+            int limit = buffer.limit();
+            int i = position;
+
+            while (i < limit && array[i] != '\n') {
+                i++;
+            }
+
+            offset += i - position;
+
+            if (i < limit) {
+                buffer.position(i + 1);
+                offset++;
+                return;
+            }
+
+            buffer.position(limit);
+        }
+    }
+
+    /**
+     * Lee del canal el siguiente bloque del archivo.
+     *
+     * @return false si se llegó al final del archivo.
+     * @throws IOException En caso de error al leer el archivo.
+     */
+    private boolean fill() throws IOException {
+        buffer.clear();
+        int read = channel.read(buffer, readPosition);
+
+        if (read > 0) {
+            readPosition += read;
+        }
+
+        buffer.flip();
+
+        return read > 0;
+    }
+}
@@ -0,0 +1,36 @@
+package edu.hop.diploma.roster;
+
+import java.nio.file.Path;
+
+/**
+ * Formatos de archivo de las listas de participantes que puede leer
+ * {@link RosterReader}.
+ *
+ * @author jjsanche
+ */
+public enum RosterFormat {
+    /**
+     * Valores separados por comas. La primera línea contiene los nombres de
+     * las columnas y los valores pueden ir entre comillas dobles.
+     */
+    CSV,
+    /**
+     * Un objeto JSON plano por línea, cuyas llaves son los nombres de las
+     * columnas.
+     */
+    JSON_LINES;
+
+    /**
+     * Determina el formato de un archivo a partir de su extensión.
+     *
+     * @param file El archivo de la lista.
+     * @return JSON_LINES para las extensiones .jsonl, .ndjson y .json, y CSV
+     * para cualquier otra.
+     */
+    public static RosterFormat of(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+
+        return name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")
+                ? JSON_LINES : CSV;
+    }
+}
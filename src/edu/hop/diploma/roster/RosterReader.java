@@ -0,0 +1,585 @@
+package edu.hop.diploma.roster;
+
+import edu.hop.diploma.builder.Diploma;
+import edu.hop.diploma.builder.InvalidRecordException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lee la lista de participantes de un archivo CSV o JSON-lines y crea un
+ * diploma por cada registro. Los registros se leen conforme se solicitan, por
+ * lo que la lista completa nunca está en memoria y puede entregarse
+ * directamente a un {@code DiplomaBatchBuilder}.
+ *
+ * <p>Las columnas se asignan a los campos del diploma por su nombre, sin
+ * distinguir mayúsculas ni guiones: to, from, motive, hours, date (con
+ * formato yyyy-MM-dd), place y fileName. Las demás columnas se ignoran y los
+ * valores vacíos conservan el valor del diploma recién creado.</p>
+ *
+ * <p>Para procesar un archivo grande en paralelo, {@link #split(Path, int)}
+ * lo divide en rangos de bytes y cada rango se lee con su propio lector desde
+ * un hilo distinto. Cada registro pertenece al rango donde comienza. En este
+ * modo los valores CSV entre comillas no deben contener cambios de línea.</p>
+ *
+ * @param <D> El tipo de diploma que se crea por cada registro.
+ * @author jjsanche
+ */
+public final class RosterReader<D extends Diploma> implements Iterable<D>, Closeable {
+    private static final int HEADER_BUFFER_SIZE = 8 * 1024;
+
+    private final FileChannel channel;
+    private final LineReader lines;
+    private final RosterFormat format;
+    private final Supplier<? extends D> factory;
+    private final Field[] columns;
+    private final List<String> values = new ArrayList<>();
+    private boolean iterating;
+    private long records;
+
+    /**
+     * Abre una lista de participantes completa, determinando su formato por
+     * la extensión del archivo.
+     *
+     * @param <D> El tipo de diploma que se crea por cada registro.
+     * @param file El archivo de la lista.
+     * @param factory Crea el diploma de cada registro con los valores que no
+     * vienen en la lista, como los bordes o el tamaño de la página.
+     * @return El lector de la lista. Quien invoca es responsable de cerrarlo.
+     * @throws IOException En caso de no poder abrir el archivo o leer los
+     * nombres de las columnas.
+     */
+    public static <D extends Diploma> RosterReader<D> open(Path file, Supplier<? extends D> factory)
+            throws IOException {
+        return open(file, RosterFormat.of(file), factory, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Abre un rango de bytes de una lista de participantes. Se leen los
+     * registros que comienzan dentro del rango; en el formato CSV los nombres
+     * de las columnas se leen siempre de la primera línea del archivo.
+     *
+     * @param <D> El tipo de diploma que se crea por cada registro.
+     * @param file El archivo de la lista.
+     * @param format El formato del archivo.
+     * @param factory Crea el diploma de cada registro.
+     * @param start La posición donde inicia el rango.
+     * @param end La posición siguiente al final del rango.
+     * @return El lector del rango. Quien invoca es responsable de cerrarlo.
+     * @throws IOException En caso de no poder abrir el archivo o leer los
+     * nombres de las columnas.
+     * @see #split(Path, int)
+     */
+    public static <D extends Diploma> RosterReader<D> open(Path file, RosterFormat format,
+            Supplier<? extends D> factory, long start, long end) throws IOException {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid byte range " + start + "-" + end + ".");
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        try {
+            return new RosterReader<>(channel, format, factory, start, end);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Divide un archivo en rangos de bytes de tamaño similar para leerlos en
+     * paralelo con {@link #open(Path, RosterFormat, Supplier, long, long)}.
+     * Los límites no necesitan coincidir con los cambios de línea.
+     *
+     * @param file El archivo de la lista.
+     * @param parts El número de rangos.
+     * @return Un arreglo con parts + 1 posiciones; el rango i va de la
+     * posición i a la i + 1.
+     * @throws IOException En caso de no poder leer el tamaño del archivo.
+     */
+    public static long[] split(Path file, int parts) throws IOException {
+        if (parts <= 0) {
+            throw new IllegalArgumentException("parts must be greater than 0.");
+        }
+
+        long size = Files.size(file);
+        long[] bounds = new long[parts + 1];
+
+        for (int i = 1; i <= parts; i++) {
+            bounds[i] = size / parts * i + Math.min(i, size % parts);
+        }
+
+        return bounds;
+    }
+
+    /**
+     * Prepara la lectura del rango y, en el formato CSV, lee los nombres de
+     * las columnas.
+     *
+     * @param channel El canal del archivo.
+     * @param format El formato del archivo.
+     * @param factory Crea el diploma de cada registro.
+     * @param start La posición donde inicia el rango.
+     * @param end La posición siguiente al final del rango.
+     * @throws IOException En caso de error al leer el archivo.
+     */
+    private RosterReader(FileChannel channel, RosterFormat format, Supplier<? extends D> factory,
+            long start, long end) throws IOException {
+        this.channel = channel;
+        this.format = format;
+        this.factory = factory;
+
+        if (format == RosterFormat.CSV) {
+            LineReader header = new LineReader(channel, 0, 1, HEADER_BUFFER_SIZE);
+            String names = header.readContinuation();
+
+            if (names == null) {
+                throw new IOException("The roster has no header line.");
+            }
+
+            parseCsv(names, header, values);
+            columns = new Field[values.size()];
+
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = Field.of(values.get(i));
+            }
+
+            //El encabezado no es un registro aunque el rango inicie en 0.
+            lines = new LineReader(channel, Math.max(start, 1), end, LineReader.BUFFER_SIZE);
+        } else {
+            columns = null;
+            lines = new LineReader(channel, start, end, LineReader.BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Regresa los diplomas del rango. Sólo puede recorrerse una vez; si
+     * ocurre un error de lectura, el iterador lanza
+     * {@link UncheckedIOException}. Si un registro no es válido lanza
+     * {@link InvalidRecordException} y puede seguir usándose para leer los
+     * registros siguientes.
+     *
+     * @return El iterador de los diplomas.
+     */
+    @Override
+    public Iterator<D> iterator() {
+        if (iterating) {
+            throw new IllegalStateException("The roster can only be iterated once.");
+        }
+
+        iterating = true;
+
+        return new Iterator<D>() {
+            private D next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = readDiploma();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+
+                return next != null;
+            }
+
+            @Override
+            public D next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                D diploma = next;
+                next = null;
+
+                return diploma;
+            }
+        };
+    }
+
+    /**
+     * Regresa los diplomas del rango como un flujo secuencial que cierra el
+     * archivo al cerrarse.
+     *
+     * @return El flujo de los diplomas.
+     */
+    public Stream<D> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+    }
+
+    /**
+     * @return El número de registros leídos hasta el momento.
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Lee el siguiente registro y crea su diploma. Las líneas vacías se
+     * omiten.
+     *
+     * @return El diploma o null si no quedan registros en el rango.
+     * @throws IOException En caso de error al leer el archivo.
+     * @throws InvalidRecordException En caso de que el registro no sea
+     * válido. El registro ya se leyó, por lo que la siguiente llamada
+     * continúa con el registro siguiente.
+     */
+    private D readDiploma() throws IOException {
+        String line;
+
+        do {
+            line = lines.readLine();
+
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+
+        long offset = lines.getLineOffset();
+        D diploma = factory.get();
+
+        try {
+            if (format == RosterFormat.CSV) {
+                parseCsv(line, lines, values);
+
+                for (int i = 0; i < values.size() && i < columns.length; i++) {
+                    if (columns[i] != null) {
+                        columns[i].apply(diploma, values.get(i));
+                    }
+                }
+            } else {
+                JsonObject object = new JsonObject(line);
+
+                while (object.next()) {
+                    Field field = Field.of(object.key);
+
+                    if (field != null && object.value != null) {
+                        field.apply(diploma, object.value);
+                    }
+                }
+            }
+        } catch (IllegalArgumentException | DateTimeParseException ex) {
+            throw new InvalidRecordException(offset,
+                    "Invalid roster record at byte " + offset + ": " + ex.getMessage(), ex);
+        }
+
+        records++;
+
+        return diploma;
+    }
+
+    /**
+     * Separa un registro CSV en sus valores. Si una línea termina dentro de
+     * un valor entre comillas, el registro continúa en la siguiente línea.
+     *
+     * @param line La primera línea del registro.
+     * @param lines El lector de donde se obtienen las líneas siguientes.
+     * @param values La lista donde se guardarán los valores.
+     * @throws IOException En caso de error al leer el archivo o de que el
+     * archivo termine dentro de un valor entre comillas.
+     */
+    private static void parseCsv(String line, LineReader lines, List<String> values) throws IOException {
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        values.clear();
+
+        while (true) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+
+                if (quoted) {
+                    if (c != '"') {
+                        value.append(c);
+                    } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else {
+                    value.append(c);
+                }
+            }
+
+            if (!quoted) {
+                values.add(value.toString());
+                return;
+            }
+
+            line = lines.readContinuation();
+
+            if (line == null) {
+                throw new IOException("Unterminated quoted value at end of roster.");
+            }
+
+            value.append('\n');
+        }
+    }
+
+    /**
+     * Campos del diploma que pueden leerse de la lista.
+     */
+    private enum Field {
+        TO, FROM, MOTIVE, HOURS, DATE, PLACE, FILE_NAME;
+
+        /**
+         * Busca el campo que corresponde al nombre de una columna.
+         *
+         * @param column El nombre de la columna.
+         * @return El campo o null si la columna no corresponde a ninguno.
+         */
+        static Field of(String column) {
+            switch (column.trim().replace("_", "").replace("-", "").toLowerCase(Locale.ROOT)) {
+                case "to":
+                    return TO;
+                case "from":
+                    return FROM;
+                case "motive":
+                    return MOTIVE;
+                case "hours":
+                    return HOURS;
+                case "date":
+                    return DATE;
+                case "place":
+                    return PLACE;
+                case "filename":
+                    return FILE_NAME;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Asigna el valor de la columna al diploma.
+         *
+         * @param diploma El diploma del registro.
+         * @param value El valor de la columna. Los valores vacíos se omiten.
+         */
+        void apply(Diploma diploma, String value) {
+            if (value.isEmpty()) {
+                return;
+            }
+
+            switch (this) {
+                case TO:
+                    diploma.setTo(value);
+                    break;
+                case FROM:
+                    diploma.setFrom(value);
+                    break;
+                case MOTIVE:
+                    diploma.setMotive(value);
+                    break;
+                case HOURS:
+                    diploma.setHours(Integer.parseInt(value.trim()));
+                    break;
+                case DATE:
+                    diploma.setDate(LocalDate.parse(value.trim()));
+                    break;
+                case PLACE:
+                    diploma.setPlace(value);
+                    break;
+                case FILE_NAME:
+                    diploma.setFileName(value);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Recorre las llaves y valores de un objeto JSON plano escrito en una sola
+     * línea. Los valores que no son cadenas se conservan como texto y null
+     * se representa como null.
+     */
+    private static class JsonObject {
+
+        public final String text;
+        public int position;
+        public String key;
+        public String value;
+
+        /**
+         * Verifica que la línea inicie un objeto.
+         *
+         * @param text La línea con el objeto.
+         */
+        public JsonObject(String text) {
+            this.text = text;
+            skipSpaces();
+            expect('{');
+        }
+
+        /**
+         * Lee la siguiente llave y su valor.
+         *
+         * @return false si el objeto terminó.
+         */
+        public boolean next() {
+            skipSpaces();
+
+            if (peek() == '}') {
+                position++;
+                skipSpaces();
+
+                if (position != text.length()) {
+                    throw new IllegalArgumentException("Unexpected text after the object.");
+                }
+
+                return false;
+            }
+
+            if (key != null) {
+                expect(',');
+                skipSpaces();
+            }
+
+            key = readString();
+            skipSpaces();
+            expect(':');
+            skipSpaces();
+
+            if (peek() == '"') {
+                value = readString();
+            } else {
+                int start = position;
+
+                while (position < text.length() && ",}".indexOf(text.charAt(position)) < 0) {
+                    position++;
+                }
+
+                value = text.substring(start, position).trim();
+
+                if (value.startsWith("{") || value.startsWith("[")) {
+                    throw new IllegalArgumentException("Nested values are not supported: " + key);
+                } else if (value.isEmpty()) {
+                    throw new IllegalArgumentException("Missing value for " + key);
+                } else if (value.equals("null")) {
+                    value = null;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Lee una cadena entre comillas, resolviendo sus secuencias de escape.
+         *
+         * @return El contenido de la cadena.
+         */
+        private String readString() {
+            expect('"');
+            StringBuilder builder = new StringBuilder();
+
+            while (true) {
+                char c = peek();
+                position++;
+
+                if (c == '"') {
+                    return builder.toString();
+                } else if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+
+                char escaped = peek();
+                position++;
+
+                switch (escaped) {
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("Invalid unicode escape.");
+                        }
+
+                        builder.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        builder.append(escaped);
+                }
+            }
+        }
+
+        /**
+         * @return El caracter en la posición actual.
+         */
+        private char peek() {
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of line.");
+            }
+
+            return text.charAt(position);
+        }
+
+        /**
+         * Avanza sobre el caracter indicado.
+         *
+         * @param c El caracter esperado en la posición actual.
+         */
+        private void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at column " + (position + 1) + ".");
+            }
+
+            position++;
+        }
+
+        /**
+         * Avanza sobre los espacios en blanco.
+         */
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
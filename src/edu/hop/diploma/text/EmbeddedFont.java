@@ -0,0 +1,356 @@
+package edu.hop.diploma.text;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.fontbox.ttf.CMAPEncodingEntry;
+import org.apache.fontbox.ttf.CMAPTable;
+import org.apache.fontbox.ttf.HeaderTable;
+import org.apache.fontbox.ttf.HorizontalHeaderTable;
+import org.apache.fontbox.ttf.OS2WindowsMetricsTable;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+
+/**
+ * Fuente TrueType leída de un archivo para incrustarse en los diplomas. A
+ * diferencia de las 14 fuentes estándar, permite dibujar cualquier caracter
+ * Unicode del plano básico que exista en la fuente.
+ *
+ * <p>Cada archivo se lee y se analiza una sola vez por proceso, y la fuente
+ * resultante se comparte entre todos los documentos. En cada documento sólo
+ * se incrustan los glifos que realmente se dibujaron, mediante un
+ * {@link FontSubset}. La fuente no cambia una vez creada y puede usarse desde
+ * varios hilos.</p>
+ *
+ * @author jjsanche
+ */
+public final class EmbeddedFont {
+    private static final ConcurrentMap<String, EmbeddedFont> FONTS = new ConcurrentHashMap<>();
+
+    private final String fileName;
+    private final String baseFont;
+    private final byte[] data;
+    private final byte[] digest;
+    private final Map<String, int[]> tables;
+    private final CMAPEncodingEntry unicodeMap;
+    private final float[] glyphWidths;
+    private final float[] boundingBox;
+    private final float ascent;
+    private final float descent;
+    private final float capHeight;
+    private final float italicAngle;
+    private final boolean fixedPitch;
+
+    /**
+     * Regresa la fuente del archivo indicado, leyéndola la primera vez que se
+     * solicita.
+     *
+     * @param fileName La ruta del archivo TrueType (.ttf) o OpenType con
+     * contornos TrueType.
+     * @return La fuente compartida del archivo.
+     * @throws IOException En caso de no poder leer el archivo o de que la
+     * fuente no tenga un mapa de caracteres Unicode.
+     */
+    public static EmbeddedFont load(String fileName) throws IOException {
+        String path = new File(fileName).getCanonicalPath();
+        EmbeddedFont font = FONTS.get(path);
+
+        if (font == null) {
+            font = new EmbeddedFont(path);
+            EmbeddedFont previous = FONTS.putIfAbsent(path, font);
+
+            if (previous != null) {
+                font = previous;
+            }
+        }
+
+        return font;
+    }
+
+    /**
+     * Lee la fuente y copia sus métricas a tablas propias.
+     *
+     * @param fileName La ruta canónica del archivo.
+     * @throws IOException En caso de no poder leer el archivo.
+     */
+    private EmbeddedFont(String fileName) throws IOException {
+        this.fileName = fileName;
+
+        //La fuente se lee completa a memoria para que los subconjuntos puedan
+        //crearse desde varios hilos sin compartir un archivo abierto.
+        data = Files.readAllBytes(Paths.get(fileName));
+        digest = digestOf(data);
+        tables = readTableDirectory(data);
+
+        if (!tables.containsKey("glyf") || !tables.containsKey("loca")) {
+            throw new IOException("Only fonts with TrueType outlines are supported: " + fileName);
+        }
+
+        TrueTypeFont trueTypeFont = new TTFParser().parseTTF(new ByteArrayInputStream(data));
+        unicodeMap = findUnicodeMap(trueTypeFont.getCMAP());
+
+        if (unicodeMap == null) {
+            throw new IOException("The font has no Unicode character map: " + fileName);
+        }
+
+        HeaderTable header = trueTypeFont.getHeader();
+        HorizontalHeaderTable horizontalHeader = trueTypeFont.getHorizontalHeader();
+        OS2WindowsMetricsTable os2 = trueTypeFont.getOS2Windows();
+        float scale = 1000f / header.getUnitsPerEm();
+        String name = trueTypeFont.getNaming() != null ? trueTypeFont.getNaming().getPSName() : null;
+
+        baseFont = name != null ? name.replace(' ', '-') : new File(fileName).getName().replaceFirst("\\.[^.]*$", "");
+        glyphWidths = new float[trueTypeFont.getNumberOfGlyphs()];
+
+        for (int i = 0; i < glyphWidths.length; i++) {
+            glyphWidths[i] = trueTypeFont.getAdvanceWidth(i) * scale;
+        }
+
+        boundingBox = new float[] {header.getXMin() * scale, header.getYMin() * scale,
+            header.getXMax() * scale, header.getYMax() * scale};
+        ascent = horizontalHeader.getAscender() * scale;
+        descent = horizontalHeader.getDescender() * scale;
+        capHeight = os2 != null && os2.getTypoAscender() > 0 ? os2.getTypoAscender() * scale : ascent;
+        italicAngle = trueTypeFont.getPostScript() != null ? trueTypeFont.getPostScript().getItalicAngle() : 0;
+        fixedPitch = trueTypeFont.getPostScript() != null && trueTypeFont.getPostScript().getIsFixedPitch() != 0;
+    }
+
+    /**
+     * Calcula el hash SHA-256 del contenido de la fuente.
+     *
+     * @param data El contenido del archivo.
+     * @return El hash.
+     */
+    private static byte[] digestOf(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException ex) {
+            //Toda JVM debe incluir SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Lee el directorio de tablas de la fuente.
+     *
+     * @param data El contenido del archivo.
+     * @return La posición y el tamaño de cada tabla, por su etiqueta.
+     * @throws IOException En caso de que el archivo no sea una fuente
+     * TrueType.
+     */
+    private static Map<String, int[]> readTableDirectory(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        Map<String, int[]> directory = new HashMap<>();
+
+        if (data.length < 12 || buffer.getInt(0) == 0x74746366) {
+            throw new IOException("Not a single TrueType font.");
+        }
+
+        int count = buffer.getShort(4) & 0xFFFF;
+
+        for (int i = 0; i < count; i++) {
+            int entry = 12 + i * 16;
+            String tag = new String(data, entry, 4, "US-ASCII");
+            int offset = buffer.getInt(entry + 8);
+            int length = buffer.getInt(entry + 12);
+
+            if (offset < 0 || length < 0 || offset + length > data.length) {
+                throw new IOException("Invalid table " + tag);
+            }
+
+            directory.put(tag, new int[] {offset, length});
+        }
+
+        return directory;
+    }
+
+    /**
+     * Busca el mapa de caracteres Unicode de Windows.
+     *
+     * @param cmap La tabla de mapas de caracteres de la fuente.
+     * @return El mapa Unicode o null si la fuente no tiene uno.
+     */
+    private static CMAPEncodingEntry findUnicodeMap(CMAPTable cmap) {
+        if (cmap == null) {
+            return null;
+        }
+
+        for (CMAPEncodingEntry entry : cmap.getCmaps()) {
+            if (entry.getPlatformId() == CMAPTable.PLATFORM_WINDOWS
+                    && entry.getPlatformEncodingId() == CMAPTable.ENCODING_UNICODE) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return La ruta canónica del archivo de la fuente.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Regresa el hash SHA-256 del contenido con el cuál se leyó la fuente. A
+     * diferencia de la ruta, cambia si el archivo se reemplaza por otra
+     * fuente.
+     *
+     * @return Una copia del hash.
+     */
+    public byte[] getDigest() {
+        return digest.clone();
+    }
+
+    /**
+     * @return El nombre PostScript de la fuente.
+     */
+    public String getBaseFont() {
+        return baseFont;
+    }
+
+    /**
+     * Regresa el glifo que corresponde a un caracter.
+     *
+     * @param codePoint El código Unicode del caracter.
+     * @return El índice del glifo o 0 si la fuente no contiene el caracter.
+     */
+    public int getGlyphId(int codePoint) {
+        return codePoint <= 0xFFFF ? unicodeMap.getGlyphId(codePoint) : 0;
+    }
+
+    /**
+     * Regresa el ancho de un glifo en milésimas del tamaño de la fuente.
+     *
+     * @param glyphId El índice del glifo.
+     * @return El ancho del glifo.
+     */
+    public float getGlyphWidth(int glyphId) {
+        return glyphWidths[glyphId < glyphWidths.length ? glyphId : 0];
+    }
+
+    /**
+     * Regresa el ancho de una cadena en milésimas del tamaño de la fuente.
+     *
+     * @param text La cadena a medir.
+     * @return El ancho de la cadena.
+     */
+    public float getStringWidth(String text) {
+        float width = 0;
+
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            width += getGlyphWidth(getGlyphId(codePoint));
+            i += Character.charCount(codePoint);
+        }
+
+        return width;
+    }
+
+    /**
+     * Regresa el ancho de una cadena dibujada con el tamaño de fuente indicado.
+     *
+     * @param text La cadena a medir.
+     * @param fontSize El tamaño de la fuente.
+     * @return El ancho de la cadena en puntos.
+     */
+    public float getWidth(String text, float fontSize) {
+        return getStringWidth(text) / 1000 * fontSize;
+    }
+
+    /**
+     * Regresa la altura de la caja de la fuente para el tamaño indicado.
+     *
+     * @param fontSize El tamaño de la fuente.
+     * @return La altura en puntos.
+     */
+    public float getHeight(float fontSize) {
+        return (boundingBox[3] - boundingBox[1]) / 1000 * fontSize;
+    }
+
+    /**
+     * Crea un subconjunto vacío de la fuente para un documento.
+     *
+     * @return Un subconjunto nuevo.
+     */
+    public FontSubset createSubset() {
+        return new FontSubset(this);
+    }
+
+    /**
+     * Regresa una copia de una tabla de la fuente.
+     *
+     * @param tag La etiqueta de la tabla.
+     * @return Los bytes de la tabla o null si la fuente no la contiene.
+     */
+    byte[] getTable(String tag) {
+        int[] table = tables.get(tag);
+
+        return table != null ? Arrays.copyOfRange(data, table[0], table[0] + table[1]) : null;
+    }
+
+    /**
+     * @return El número de glifos de la fuente.
+     */
+    int getGlyphCount() {
+        return glyphWidths.length;
+    }
+
+    /**
+     * @return La caja de la fuente en milésimas: x y y mínimas y máximas.
+     */
+    float[] getBoundingBox() {
+        return boundingBox.clone();
+    }
+
+    /**
+     * @return El ascendente de la fuente en milésimas.
+     */
+    float getAscent() {
+        return ascent;
+    }
+
+    /**
+     * @return El descendente de la fuente en milésimas.
+     */
+    float getDescent() {
+        return descent;
+    }
+
+    /**
+     * @return La altura de las mayúsculas en milésimas.
+     */
+    float getCapHeight() {
+        return capHeight;
+    }
+
+    /**
+     * @return El ángulo de las cursivas en grados.
+     */
+    float getItalicAngle() {
+        return italicAngle;
+    }
+
+    /**
+     * @return true si todos los glifos tienen el mismo ancho.
+     */
+    boolean isFixedPitch() {
+        return fixedPitch;
+    }
+
+    @Override
+    public String toString() {
+        return baseFont;
+    }
+}
@@ -0,0 +1,122 @@
+package edu.hop.diploma.text;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Métricas de una fuente guardadas en tablas de tipo float para medir textos
+ * sin consultar los mapas de métricas de PDFBox.
+ *
+ * <p>El ancho de cada código de la codificación de la fuente (0 a 255) se
+ * copia una sola vez por proceso, junto con la altura de la caja de la
+ * fuente. Los caracteres fuera de ese rango se miden como '?', igual que lo
+ * hace {@link PDFont#getStringWidth(String)}, por lo que los resultados son
+ * idénticos a los de PDFBox. Las métricas no cambian una vez creadas y pueden
+ * usarse desde varios hilos.</p>
+ *
+ * @author jjsanche
+ */
+public final class FontMetrics {
+    private static final ConcurrentMap<PDFont, FontMetrics> METRICS = new ConcurrentHashMap<>();
+    private static final int CODES = 256;
+    private static final int REPLACEMENT = '?';
+
+    private final float[] widths;
+    private final float boundingBoxHeight;
+
+    /**
+     * Regresa las métricas de la fuente indicada, creándolas la primera vez
+     * que se solicitan.
+     *
+     * @param font La fuente de la cuál se quieren las métricas.
+     * @return Las métricas de la fuente.
+     * @throws IOException En caso de no poder leer las métricas de la fuente.
+     */
+    public static FontMetrics of(PDFont font) throws IOException {
+        FontMetrics metrics = METRICS.get(font);
+
+        if (metrics == null) {
+            metrics = new FontMetrics(font);
+            FontMetrics previous = METRICS.putIfAbsent(font, metrics);
+
+            if (previous != null) {
+                metrics = previous;
+            }
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Copia las métricas de la fuente a tablas propias.
+     *
+     * @param font La fuente de la cuál se copiarán las métricas.
+     * @throws IOException En caso de no poder leer las métricas de la fuente.
+     */
+    private FontMetrics(PDFont font) throws IOException {
+        widths = new float[CODES];
+        byte[] code = new byte[1];
+
+        //Las fuentes estándar son instancias compartidas y PDFBox guarda en
+        //ellas un caché de anchos que no es seguro entre hilos.
+        synchronized (font) {
+            for (int i = 0; i < CODES; i++) {
+                code[0] = (byte) i;
+                widths[i] = font.getFontWidth(code, 0, 1);
+            }
+
+            boundingBoxHeight = font.getFontDescriptor().getFontBoundingBox().getHeight();
+        }
+    }
+
+    /**
+     * Regresa el ancho de un caracter en milésimas del tamaño de la fuente.
+     *
+     * @param codePoint El código del caracter.
+     * @return El ancho del caracter.
+     */
+    public float getCharWidth(int codePoint) {
+        return widths[codePoint < CODES ? codePoint : REPLACEMENT];
+    }
+
+    /**
+     * Regresa el ancho de una cadena en milésimas del tamaño de la fuente.
+     *
+     * @param text La cadena a medir.
+     * @return El ancho de la cadena.
+     */
+    public float getStringWidth(String text) {
+        float width = 0;
+
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            width += widths[codePoint < CODES ? codePoint : REPLACEMENT];
+            i += Character.charCount(codePoint);
+        }
+
+        return width;
+    }
+
+    /**
+     * Regresa el ancho de una cadena dibujada con el tamaño de fuente indicado.
+     *
+     * @param text La cadena a medir.
+     * @param fontSize El tamaño de la fuente.
+     * @return El ancho de la cadena en puntos.
+     */
+    public float getWidth(String text, float fontSize) {
+        return getStringWidth(text) / 1000 * fontSize;
+    }
+
+    /**
+     * Regresa la altura de la caja de la fuente para el tamaño indicado.
+     *
+     * @param fontSize El tamaño de la fuente.
+     * @return La altura en puntos.
+     */
+    public float getHeight(float fontSize) {
+        return boundingBoxHeight / 1000 * fontSize;
+    }
+}
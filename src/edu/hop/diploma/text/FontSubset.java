@@ -0,0 +1,569 @@
+package edu.hop.diploma.text;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.RandomAccessBuffer;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+
+/**
+ * Subconjunto de una {@link EmbeddedFont} usado en un solo documento. Mientras
+ * se dibujan las páginas se registran los glifos de cada texto y, antes de
+ * guardar el documento, {@link #embed()} incrusta sólo esos glifos.
+ *
+ * <p>La fuente se escribe como una fuente compuesta (Type0) con la
+ * codificación Identity-H: cada caracter se escribe como el índice de dos
+ * bytes de su glifo en la fuente original. El subconjunto conserva los
+ * índices de los glifos, por lo que el contenido de las páginas puede
+ * escribirse antes de conocer todos los glifos del documento.</p>
+ *
+ * <p>Esta clase no es segura para usarse desde varios hilos; cada documento
+ * crea sus propios subconjuntos.</p>
+ *
+ * @author jjsanche
+ */
+public final class FontSubset {
+    private static final COSName CID_FONT_TYPE2 = COSName.getPDFName("CIDFontType2");
+    private static final COSName CID_TO_GID_MAP = COSName.getPDFName("CIDToGIDMap");
+    private static final COSName FONT_FILE2 = COSName.getPDFName("FontFile2");
+    private static final COSName IDENTITY_H = COSName.getPDFName("Identity-H");
+    private static final COSName TO_UNICODE = COSName.getPDFName("ToUnicode");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int ARG_1_AND_2_ARE_WORDS = 0x0001;
+    private static final int WE_HAVE_A_SCALE = 0x0008;
+    private static final int MORE_COMPONENTS = 0x0020;
+    private static final int WE_HAVE_AN_X_AND_Y_SCALE = 0x0040;
+    private static final int WE_HAVE_A_TWO_BY_TWO = 0x0080;
+
+    private final EmbeddedFont font;
+    private final TreeMap<Integer, Integer> glyphs = new TreeMap<>();
+    private final COSDictionary fontDictionary;
+    private final COSDictionary cidFontDictionary;
+    private final COSDictionary descriptor;
+    private final PDType0Font pdFont;
+    private boolean embedded;
+
+    /**
+     * Crea el subconjunto vacío con los diccionarios de la fuente, a los
+     * cuáles {@link #embed()} agregará los glifos.
+     *
+     * @param font La fuente original.
+     */
+    FontSubset(EmbeddedFont font) {
+        this.font = font;
+
+        COSDictionary systemInfo = new COSDictionary();
+        systemInfo.setString(COSName.REGISTRY, "Adobe");
+        systemInfo.setString(COSName.ORDERING, "Identity");
+        systemInfo.setInt(COSName.SUPPLEMENT, 0);
+
+        descriptor = new COSDictionary();
+        descriptor.setItem(COSName.TYPE, COSName.FONT_DESC);
+        descriptor.setInt(COSName.FLAGS, font.isFixedPitch() ? 33 : 32);
+        descriptor.setItem(COSName.FONT_BBOX, toArray(font.getBoundingBox()));
+        descriptor.setFloat(COSName.ITALIC_ANGLE, font.getItalicAngle());
+        descriptor.setFloat(COSName.ASCENT, font.getAscent());
+        descriptor.setFloat(COSName.DESCENT, font.getDescent());
+        descriptor.setFloat(COSName.CAP_HEIGHT, font.getCapHeight());
+        descriptor.setInt(COSName.STEM_V, 80);
+
+        cidFontDictionary = new COSDictionary();
+        cidFontDictionary.setItem(COSName.TYPE, COSName.FONT);
+        cidFontDictionary.setItem(COSName.SUBTYPE, CID_FONT_TYPE2);
+        cidFontDictionary.setItem(COSName.CIDSYSTEMINFO, systemInfo);
+        cidFontDictionary.setItem(COSName.FONT_DESC, descriptor);
+
+        COSArray descendantFonts = new COSArray();
+        descendantFonts.add(cidFontDictionary);
+
+        fontDictionary = new COSDictionary();
+        fontDictionary.setItem(COSName.TYPE, COSName.FONT);
+        fontDictionary.setItem(COSName.SUBTYPE, COSName.TYPE0);
+        fontDictionary.setItem(COSName.ENCODING, IDENTITY_H);
+        fontDictionary.setItem(COSName.DESCENDANT_FONTS, descendantFonts);
+        setBaseFont(font.getBaseFont());
+
+        pdFont = new PDType0Font(fontDictionary);
+    }
+
+    /**
+     * @return La fuente original del subconjunto.
+     */
+    public EmbeddedFont getEmbeddedFont() {
+        return font;
+    }
+
+    /**
+     * Regresa la fuente de PDFBox que debe seleccionarse en el flujo de
+     * contenido para dibujar los textos codificados por este subconjunto.
+     *
+     * @return La fuente del documento.
+     */
+    public PDFont getFont() {
+        return pdFont;
+    }
+
+    /**
+     * Codifica un texto como una cadena hexadecimal de PDF con los índices de
+     * sus glifos, y agrega los glifos al subconjunto.
+     *
+     * @param text El texto a codificar.
+     * @return La cadena lista para el operador Tj, por ejemplo
+     * {@code <00240025>}.
+     */
+    public String encode(String text) {
+        if (embedded) {
+            throw new IllegalStateException("The font subset was already embedded.");
+        }
+
+        StringBuilder encoded = new StringBuilder(text.length() * 4 + 2).append('<');
+
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            int glyphId = font.getGlyphId(codePoint);
+
+            if (glyphId != 0 && !glyphs.containsKey(glyphId)) {
+                glyphs.put(glyphId, codePoint);
+            }
+
+            encoded.append(HEX[(glyphId >> 12) & 0xF]).append(HEX[(glyphId >> 8) & 0xF])
+                    .append(HEX[(glyphId >> 4) & 0xF]).append(HEX[glyphId & 0xF]);
+            i += Character.charCount(codePoint);
+        }
+
+        return encoded.append('>').toString();
+    }
+
+    /**
+     * Incrusta en los diccionarios de la fuente el subconjunto con los glifos
+     * registrados, sus anchos, el mapa CIDToGIDMap y el mapa ToUnicode. Debe
+     * invocarse una sola vez, después de dibujar todas las páginas y antes de
+     * guardar el documento.
+     *
+     * @throws IOException En caso de error al crear el subconjunto.
+     */
+    public void embed() throws IOException {
+        if (embedded) {
+            return;
+        }
+
+        embedded = true;
+        String tag = createTag();
+        byte[] fontBytes = createFontFile();
+        COSStream fontStream = createStream(fontBytes);
+        COSArray widths = new COSArray();
+
+        fontStream.setInt(COSName.LENGTH1, fontBytes.length);
+        descriptor.setItem(COSName.FONT_NAME, COSName.getPDFName(tag + font.getBaseFont()));
+        descriptor.setItem(FONT_FILE2, fontStream);
+        setBaseFont(tag + font.getBaseFont());
+
+        for (int glyphId : glyphs.keySet()) {
+            COSArray width = new COSArray();
+            width.add(new COSFloat(font.getGlyphWidth(glyphId)));
+            widths.add(COSInteger.get(glyphId));
+            widths.add(width);
+        }
+
+        cidFontDictionary.setInt(COSName.DW, Math.round(font.getGlyphWidth(0)));
+        cidFontDictionary.setItem(COSName.W, widths);
+        cidFontDictionary.setItem(CID_TO_GID_MAP, COSName.IDENTITY);
+        fontDictionary.setItem(TO_UNICODE, createStream(createToUnicode()));
+    }
+
+    /**
+     * Crea el archivo TrueType del subconjunto. Los glifos conservan sus
+     * índices para que el mapa CIDToGIDMap sea la identidad: los glifos que
+     * no se usaron quedan vacíos y los posteriores al último glifo usado se
+     * eliminan. Sólo se copian las tablas necesarias para dibujar los glifos.
+     *
+     * @return El contenido del archivo.
+     * @throws IOException En caso de que las tablas de la fuente no sean
+     * válidas.
+     */
+    private byte[] createFontFile() throws IOException {
+        ByteBuffer head = ByteBuffer.wrap(font.getTable("head"));
+        ByteBuffer loca = ByteBuffer.wrap(font.getTable("loca"));
+        byte[] glyf = font.getTable("glyf");
+        boolean longOffsets = head.getShort(50) != 0;
+        TreeSet<Integer> included = new TreeSet<>(glyphs.keySet());
+        included.add(0);
+        addComponents(included, loca, glyf, longOffsets);
+
+        int glyphCount = included.last() + 1;
+        ByteArrayOutputStream newGlyf = new ByteArrayOutputStream();
+        ByteBuffer newLoca = ByteBuffer.allocate((glyphCount + 1) * 4);
+
+        for (int glyphId = 0; glyphId < glyphCount; glyphId++) {
+            newLoca.putInt(newGlyf.size());
+
+            if (included.contains(glyphId)) {
+                int start = glyphOffset(loca, glyphId, longOffsets);
+                int end = glyphOffset(loca, glyphId + 1, longOffsets);
+                newGlyf.write(glyf, start, end - start);
+
+                while (newGlyf.size() % 4 != 0) {
+                    newGlyf.write(0);
+                }
+            }
+        }
+
+        newLoca.putInt(newGlyf.size());
+        head.putInt(8, 0);
+        head.putShort(50, (short) 1);
+
+        ByteBuffer maxp = ByteBuffer.wrap(font.getTable("maxp"));
+        maxp.putShort(4, (short) glyphCount);
+
+        ByteBuffer hhea = ByteBuffer.wrap(font.getTable("hhea"));
+        int metricCount = hhea.getShort(34) & 0xFFFF;
+        ByteBuffer hmtx = ByteBuffer.wrap(font.getTable("hmtx"));
+        ByteBuffer newHmtx = ByteBuffer.allocate(glyphCount * 4);
+        hhea.putShort(34, (short) glyphCount);
+
+        //Las métricas de los glifos vacíos quedan en cero para que la tabla se
+        //comprima mejor; los anchos que usa el PDF están en el arreglo W.
+        for (int glyphId : included) {
+            int last = Math.min(glyphId, metricCount - 1);
+            newHmtx.putShort(glyphId * 4, hmtx.getShort(last * 4));
+            newHmtx.putShort(glyphId * 4 + 2, glyphId < metricCount ? hmtx.getShort(glyphId * 4 + 2)
+                    : hmtx.getShort(metricCount * 4 + (glyphId - metricCount) * 2));
+        }
+
+        Map<String, byte[]> tables = new TreeMap<>();
+        tables.put("cmap", createCmap());
+        tables.put("glyf", newGlyf.toByteArray());
+        tables.put("head", head.array());
+        tables.put("hhea", hhea.array());
+        tables.put("hmtx", newHmtx.array());
+        tables.put("loca", newLoca.array());
+        tables.put("maxp", maxp.array());
+
+        for (String tag : new String[] {"cvt ", "fpgm", "prep", "name", "OS/2"}) {
+            byte[] table = font.getTable(tag);
+
+            if (table != null) {
+                tables.put(tag, table);
+            }
+        }
+
+        byte[] post = font.getTable("post");
+
+        if (post != null && post.length >= 32) {
+            ByteBuffer newPost = ByteBuffer.wrap(Arrays.copyOf(post, 32));
+            newPost.putInt(0, 0x00030000);
+            tables.put("post", newPost.array());
+        }
+
+        return writeFontFile(tables);
+    }
+
+    /**
+     * Agrega los glifos que forman parte de los glifos compuestos incluidos.
+     *
+     * @param included Los glifos incluidos, donde se agregan los componentes.
+     * @param loca La tabla de posiciones de los glifos.
+     * @param glyf La tabla de glifos.
+     * @param longOffsets true si la tabla de posiciones usa enteros de 32 bits.
+     */
+    private static void addComponents(TreeSet<Integer> included, ByteBuffer loca, byte[] glyf,
+            boolean longOffsets) {
+        ByteBuffer glyphs = ByteBuffer.wrap(glyf);
+        Deque<Integer> pending = new ArrayDeque<>(included);
+
+        while (!pending.isEmpty()) {
+            int glyphId = pending.pop();
+            int offset = glyphOffset(loca, glyphId, longOffsets);
+
+            if (glyphOffset(loca, glyphId + 1, longOffsets) == offset || glyphs.getShort(offset) >= 0) {
+                continue;
+            }
+
+            int position = offset + 10;
+            int flags;
+
+            do {
+                flags = glyphs.getShort(position) & 0xFFFF;
+                int component = glyphs.getShort(position + 2) & 0xFFFF;
+
+                if (included.add(component)) {
+                    pending.push(component);
+                }
+
+                position += 4 + ((flags & ARG_1_AND_2_ARE_WORDS) != 0 ? 4 : 2);
+
+                if ((flags & WE_HAVE_A_SCALE) != 0) {
+                    position += 2;
+                } else if ((flags & WE_HAVE_AN_X_AND_Y_SCALE) != 0) {
+                    position += 4;
+                } else if ((flags & WE_HAVE_A_TWO_BY_TWO) != 0) {
+                    position += 8;
+                }
+            } while ((flags & MORE_COMPONENTS) != 0);
+        }
+    }
+
+    /**
+     * Regresa la posición de un glifo dentro de la tabla de glifos.
+     *
+     * @param loca La tabla de posiciones.
+     * @param glyphId El índice del glifo.
+     * @param longOffsets true si la tabla usa enteros de 32 bits.
+     * @return La posición del glifo.
+     */
+    private static int glyphOffset(ByteBuffer loca, int glyphId, boolean longOffsets) {
+        return longOffsets ? loca.getInt(glyphId * 4) : (loca.getShort(glyphId * 2) & 0xFFFF) * 2;
+    }
+
+    /**
+     * Crea una tabla cmap de formato 4 con los caracteres del subconjunto.
+     * Los lectores de PDF no la necesitan, pero algunos intérpretes de
+     * fuentes rechazan un archivo sin ella.
+     *
+     * @return La tabla.
+     */
+    private byte[] createCmap() {
+        TreeMap<Integer, Integer> characters = new TreeMap<>();
+
+        for (Map.Entry<Integer, Integer> glyph : glyphs.entrySet()) {
+            if (glyph.getValue() < 0xFFFF) {
+                characters.put(glyph.getValue(), glyph.getKey());
+            }
+        }
+
+        int segments = characters.size() + 1;
+        ByteBuffer cmap = ByteBuffer.allocate(12 + 16 + segments * 8);
+        cmap.putShort((short) 0).putShort((short) 1);
+        cmap.putShort((short) 3).putShort((short) 1).putInt(12);
+        cmap.putShort((short) 4).putShort((short) (16 + segments * 8)).putShort((short) 0);
+        int searchRange = 2 * Integer.highestOneBit(segments);
+        cmap.putShort((short) (segments * 2)).putShort((short) searchRange)
+                .putShort((short) (Integer.numberOfTrailingZeros(searchRange / 2)))
+                .putShort((short) (segments * 2 - searchRange));
+
+        for (int character : characters.keySet()) {
+            cmap.putShort((short) character);
+        }
+
+        cmap.putShort((short) 0xFFFF).putShort((short) 0);
+
+        for (int character : characters.keySet()) {
+            cmap.putShort((short) character);
+        }
+
+        cmap.putShort((short) 0xFFFF);
+
+        for (Map.Entry<Integer, Integer> character : characters.entrySet()) {
+            cmap.putShort((short) (character.getValue() - character.getKey()));
+        }
+
+        cmap.putShort((short) 1);
+
+        for (int i = 0; i < segments; i++) {
+            cmap.putShort((short) 0);
+        }
+
+        return cmap.array();
+    }
+
+    /**
+     * Escribe el archivo TrueType con las tablas indicadas y calcula sus
+     * sumas de verificación.
+     *
+     * @param tables Las tablas ordenadas por su etiqueta.
+     * @return El contenido del archivo.
+     */
+    private static byte[] writeFontFile(Map<String, byte[]> tables) {
+        int count = tables.size();
+        int size = 12 + count * 16;
+
+        for (byte[] table : tables.values()) {
+            size += (table.length + 3) & ~3;
+        }
+
+        ByteBuffer file = ByteBuffer.allocate(size);
+        int searchRange = 16 * Integer.highestOneBit(count);
+        file.putInt(0x00010000).putShort((short) count).putShort((short) searchRange)
+                .putShort((short) Integer.numberOfTrailingZeros(searchRange / 16))
+                .putShort((short) (count * 16 - searchRange));
+        int offset = 12 + count * 16;
+        int headOffset = 0;
+
+        for (Map.Entry<String, byte[]> table : tables.entrySet()) {
+            byte[] data = table.getValue();
+            file.put(table.getKey().getBytes(StandardCharsets.US_ASCII));
+            file.putInt((int) checksum(data, 0, data.length)).putInt(offset).putInt(data.length);
+
+            if (table.getKey().equals("head")) {
+                headOffset = offset;
+            }
+
+            offset += (data.length + 3) & ~3;
+        }
+
+        for (byte[] data : tables.values()) {
+            file.put(data);
+            file.position((file.position() + 3) & ~3);
+        }
+
+        byte[] bytes = file.array();
+        file.putInt(headOffset + 8, (int) (0xB1B0AFBAL - checksum(bytes, 0, bytes.length)));
+
+        return bytes;
+    }
+
+    /**
+     * Calcula la suma de verificación de TrueType: la suma de los enteros de
+     * 32 bits, completando el último con ceros.
+     *
+     * @param data Los bytes.
+     * @param offset La posición inicial.
+     * @param length El número de bytes.
+     * @return La suma en 32 bits sin signo.
+     */
+    private static long checksum(byte[] data, int offset, int length) {
+        long sum = 0;
+
+        for (int i = 0; i < length; i += 4) {
+            long value = 0;
+
+            for (int j = 0; j < 4; j++) {
+                value = (value << 8) | (i + j < length ? data[offset + i + j] & 0xFF : 0);
+            }
+
+            sum += value;
+        }
+
+        return sum & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Crea la etiqueta de seis letras que distingue a un subconjunto de la
+     * fuente completa, calculada a partir de los glifos incluidos.
+     *
+     * @return La etiqueta seguida de '+'.
+     */
+    private String createTag() {
+        long hash = glyphs.keySet().hashCode() & 0xFFFFFFFFL;
+        char[] tag = new char[7];
+
+        for (int i = 0; i < 6; i++) {
+            tag[i] = (char) ('A' + hash % 26);
+            hash /= 26;
+        }
+
+        tag[6] = '+';
+
+        return new String(tag);
+    }
+
+    /**
+     * Crea el mapa ToUnicode que permite copiar y buscar los textos dibujados
+     * con el subconjunto.
+     *
+     * @return El contenido del mapa.
+     */
+    private byte[] createToUnicode() {
+        StringBuilder cmap = new StringBuilder(256 + glyphs.size() * 16)
+                .append("/CIDInit /ProcSet findresource begin\n12 dict begin\nbegincmap\n")
+                .append("/CIDSystemInfo << /Registry (Adobe) /Ordering (UCS) /Supplement 0 >> def\n")
+                .append("/CMapName /Adobe-Identity-UCS def\n/CMapType 2 def\n")
+                .append("1 begincodespacerange\n<0000> <FFFF>\nendcodespacerange\n");
+        int index = 0;
+
+        for (Map.Entry<Integer, Integer> glyph : glyphs.entrySet()) {
+            if (index % 100 == 0) {
+                cmap.append(Math.min(100, glyphs.size() - index)).append(" beginbfchar\n");
+            }
+
+            cmap.append('<').append(toHex(glyph.getKey())).append("> <");
+
+            for (char c : Character.toChars(glyph.getValue())) {
+                cmap.append(toHex(c));
+            }
+
+            cmap.append(">\n");
+            index++;
+
+            if (index % 100 == 0 || index == glyphs.size()) {
+                cmap.append("endbfchar\n");
+            }
+        }
+
+        cmap.append("endcmap\nCMapName currentdict /CMap defineresource pop\nend\nend\n");
+
+        return cmap.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Crea un flujo comprimido que no depende de ningún documento, de manera
+     * que la fuente puede copiarse a otros documentos.
+     *
+     * @param data El contenido del flujo.
+     * @return El flujo.
+     * @throws IOException En caso de error al comprimir el contenido.
+     */
+    private static COSStream createStream(byte[] data) throws IOException {
+        COSStream stream = new COSStream(new RandomAccessBuffer());
+
+        try (OutputStream output = stream.createUnfilteredStream()) {
+            output.write(data);
+        }
+
+        stream.setFilters(COSName.FLATE_DECODE);
+
+        return stream;
+    }
+
+    /**
+     * Cambia el nombre de la fuente en los diccionarios.
+     *
+     * @param name El nuevo nombre.
+     */
+    private void setBaseFont(String name) {
+        fontDictionary.setItem(COSName.BASE_FONT, COSName.getPDFName(name));
+        cidFontDictionary.setItem(COSName.BASE_FONT, COSName.getPDFName(name));
+    }
+
+    /**
+     * Convierte un arreglo de números a un arreglo de PDF.
+     *
+     * @param values Los números.
+     * @return El arreglo de PDF.
+     */
+    private static COSArray toArray(float[] values) {
+        COSArray array = new COSArray();
+
+        for (float value : values) {
+            array.add(new COSFloat(value));
+        }
+
+        return array;
+    }
+
+    /**
+     * Convierte un valor de 16 bits a cuatro dígitos hexadecimales.
+     *
+     * @param value El valor.
+     * @return Los dígitos.
+     */
+    private static String toHex(int value) {
+        return new String(new char[] {HEX[(value >> 12) & 0xF], HEX[(value >> 8) & 0xF],
+            HEX[(value >> 4) & 0xF], HEX[value & 0xF]});
+    }
+}
@@ -11,11 +11,14 @@ import org.apache.pdfbox.pdmodel.font.PDType1Font;
 public class Text {
     private String text;
     private float fontSize;
+    private float minFontSize;
     private PDType1Font fontType;
+    private EmbeddedFont embeddedFont;
     private Alignments alignment;
     private Color color;
     private boolean isUnderlined;
     private boolean breakLine;
+    private boolean isVariable;
 
     /**
      * Crea un texto a dibujar con los caracteres indicados en el agurmento.
@@ -89,12 +92,30 @@ public class Text {
     }
     
     /**
-     * Crea un texto a dibujar basado en uno ya creado.
+     * Crea un texto a dibujar con una fuente TrueType incrustada.
+     * 
+     * @param text La cadena de texto a dibujar.
+     * @param fontSize Un número decimal con el tamaño de la fuente a dibujar.
+     * @param embeddedFont La fuente TrueType con la cuál se dibujará el texto.
+     */
+    public Text(String text, float fontSize, EmbeddedFont embeddedFont) {
+        this(text, fontSize);
+        setEmbeddedFont(embeddedFont);
+    }
+    
+    /**
+     * Crea un texto a dibujar basado en uno ya creado, con todas sus
+     * propiedades.
      * @param text El objeto Text a duplicar.
      */
     public Text(Text text) {
         this(text.getText(), text.getFontSize(), text.getFontType(), 
                 text.getAlignment(), text.getColor());
+        setEmbeddedFont(text.getEmbeddedFont());
+        setIsUnderlined(text.isUnderlined());
+        setBreakLine(text.getBreakLine());
+        setIsVariable(text.isVariable());
+        minFontSize = text.getMinFontSize();
     }
     
     /**
@@ -117,6 +138,50 @@ public class Text {
         this.fontSize = fontSize;
     }
 
+    /**
+     * true si el tamaño de la fuente se reduce cuando el texto no cabe en el
+     * ancho disponible de su línea.
+     * 
+     * @return true si el texto se ajusta al ancho disponible, false si
+     * siempre se dibuja con el tamaño de la fuente.
+     */
+    public boolean isShrinkToFit() {
+        return minFontSize > 0;
+    }
+
+    /**
+     * Regresa el tamaño mínimo al que puede reducirse la fuente para que el
+     * texto quepa en su línea.
+     * 
+     * @return El tamaño mínimo o 0 si el texto no se ajusta al ancho
+     * disponible.
+     */
+    public float getMinFontSize() {
+        return minFontSize;
+    }
+
+    /**
+     * Hace que el texto se dibuje con el mayor tamaño entre los indicados con
+     * el cuál quepa, junto con los demás textos de su línea, entre los límites
+     * izquierdo y derecho del diploma. Si no cabe ni con el tamaño mínimo, se
+     * dibuja con éste. El tamaño máximo se convierte en el tamaño de la
+     * fuente y determina la altura de la línea.
+     * 
+     * @param minFontSize El tamaño mínimo de la fuente o 0 para dibujar
+     * siempre con el tamaño máximo.
+     * @param maxFontSize El tamaño máximo de la fuente.
+     * @return el objeto actual, lo cuál permite concatenar llamadas.
+     */
+    public Text setShrinkToFit(float minFontSize, float maxFontSize) {
+        if (!(minFontSize >= 0) || !(maxFontSize >= minFontSize)) {
+            throw new IllegalArgumentException("minFontSize must be between 0 and maxFontSize.");
+        }
+
+        this.minFontSize = minFontSize;
+        setFontSize(maxFontSize);
+        return this;
+    }
+
     /**
      * Regresa la cadena de caracteres a dibujar.
      * 
@@ -155,6 +220,29 @@ public class Text {
         this.fontType = fontType;
     }
 
+    /**
+     * Regresa la fuente TrueType incrustada del texto.
+     * 
+     * @return La fuente incrustada o null si el texto usa una de las fuentes
+     * estándar indicada por {@link #getFontType()}.
+     */
+    public EmbeddedFont getEmbeddedFont() {
+        return embeddedFont;
+    }
+
+    /**
+     * Cambia la fuente TrueType incrustada del texto. Mientras el texto tenga
+     * una fuente incrustada, ésta se usa en lugar del tipo de fuente estándar.
+     * 
+     * @param embeddedFont La fuente cargada con {@link EmbeddedFont#load(String)}
+     * o null para usar el tipo de fuente estándar.
+     * @return el objeto actual, lo cuál permite concatenar llamadas.
+     */
+    public Text setEmbeddedFont(EmbeddedFont embeddedFont) {
+        this.embeddedFont = embeddedFont;
+        return this;
+    }
+
     /**
      * Regresa el tipo de alineación del texto.
      * 
@@ -233,4 +321,29 @@ public class Text {
         this.breakLine = breakLine;
         return this;
     }
+
+    /**
+     * true si el texto cambia entre los diplomas de un mismo lote, como el
+     * nombre del participante o la fecha.
+     * 
+     * @return true si el texto es variable, false si es igual en todos los
+     * diplomas.
+     */
+    public boolean isVariable() {
+        return isVariable;
+    }
+
+    /**
+     * Cambia si el texto es variable entre los diplomas de un mismo lote. Los
+     * textos que no son variables pueden dibujarse una sola vez y reutilizarse
+     * en todos los diplomas.
+     * 
+     * @param isVariable true si el texto cambia entre diplomas, false en caso
+     * contrario.
+     * @return el objeto actual, lo cuál permite concatenar llamadas.
+     */
+    public Text setIsVariable(boolean isVariable) {
+        this.isVariable = isVariable;
+        return this;
+    }
 }
@@ -0,0 +1,202 @@
+package test;
+
+import edu.hop.diploma.border.BorderSides;
+import edu.hop.diploma.border.PageBorder;
+import edu.hop.diploma.builder.BatchJournal;
+import edu.hop.diploma.builder.DiplomaBatchBuilder;
+import edu.hop.diploma.builder.DiplomaBuildResult;
+import edu.hop.diploma.builder.DiplomaBuilder;
+import edu.hop.diploma.javacore.JavaCoreDiploma;
+import edu.hop.diploma.output.MemorySink;
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Verifica que un lote interrumpido pueda reanudarse con su bitácora: una
+ * línea incompleta al final de la bitácora se descarta, los diplomas intactos
+ * se omiten y los diplomas dañados o eliminados se construyen de nuevo.
+ *
+ * <p>Recibe como argumentos opcionales el directorio de salida y el número de
+ * diplomas.</p>
+ *
+ * @author jjsanche
+ */
+public class TestBatchJournal {
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        File outputDir = new File(args.length > 0 ? args[0] : "journal-test");
+        int diplomas = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        outputDir.mkdirs();
+
+        testTornLine(new File(outputDir, "torn.journal").toPath());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            testResume(new File(outputDir, "resume"), diplomas, executor);
+            testMemorySink(new File(outputDir, "memory.journal").toPath(), diplomas, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        System.out.printf("%d diplomas, %d errores%n", diplomas, failures);
+
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Una línea sin terminar, como la que deja una falla al escribir, se
+     * descarta al abrir la bitácora y los registros nuevos se agregan
+     * después de la última línea completa.
+     */
+    private static void testTornLine(Path file) throws IOException {
+        Files.deleteIfExists(file);
+
+        try (BatchJournal journal = BatchJournal.open(file)) {
+            journal.record("Uno", "1.pdf", "aaaa", 10, 1);
+            journal.record("Dos", "2.pdf", "bbbb", 20, 2);
+        }
+
+        Files.write(file, "cccc\t30\t3\t3.p".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (BatchJournal journal = BatchJournal.open(file)) {
+            check(journal.size() == 2, "la línea incompleta no se descartó");
+            check(journal.sizeOf("3.pdf") == -1, "se cargó el registro incompleto");
+            journal.record("Tres", "3.pdf", "cccc", 30, 3);
+        }
+
+        byte[] data = Files.readAllBytes(file);
+        check(data[data.length - 1] == '\n', "la bitácora no termina en una línea completa");
+
+        try (BatchJournal journal = BatchJournal.open(file)) {
+            check(journal.size() == 3, "el registro agregado después de truncar se perdió");
+            check(journal.sizeOf("3.pdf") == 30, "el registro agregado después de truncar es incorrecto");
+        }
+    }
+
+    /**
+     * Al repetir un lote terminado se omiten todos los diplomas; si se daña
+     * o se elimina alguno, sólo ése se construye de nuevo.
+     */
+    private static void testResume(File directory, int diplomas, ExecutorService executor) throws Exception {
+        directory.mkdirs();
+        Path journalFile = new File(directory, BatchJournal.DEFAULT_FILE_NAME).toPath();
+        Files.deleteIfExists(journalFile);
+        DiplomaBatchBuilder batchBuilder = new DiplomaBatchBuilder(executor, 4);
+
+        List<DiplomaBuildResult> results = build(batchBuilder, journalFile, directory, diplomas);
+        check(count(results, false) == diplomas, "la primera ejecución no construyó todos los diplomas");
+
+        results = build(batchBuilder, journalFile, directory, diplomas);
+        check(count(results, true) == diplomas, "la segunda ejecución no omitió todos los diplomas");
+
+        //Un diploma con el mismo tamaño pero distinto contenido, uno
+        //incompleto y uno eliminado.
+        File changed = new File(directory, "0.pdf");
+        byte[] original = Files.readAllBytes(changed.toPath());
+
+        try (RandomAccessFile file = new RandomAccessFile(changed, "rw")) {
+            file.seek(original.length / 2);
+            file.write(original[original.length / 2] ^ 0xFF);
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "1.pdf"), "rw")) {
+            file.setLength(file.length() / 2);
+        }
+
+        Files.delete(new File(directory, "2.pdf").toPath());
+        results = build(batchBuilder, journalFile, directory, diplomas);
+
+        for (int i = 0; i < diplomas; i++) {
+            DiplomaBuildResult result = results.get(i);
+            check(result.isSuccessful(), "el diploma " + i + " falló: " + result.getError());
+            check(result.isSkipped() == i > 2, "el diploma " + i
+                    + (i > 2 ? " intacto se construyó de nuevo" : " dañado se omitió"));
+        }
+
+        check(Files.size(changed.toPath()) == original.length
+                && Files.size(new File(directory, "1.pdf").toPath()) == results.get(1).getBytes(),
+                "los diplomas reconstruidos no se guardaron completos");
+
+        results = build(batchBuilder, journalFile, directory, diplomas);
+        check(count(results, true) == diplomas, "los diplomas reconstruidos no se registraron");
+    }
+
+    /**
+     * Los diplomas de un destino que no los guarda como archivos no pueden
+     * verificarse, por lo que nunca se omiten aunque la bitácora los
+     * registre.
+     */
+    private static void testMemorySink(Path journalFile, int diplomas, ExecutorService executor)
+            throws Exception {
+        Files.deleteIfExists(journalFile);
+        MemorySink sink = new MemorySink();
+        DiplomaBatchBuilder batchBuilder = new DiplomaBatchBuilder(new DiplomaBuilder(), executor, 4, sink);
+        File directory = journalFile.toAbsolutePath().getParent().toFile();
+
+        build(batchBuilder, journalFile, directory, diplomas);
+        List<DiplomaBuildResult> results = build(batchBuilder, journalFile, directory, diplomas);
+        check(count(results, false) == diplomas, "se omitieron diplomas que sólo existen en memoria");
+    }
+
+    /**
+     * Ejecuta un lote con la bitácora indicada, abriéndola y cerrándola como
+     * lo haría una ejecución independiente.
+     */
+    private static List<DiplomaBuildResult> build(DiplomaBatchBuilder batchBuilder, Path journalFile,
+            File directory, int diplomas) throws Exception {
+        List<JavaCoreDiploma> roster = new ArrayList<>();
+
+        for (int i = 0; i < diplomas; i++) {
+            roster.add(createDiploma(i, directory));
+        }
+
+        try (BatchJournal journal = BatchJournal.open(journalFile)) {
+            return batchBuilder.buildDiplomas(roster, journal);
+        }
+    }
+
+    private static int count(List<DiplomaBuildResult> results, boolean skipped) {
+        int count = 0;
+
+        for (DiplomaBuildResult result : results) {
+            if (result.isSuccessful() && result.isSkipped() == skipped) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println(message);
+            failures++;
+        }
+    }
+
+    private static JavaCoreDiploma createDiploma(int index, File outputDir) {
+        JavaCoreDiploma jcDiploma = new JavaCoreDiploma();
+        jcDiploma.setTo("Participante número " + index);
+        jcDiploma.setHours(40 + index % 30);
+        jcDiploma.setPageBorders(new PageBorder[] {
+            new PageBorder(BorderSides.TOP, 0.1f, new Color(50, 30, 20), 0.5f)
+        });
+        jcDiploma.setFileName(new File(outputDir, index + ".pdf").getPath());
+
+        return jcDiploma;
+    }
+}
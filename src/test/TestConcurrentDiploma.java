@@ -0,0 +1,120 @@
+package test;
+
+import edu.hop.diploma.border.BorderSides;
+import edu.hop.diploma.border.PageBorder;
+import edu.hop.diploma.builder.DiplomaBuilder;
+import edu.hop.diploma.builder.DiplomaTemplate;
+import edu.hop.diploma.javacore.JavaCoreDiploma;
+import edu.hop.diploma.physical.PageOrientation;
+import edu.hop.diploma.physical.PageProperties;
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Prueba de estrés que construye los mismos diplomas primero en un solo hilo
+ * y después de manera concurrente con una plantilla compilada, verificando que
+ * los archivos generados sean idénticos byte por byte.
+ *
+ * <p>Recibe como argumentos opcionales el directorio de salida, el número de
+ * diplomas y el número de hilos.</p>
+ *
+ * @author jjsanche
+ */
+public class TestConcurrentDiploma {
+    public static void main(String[] args) throws Exception {
+        File outputDir = new File(args.length > 0 ? args[0] : "concurrent-test");
+        int diplomas = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        File singleDir = new File(outputDir, "single");
+        File concurrentDir = new File(outputDir, "concurrent");
+        singleDir.mkdirs();
+        concurrentDir.mkdirs();
+        
+        DiplomaBuilder builder = new DiplomaBuilder();
+        
+        for (int i = 0; i < diplomas; i++) {
+            builder.build(createDiploma(i, singleDir));
+        }
+        
+        //Los diplomas concurrentes usan una plantilla compilada para verificar
+        //también que su acomodo sea igual al acomodo completo.
+        DiplomaBuilder templateBuilder = new DiplomaBuilder(
+                DiplomaTemplate.compile(createDiploma(0, concurrentDir)));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        
+        for (int i = 0; i < diplomas; i++) {
+            final JavaCoreDiploma jcDiploma = createDiploma(i, concurrentDir);
+            futures.add(executor.submit(() -> {
+                templateBuilder.build(jcDiploma);
+                return null;
+            }));
+        }
+        
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        
+        executor.shutdown();
+        int mismatches = 0;
+        
+        for (int i = 0; i < diplomas; i++) {
+            byte[] expected = readWithoutId(new File(singleDir, i + ".pdf"));
+            byte[] actual = readWithoutId(new File(concurrentDir, i + ".pdf"));
+            
+            if (!Arrays.equals(expected, actual)) {
+                System.err.println("El diploma " + i + " es diferente al construido en un solo hilo");
+                mismatches++;
+            }
+        }
+        
+        System.out.printf("%d diplomas, %d hilos, %d diferencias%n", diplomas, threads, mismatches);
+        
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Lee un PDF eliminando el identificador del trailer, el cuál PDFBox genera
+     * a partir de la hora en que se guarda el archivo.
+     */
+    private static byte[] readWithoutId(File file) throws IOException {
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+        
+        return content.replaceAll("/ID \\[<[0-9A-F]*> <[0-9A-F]*>\\]", "")
+                .getBytes(StandardCharsets.ISO_8859_1);
+    }
+    
+    private static JavaCoreDiploma createDiploma(int index, File outputDir) throws IOException {
+        PageBorder[] borders = new PageBorder[4];
+        borders[0] = new PageBorder(BorderSides.TOP, 0.1f, new Color(255, 0, 0), 0.5f);
+        borders[1] = new PageBorder(BorderSides.RIGHT, 0.1f, new Color(50, 30, 20), 0.5f);
+        borders[2] = new PageBorder(BorderSides.BOTTOM, 0.1f, new Color(50, 30, 20), 0.5f);
+        borders[3] = new PageBorder(BorderSides.LEFT, 0.1f, new Color(50, 30, 20), 0.5f);
+        
+        PageProperties pageProperties = new PageProperties();
+        pageProperties.setPageOrientation(PageOrientation.LANDSCAPE);
+        
+        JavaCoreDiploma jcDiploma = new JavaCoreDiploma();
+        jcDiploma.setTo("Participante número " + index);
+        jcDiploma.setHours(40 + index % 30);
+        jcDiploma.setDate(LocalDate.of(2015, 1 + index % 12, 1 + index % 28));
+        jcDiploma.setPageProperties(pageProperties);
+        jcDiploma.setPageBorders(borders);
+        jcDiploma.setContentMarginSize(0.5f);
+        jcDiploma.setFileName(new File(outputDir, index + ".pdf").getPath());
+        
+        return jcDiploma;
+    }
+}